@@ -3,7 +3,9 @@ package web.s4v.client;
 import web.s4v.shared.*;
 import web.s4v.main.*;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -61,6 +63,24 @@ public interface BaseService {
 
     Set<TaskInfo> getNearbyTasks(double latitude, double longitude, double radius);
 
+    long countNearbyTasks(double latitude, double longitude, double radius);
+
+    Set<TaskInfo> getTasksInBox(double southLatitude, double westLongitude, double northLatitude, double eastLongitude);
+
+    Set<TaskInfo> getTasksInPolygon(List<GeoPoint> vertices) throws SpotsForVolunteeringException;
+
+    List<TaskCluster> getTaskClusters(double southLatitude, double westLongitude, double northLatitude, double eastLongitude, int zoom) throws SpotsForVolunteeringException;
+
+    Set<TaskInfo> getNearbyTasks(double latitude, double longitude, double radius, Date from, Date to);
+
+    Map<TaskProbe, Set<TaskInfo>> getNearbyTasks(List<TaskProbe> probes);
+
+    NearbyTaskPage getNearbyTaskPage(double latitude, double longitude, double radius, int pageSize) throws SpotsForVolunteeringException;
+
+    NearbyTaskPage getNextNearbyTaskPage(String cursor, int pageSize) throws SpotsForVolunteeringException;
+
+    List<TaskInfo> getNearestTasks(double latitude, double longitude, int count);
+
     void enrollInTask(AuthenticatedVolunteerInfo authenticatedVolunteerInfo, TaskInfo taskInfo) throws SpotsForVolunteeringException;
 
     Set<VolunteerInfo> getEnrolledVolunteers(AuthenticatedVolunteerInfo authenticatedVolunteerInfo, TaskInfo taskInfo) throws SpotsForVolunteeringException;
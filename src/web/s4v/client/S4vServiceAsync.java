@@ -4,7 +4,9 @@ import com.google.gwt.user.client.rpc.AsyncCallback;
 import web.s4v.shared.*;
 import web.s4v.main.*;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 /**
  * S4v Service Asynchronicity
@@ -64,5 +66,23 @@ public interface S4vServiceAsync {
 
     void getNearbyTasks(double latitude, double longitude, double radius, AsyncCallback<Set<TaskInfo>> async);
 
+    void countNearbyTasks(double latitude, double longitude, double radius, AsyncCallback<Long> async);
+
+    void getTasksInBox(double southLatitude, double westLongitude, double northLatitude, double eastLongitude, AsyncCallback<Set<TaskInfo>> async);
+
+    void getTasksInPolygon(List<GeoPoint> vertices, AsyncCallback<Set<TaskInfo>> async);
+
+    void getTaskClusters(double southLatitude, double westLongitude, double northLatitude, double eastLongitude, int zoom, AsyncCallback<List<TaskCluster>> async);
+
+    void getNearbyTasks(double latitude, double longitude, double radius, Date from, Date to, AsyncCallback<Set<TaskInfo>> async);
+
+    void getNearbyTasks(List<TaskProbe> probes, AsyncCallback<Map<TaskProbe, Set<TaskInfo>>> async);
+
+    void getNearbyTaskPage(double latitude, double longitude, double radius, int pageSize, AsyncCallback<NearbyTaskPage> async);
+
+    void getNextNearbyTaskPage(String cursor, int pageSize, AsyncCallback<NearbyTaskPage> async);
+
+    void getNearestTasks(double latitude, double longitude, int count, AsyncCallback<List<TaskInfo>> async);
+
     void enrollInTask(AuthenticatedVolunteerInfo authenticatedVolunteerInfo, TaskInfo taskInfo, AsyncCallback<Void> async);
 }
@@ -1,5 +1,6 @@
 package web.s4v.main;
 
+import web.s4v.quad.PointOutOfBoundException;
 import web.s4v.shared.*;
 
 import java.io.Serializable;
@@ -69,10 +70,10 @@ public class Activity extends MessageBroadcaster implements Serializable {
     String getOwnerId() { return activityInfo.getOwnerId(); }
 
     /**
-     * Add a task to this activity based on given information.
+     * Add a task to this activity based on given information. Task is also inserted in the quad tree.
      * @param taskInfo on task to create
      * @return id generated for this task
-     * @throws SpotsForVolunteeringException if task already has an ID
+     * @throws SpotsForVolunteeringException if task already has an ID, or its location is not finite
      */
     Task addTask(TaskInfo taskInfo) throws SpotsForVolunteeringException {
         if(taskInfo.getId() != null) throw new SpotsForVolunteeringException("already has an id");
@@ -81,12 +82,17 @@ public class Activity extends MessageBroadcaster implements Serializable {
         UUID uuid = UUID.nameUUIDFromBytes(inputBytes);
         taskInfo.setId(uuid.toString());
         Task task = new Task(taskInfo);
+        try {
+            TaskQuad.getInstance().insert(task);
+        } catch (PointOutOfBoundException e) {
+            throw new SpotsForVolunteeringException("location is not finite");
+        }
         tasks.add(task);
         return task;
     }
 
     /**
-     * Forget existing task and remove it as message observer
+     * Forget existing task and remove it as message observer. Task is also removed from quad tree.
      * @param id of the task
      * @return the removed task or null if task is non-existent
      */
@@ -95,6 +101,7 @@ public class Activity extends MessageBroadcaster implements Serializable {
             if (task.getId().equals(id)) {
                 tasks.remove(task);
                 removeObserver(task);
+                TaskQuad.getInstance().delete(task);
                 return task;
             }
         }
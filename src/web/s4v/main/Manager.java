@@ -1,9 +1,12 @@
 package web.s4v.main;
 
+import web.s4v.quad.PointOutOfBoundException;
 import web.s4v.shared.*;
 
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -26,10 +29,9 @@ public class Manager implements web.s4v.client.BaseService {
 
     static ActivityPool activityPool;
 
-    static TaskQuad taskQuad;
 
-
-    private Manager() {
+    private Manager() throws SpotsForVolunteeringException {
+        TaskQuadMetrics.register();
     }
 
 
@@ -47,16 +49,17 @@ public class Manager implements web.s4v.client.BaseService {
     }
 
     /**
-     * Reset manager to its initial state. Use it only for unit testing.
+     * Reset manager to its initial state, unregistering the metrics that the next instance registers again.
+     * Use it only for unit testing.
      */
     void reset() {
+        TaskQuadMetrics.unregister();
         manager = null;
         volunteers.clear();
         activities.clear();
         tasks.clear();
         volunteerPool = null;
         activityPool = null;
-        taskQuad = null;
     }
 
     /**
@@ -202,11 +205,11 @@ public class Manager implements web.s4v.client.BaseService {
     }
 
     /**
-     * Method that creates a class
+     * Method that creates a task. Task is also inserted in the quad tree.
      * @param authenticatedVolunteerInfo
      * @param taskInfo
      * @return the information of the created task
-     * @throws SpotsForVolunteeringException any of the parameters is null, or if they entities they refer are not registered.
+     * @throws SpotsForVolunteeringException any of the parameters is null, or if they entities they refer are not registered, or the task's location is not finite.
      */
 
     @Override
@@ -218,6 +221,11 @@ public class Manager implements web.s4v.client.BaseService {
         if (!volunteer.authenticate(authenticatedVolunteerInfo.getPrivateKey()))
             throw new SpotsForVolunteeringException("Authentication failed");
         Task task = new Task(taskInfo);
+        try {
+            TaskQuad.getInstance().insert(task);
+        } catch (PointOutOfBoundException e) {
+            throw new SpotsForVolunteeringException("location is not finite");
+        }
         tasks.add(task);
         return task.getTaskInfo();
     }
@@ -242,7 +250,8 @@ public class Manager implements web.s4v.client.BaseService {
     }
 
     /**
-     * Removes task from its activity. Task is also removed from quad tree.
+     * Removes task from its activity, or from the tasks created without one. Task is also removed from quad tree,
+     * by its activity or here, but only once.
      * @param authenticatedVolunteerInfo task creator
      * @param taskInfo to remove
      * @throws SpotsForVolunteeringException if any of the parameters is null, or volunteer is not registered, or authentication is invalid, or tasks doesn't have an ID, or an activity ID.
@@ -257,7 +266,15 @@ public class Manager implements web.s4v.client.BaseService {
         if (!volunteer.authenticate(authenticatedVolunteerInfo.getPrivateKey()))
             throw new SpotsForVolunteeringException("Authentication failed");
         Activity activity = activityPool.getActivity(taskInfo.getActivityId());
-        activity.removeTask(taskInfo.getId());
+        if (activity.removeTask(taskInfo.getId()) != null)
+            return;
+        for (Task task : tasks) {
+            if (task.getId().equals(taskInfo.getId())) {
+                tasks.remove(task);
+                TaskQuad.getInstance().delete(task);
+                break;
+            }
+        }
     }
 
     /**
@@ -450,13 +467,136 @@ public class Manager implements web.s4v.client.BaseService {
      * Get tasks from all activities within a circle with center at the given latitude and longitude, and with given radius
      * @param latitude of the circle's center
      * @param longitude of the circle's center
-     * @param radius to the circle
+     * @param radius to the circle, in metres
      * @return set of tasks
      */
 
     @Override
     public Set<TaskInfo> getNearbyTasks(double latitude, double longitude, double radius) {
-        return taskQuad.getNearbyTasks(latitude,longitude,radius);
+        return TaskQuad.getInstance().getNearbyTasks(latitude,longitude,radius);
+    }
+
+    /**
+     * Count tasks from all activities within a circle with center at the given latitude and longitude, and with given radius
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius to the circle, in metres
+     * @return number of tasks
+     */
+
+    @Override
+    public long countNearbyTasks(double latitude, double longitude, double radius) {
+        return TaskQuad.getInstance().countNearbyTasks(latitude, longitude, radius);
+    }
+
+    /**
+     * Get tasks from all activities located within the box with given limits
+     * @param southLatitude of the box
+     * @param westLongitude of the box
+     * @param northLatitude of the box
+     * @param eastLongitude of the box
+     * @return set of tasks
+     */
+
+    @Override
+    public Set<TaskInfo> getTasksInBox(double southLatitude, double westLongitude, double northLatitude, double eastLongitude) {
+        return TaskQuad.getInstance().getTasksInBox(southLatitude, westLongitude, northLatitude, eastLongitude);
+    }
+
+    /**
+     * Get tasks from all activities located within the polygon with given vertices
+     * @param vertices of the polygon, in order
+     * @return set of tasks
+     * @throws SpotsForVolunteeringException if there are less than 3 vertices
+     */
+
+    @Override
+    public Set<TaskInfo> getTasksInPolygon(List<GeoPoint> vertices) throws SpotsForVolunteeringException {
+        return TaskQuad.getInstance().getTasksInPolygon(vertices);
+    }
+
+    /**
+     * Get clusters of tasks from all activities for a map with given viewport and zoom level,
+     * with the number of tasks in each cell of the screen and their centroid
+     * @param southLatitude of the viewport
+     * @param westLongitude of the viewport
+     * @param northLatitude of the viewport
+     * @param eastLongitude of the viewport
+     * @param zoom level of the map
+     * @return list of clusters
+     * @throws SpotsForVolunteeringException if the zoom level is negative, or the viewport has too many cells for it
+     */
+
+    @Override
+    public List<TaskCluster> getTaskClusters(double southLatitude, double westLongitude, double northLatitude, double eastLongitude, int zoom) throws SpotsForVolunteeringException {
+        return TaskQuad.getInstance().getTaskClusters(southLatitude, westLongitude, northLatitude, eastLongitude, zoom);
+    }
+
+    /**
+     * Get tasks from all activities located within the given circle that take place during the given time window
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius to the circle, in metres
+     * @param from start of the time window
+     * @param to end of the time window
+     * @return set of tasks
+     */
+
+    @Override
+    public Set<TaskInfo> getNearbyTasks(double latitude, double longitude, double radius, Date from, Date to) {
+        return TaskQuad.getInstance().getNearbyTasks(latitude, longitude, radius, from, to);
+    }
+
+    /**
+     * Get the first page of tasks from all activities located within the given circle, nearest first
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius to the circle, in metres
+     * @param pageSize maximum number of tasks in the page
+     * @return page of tasks, with the cursor for the next page if there are more
+     * @throws SpotsForVolunteeringException if the page size is not positive
+     */
+
+    @Override
+    public NearbyTaskPage getNearbyTaskPage(double latitude, double longitude, double radius, int pageSize) throws SpotsForVolunteeringException {
+        return TaskQuad.getInstance().getNearbyTaskPage(latitude, longitude, radius, pageSize);
+    }
+
+    /**
+     * Get the next page of nearby tasks, resuming the search of a previous page
+     * @param cursor of the previous page
+     * @param pageSize maximum number of tasks in the page
+     * @return page of tasks, with the cursor for the next page if there are more
+     * @throws SpotsForVolunteeringException if the page size is not positive, or the cursor is unknown or expired
+     */
+
+    @Override
+    public NearbyTaskPage getNextNearbyTaskPage(String cursor, int pageSize) throws SpotsForVolunteeringException {
+        return TaskQuad.getInstance().getNextNearbyTaskPage(cursor, pageSize);
+    }
+
+    /**
+     * Get tasks from all activities located within each of the given circles, searched together
+     * @param probes circles to search, with center and radius in metres
+     * @return map from each probe to its set of tasks
+     */
+
+    @Override
+    public Map<TaskProbe, Set<TaskInfo>> getNearbyTasks(List<TaskProbe> probes) {
+        return TaskQuad.getInstance().getNearbyTasks(probes);
+    }
+
+    /**
+     * Get tasks from all activities nearest to the given latitude and longitude, ordered by increasing distance
+     * @param latitude of the reference point
+     * @param longitude of the reference point
+     * @param count maximum number of tasks
+     * @return list of tasks, nearest first
+     */
+
+    @Override
+    public List<TaskInfo> getNearestTasks(double latitude, double longitude, int count) {
+        return TaskQuad.getInstance().getNearestTasks(latitude, longitude, count);
     }
 
     /**
@@ -0,0 +1,400 @@
+package web.s4v.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of candidate tasks for nearby task queries, shared by queries in the same neighbourhood.
+ * A query is quantized to a radius bucket, the power of 2^(1/4) metres not smaller than its radius,
+ * and to the geohash cell of its center, with a height of about half that bucket.
+ * Each entry keeps the tasks in the box enclosing every circle centered in its cell with the radius of its bucket,
+ * hence any query mapped to the entry finds all its tasks among them, and only has to filter them exactly.
+ * Since the box of an entry is larger than the circle of a query, an entry is only created on the second miss
+ * of its key among the recent ones, so that queries which are not repeated cost no more than searching the quad tree.
+ * Entries are evicted in least recently used order once there are too many of them, or too many candidates overall.
+ * Inserting or deleting a task removes only the entries whose box contains it.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+
+public class NearbyTaskCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 16384;
+    static final int DEFAULT_MAX_CANDIDATES = 1 << 19;
+    static final int BUCKETS_PER_OCTAVE = 4;
+    static final int MIN_BUCKET = 4 * BUCKETS_PER_OCTAVE;
+    static final int MAX_BUCKET = 17 * BUCKETS_PER_OCTAVE;
+    static final int MAX_LATITUDE_BITS = 23;
+    static final int GEOHASH_BITS = 48;
+
+    /**
+     * Tasks in the box of an entry, with their coordinates in parallel arrays,
+     * so that queries filter contiguous primitives. Candidates are never changed once cached.
+     */
+    static final class Candidates {
+        final Task[] tasks;
+        final double[] xs;
+        final double[] ys;
+        final int size;
+
+        Candidates(Task[] tasks, double[] xs, double[] ys, int size) {
+            this.tasks = tasks;
+            this.xs = xs;
+            this.ys = ys;
+            this.size = size;
+        }
+    }
+
+    private final TaskQuad taskQuad;
+    private final int maxEntries;
+    private final int maxCandidates;
+    private final LinkedHashMap<Long, Candidates> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, Boolean> missed = new LinkedHashMap<>(16, 0.75f, true);
+    private final int[] bucketEntries = new int[MAX_BUCKET + 1];
+    private long candidateCount;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create a cache for given quad tree with default limits
+     * @param taskQuad where tasks are searched on misses
+     */
+    NearbyTaskCache(TaskQuad taskQuad) {
+        this(taskQuad, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CANDIDATES);
+    }
+
+    /**
+     * Create a cache for given quad tree
+     * @param taskQuad where tasks are searched on misses
+     * @param maxEntries maximum number of entries
+     * @param maxCandidates maximum number of candidates in all entries
+     */
+    NearbyTaskCache(TaskQuad taskQuad, int maxEntries, int maxCandidates) {
+        this.taskQuad = taskQuad;
+        this.maxEntries = maxEntries;
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Candidates for a query with given center and radius, from the cache or, on a repeated miss, from the quad tree.
+     * Candidates found in the quad tree are only cached if no task was inserted or deleted meanwhile.
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius of the circle, in metres
+     * @return candidates including all tasks in the circle, or null if the query should search the quad tree itself,
+     * because the radius is too large to be cached or its key missed for the first time
+     */
+
+    Candidates get(double latitude, double longitude, double radius) {
+        int bucket = bucketOf(radius);
+        int latitudeBits;
+        long row;
+        long column;
+        long key;
+        long version;
+        Candidates candidates;
+
+        if (bucket > MAX_BUCKET) {
+            synchronized (this) {
+                misses++;
+            }
+            return null;
+        }
+        latitudeBits = latitudeBits(bucket);
+        row = rowOf(latitude, latitudeBits);
+        column = columnOf(longitude, latitudeBits);
+        key = keyOf(bucket, row, column);
+        synchronized (this) {
+            candidates = entries.get(key);
+            if (candidates != null) {
+                hits++;
+                return candidates;
+            }
+            misses++;
+            if (missed.remove(key) == null) {
+                missed.put(key, Boolean.TRUE);
+                if (missed.size() > maxEntries)
+                    missed.remove(missed.keySet().iterator().next());
+                return null;
+            }
+            version = this.version;
+        }
+
+        candidates = search(boxOf(bucket, row, column));
+        synchronized (this) {
+            if (version == this.version && !entries.containsKey(key)) {
+                entries.put(key, candidates);
+                bucketEntries[bucket]++;
+                candidateCount += candidates.size;
+                evict();
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Remove the entries whose box contains given task, which was inserted or deleted
+     * @param task inserted or deleted
+     */
+
+    void invalidate(Task task) {
+        invalidate(task.getY(), task.getX());
+    }
+
+    /**
+     * Remove the entries whose box contains given location, where a task was inserted, deleted or moved
+     * @param latitude of the location
+     * @param longitude of the location
+     */
+
+    synchronized void invalidate(double latitude, double longitude) {
+        version++;
+        for (int bucket = MIN_BUCKET; bucket <= MAX_BUCKET; bucket++) {
+            if (bucketEntries[bucket] == 0)
+                continue;
+
+            int latitudeBits = latitudeBits(bucket);
+            double radius = radiusOf(bucket);
+            double latitudeSpan = radius / TaskQuad.METRES_PER_DEGREE;
+            double farthestLatitude = Math.min(90, Math.abs(latitude) + 2 * latitudeSpan + cellSize(latitudeBits));
+            double longitudeSpan = TaskQuad.longitudeSpan(farthestLatitude, radius);
+            long minRow = rowOf(latitude - latitudeSpan, latitudeBits);
+            long maxRow = rowOf(latitude + latitudeSpan, latitudeBits);
+            long minColumn = columnOf(longitude - longitudeSpan, latitudeBits);
+            long maxColumn = columnOf(longitude + longitudeSpan, latitudeBits);
+
+            for (long row = minRow; row <= maxRow; row++)
+                for (long column = minColumn; column <= maxColumn; column++) {
+                    double[] box = boxOf(bucket, row, column);
+
+                    if (longitude >= box[0] && latitude >= box[1] && longitude <= box[2] && latitude <= box[3])
+                        remove(keyOf(bucket, row, column), bucket);
+                }
+        }
+    }
+
+    /**
+     * Remove all entries, as when many tasks are inserted at once
+     */
+
+    synchronized void clear() {
+        version++;
+        entries.clear();
+        missed.clear();
+        Arrays.fill(bucketEntries, 0);
+        candidateCount = 0;
+    }
+
+    /**
+     * Number of queries answered from cached candidates
+     * @return hits
+     */
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of queries that had to search the quad tree, including those with radius too large to be cached
+     * @return misses
+     */
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Number of entries evicted to keep the cache within its limits
+     * @return evictions
+     */
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Number of entries currently cached
+     * @return size
+     */
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Search the quad tree for the tasks in given box
+     * @param box as {minLongitude, minLatitude, maxLongitude, maxLatitude}
+     * @return candidates
+     */
+
+    private Candidates search(double[] box) {
+        List<Task> found = new ArrayList<>();
+        Task[] tasks;
+        double[] xs;
+        double[] ys;
+
+        taskQuad.forEachInBox(box[0], box[1], box[2], box[3], found::add);
+        tasks = found.toArray(new Task[0]);
+        xs = new double[tasks.length];
+        ys = new double[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            xs[i] = tasks[i].getX();
+            ys[i] = tasks[i].getY();
+        }
+        return new Candidates(tasks, xs, ys, tasks.length);
+    }
+
+    /**
+     * Evict least recently used entries while the cache exceeds its limits
+     */
+
+    private void evict() {
+        Iterator<Map.Entry<Long, Candidates>> iterator = entries.entrySet().iterator();
+
+        while ((entries.size() > maxEntries || candidateCount > maxCandidates) && iterator.hasNext()) {
+            Map.Entry<Long, Candidates> eldest = iterator.next();
+
+            iterator.remove();
+            bucketEntries[(int) (eldest.getKey() >>> GEOHASH_BITS)]--;
+            candidateCount -= eldest.getValue().size;
+            evictions++;
+        }
+    }
+
+    /**
+     * Remove the entry with given key, if cached
+     * @param key of the entry
+     * @param bucket of the entry
+     */
+
+    private void remove(long key, int bucket) {
+        Candidates candidates = entries.remove(key);
+
+        if (candidates != null) {
+            bucketEntries[bucket]--;
+            candidateCount -= candidates.size;
+        }
+    }
+
+    /**
+     * The box enclosing every circle centered in given cell with the radius of given bucket,
+     * as {minLongitude, minLatitude, maxLongitude, maxLatitude}
+     * @param bucket of radius
+     * @param row of the cell, from the south
+     * @param column of the cell, from the west
+     * @return box
+     */
+
+    private static double[] boxOf(int bucket, long row, long column) {
+        int latitudeBits = latitudeBits(bucket);
+        double size = cellSize(latitudeBits);
+        double radius = radiusOf(bucket);
+        double latitudeSpan = radius / TaskQuad.METRES_PER_DEGREE;
+        double south = -90 + row * size;
+        double west = -180 + column * size;
+        double farthestLatitude = Math.max(Math.abs(south), Math.abs(south + size));
+        double longitudeSpan = TaskQuad.longitudeSpan(Math.min(90, farthestLatitude), radius);
+
+        return new double[] { west - longitudeSpan, south - latitudeSpan,
+                west + size + longitudeSpan, south + size + latitudeSpan };
+    }
+
+    /**
+     * The bucket of given radius
+     * @param radius in metres
+     * @return bucket, whose radius is not smaller than the given one
+     */
+
+    static int bucketOf(double radius) {
+        int bucket = Math.max(MIN_BUCKET, (int) Math.ceil(BUCKETS_PER_OCTAVE * Math.log(radius) / Math.log(2)));
+
+        return radiusOf(bucket) < radius ? bucket + 1 : bucket;
+    }
+
+    /**
+     * The radius of given bucket
+     * @param bucket of radius
+     * @return radius in metres
+     */
+
+    static double radiusOf(int bucket) {
+        return Math.pow(2, (double) bucket / BUCKETS_PER_OCTAVE);
+    }
+
+    /**
+     * Number of latitude bits of the geohash cells of given bucket, whose height is at most half its radius.
+     * Cells have one more longitude bit, so they have the same size in degrees both ways.
+     * @param bucket of radius
+     * @return number of bits
+     */
+
+    static int latitudeBits(int bucket) {
+        double bits = Math.log(360 * TaskQuad.METRES_PER_DEGREE / radiusOf(bucket)) / Math.log(2);
+
+        return Math.min(MAX_LATITUDE_BITS, (int) Math.ceil(bits));
+    }
+
+    /**
+     * Size in degrees of the cells with given number of latitude bits
+     * @param latitudeBits number of bits
+     * @return size
+     */
+
+    private static double cellSize(int latitudeBits) {
+        return 180.0 / (1L << latitudeBits);
+    }
+
+    /**
+     * Row, from the south, of the cell containing given latitude
+     * @param latitude in degrees
+     * @param latitudeBits number of latitude bits of the cells
+     * @return row
+     */
+
+    private static long rowOf(double latitude, int latitudeBits) {
+        long row = (long) Math.floor((latitude + 90) / cellSize(latitudeBits));
+
+        return Math.max(0, Math.min((1L << latitudeBits) - 1, row));
+    }
+
+    /**
+     * Column, from the west, of the cell containing given longitude
+     * @param longitude in degrees
+     * @param latitudeBits number of latitude bits of the cells, which have one more longitude bit
+     * @return column
+     */
+
+    private static long columnOf(double longitude, int latitudeBits) {
+        long column = (long) Math.floor((longitude + 180) / cellSize(latitudeBits));
+
+        return Math.max(0, Math.min((1L << (latitudeBits + 1)) - 1, column));
+    }
+
+    /**
+     * Key of the entry for given bucket and cell, with the geohash of the cell in the lower bits,
+     * interleaving the bits of its column and row from the most significant, longitude first
+     * @param bucket of radius
+     * @param row of the cell
+     * @param column of the cell
+     * @return key
+     */
+
+    private static long keyOf(int bucket, long row, long column) {
+        int latitudeBits = latitudeBits(bucket);
+        long geohash = 0;
+
+        for (int bit = latitudeBits; bit >= 0; bit--) {
+            geohash = geohash << 1 | (column >>> bit & 1);
+            if (bit > 0)
+                geohash = geohash << 1 | (row >>> (bit - 1) & 1);
+        }
+        return (long) bucket << GEOHASH_BITS | geohash;
+    }
+}
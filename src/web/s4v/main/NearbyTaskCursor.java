@@ -0,0 +1,142 @@
+package web.s4v.main;
+
+import web.s4v.quad.DistanceIterator;
+import web.s4v.shared.TaskInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Resumable search for the tasks within a circle, by increasing great-circle distance to its center.
+ * Tasks come from an incremental nearest neighbour search in the quad tree, which orders them by distance
+ * in degrees, and wait in a queue ordered by their distance in metres until no task still to come can be nearer.
+ * That is known from a lower bound, in metres, of the distance of any task at a given distance in degrees,
+ * hence tasks are returned in exact order without ever sorting all tasks in the circle.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+
+class NearbyTaskCursor {
+
+    /**
+     * A task waiting to be returned, with its distance to the center
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final double distance;
+        final Task task;
+
+        Candidate(double distance, Task task) {
+            this.distance = distance;
+            this.task = task;
+        }
+
+        public int compareTo(Candidate other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+
+    private final double latitude;
+    private final double longitude;
+    private final double radius;
+    private final double metresPerRadian;
+    private final PriorityQueue<Candidate> waiting = new PriorityQueue<>();
+    private DistanceIterator<Task> nearest;
+    private long lastUsed;
+
+    /**
+     * Create a cursor over the tasks of given quad tree within given circle
+     * @param taskQuad where tasks are searched
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius of the circle, in metres, infinite for all tasks
+     */
+
+    NearbyTaskCursor(TaskQuad taskQuad, double latitude, double longitude, double radius) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.metresPerRadian = TaskQuad.EARTH_RADIUS * boundFactor(taskQuad, latitude, longitude);
+        this.nearest = taskQuad.nearestIterator(longitude, latitude);
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * The next tasks by increasing distance
+     * @param count maximum number of tasks
+     * @return list of tasks, nearest first, shorter than count only if there are no more tasks
+     */
+
+    synchronized List<TaskInfo> next(int count) {
+        List<TaskInfo> taskInfoList = new ArrayList<>();
+
+        lastUsed = System.currentTimeMillis();
+        while (taskInfoList.size() < count && hasNext())
+            taskInfoList.add(waiting.poll().task.getTaskInfo());
+        return taskInfoList;
+    }
+
+    /**
+     * Check if there are more tasks in the circle, searching until the nearest of them is known
+     * @return true if there are, false otherwise
+     */
+
+    synchronized boolean hasNext() {
+        while (nearest != null && nearest.hasNext()) {
+            double bound = metresPerRadian * Math.toRadians(Math.sqrt(nearest.peekDistanceSquared()));
+
+            if (bound > radius) {
+                nearest = null;
+                break;
+            }
+            if (!waiting.isEmpty() && waiting.peek().distance <= bound)
+                break;
+
+            Task task = nearest.next();
+            double distance = TaskQuad.distance(latitude, longitude, task.getY(), task.getX());
+
+            if (distance <= radius)
+                waiting.add(new Candidate(distance, task));
+        }
+        return !waiting.isEmpty();
+    }
+
+    /**
+     * Time of the last request of tasks
+     * @return time in milliseconds since the epoch
+     */
+
+    synchronized long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Factor k such that the central angle between the center and any task in the quad tree is at least k times
+     * their distance in degrees, converted to radians. Since the haversine of the angle is at least the haversines
+     * of both differences of coordinates times the product of the cosines of the latitudes, it follows from
+     * the cosine of the latitude farthest from the equator and the chord of the largest difference of coordinates.
+     * The current boundaries of the quad tree are used, since it grows to cover tasks outside its initial area.
+     * @param taskQuad where tasks are searched
+     * @param latitude of the center
+     * @param longitude of the center
+     * @return factor, zero if no bound is known
+     */
+
+    private static double boundFactor(TaskQuad taskQuad, double latitude, double longitude) {
+        double northernmostLatitude = taskQuad.getTopLeftY();
+        double southernmostLatitude = taskQuad.getBottomRightY();
+        double westernmostLongitude = taskQuad.getTopLeftX();
+        double easternmostLongitude = taskQuad.getBottomRightX();
+        double farthestLatitude = Math.max(Math.abs(latitude),
+                Math.max(Math.abs(northernmostLatitude), Math.abs(southernmostLatitude)));
+        double largestDifference = Math.max(
+                Math.max(Math.abs(longitude - westernmostLongitude), Math.abs(longitude - easternmostLongitude)),
+                Math.max(Math.abs(latitude - northernmostLatitude), Math.abs(latitude - southernmostLatitude)));
+        double halfAngle = Math.toRadians(largestDifference) / 2;
+
+        if (farthestLatitude >= 90 || halfAngle >= Math.PI / 2)
+            return 0;
+        return Math.cos(Math.toRadians(farthestLatitude)) * (halfAngle == 0 ? 1 : Math.sin(halfAngle) / halfAngle);
+    }
+}
@@ -1,9 +1,13 @@
 package web.s4v.main;
 
+import web.s4v.quad.HasInterval;
+import web.s4v.quad.PointOutOfBoundException;
 import web.s4v.shared.*;
 
 import java.io.Serializable;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 
@@ -14,10 +18,10 @@ import java.util.UUID;
  * @since April 2023
  *
  * @extends MessageBroadcaster
- * @implements HasPoint, MessageObserver, Serializable
+ * @implements HasPoint, HasInterval, MessageObserver, Serializable
  */
 
-public class Task extends MessageBroadcaster implements HasPoint, MessageObserver, Serializable{
+public class Task extends MessageBroadcaster implements HasPoint, HasInterval, MessageObserver, Serializable{
     private TaskInfo taskInfo;
     private Set<Volunteer> enrolledVolunteers = new HashSet<>();
 
@@ -95,16 +99,33 @@ public class Task extends MessageBroadcaster implements HasPoint, MessageObserve
 
     /**
      * Change TaskInfo describing this volunteer. It is only changed if it had null id, or it has the same ID.
+     * If its location or dates change, the task is relocated in TaskQuad, which finds it by its previous location,
+     * before the new location is recorded; its new dates are set before, to be included in the time summaries.
+     * A task that TaskQuad does not have is not inserted, since tasks are indexed when created and removed.
+     * Like TaskQuad, it raises the unchecked PointOutOfBoundException if the new location is not finite,
+     * and then nothing is changed.
      * @param taskInfo to change
      */
 
     void setTaskInfo(TaskInfo taskInfo) {
+        TaskQuad taskQuad = TaskQuad.getInstance();
+        double latitude = taskInfo.getLatitude();
+        double longitude = taskInfo.getLongitude();
+        boolean moved = latitude != getY() || longitude != getX();
+        boolean rescheduled = !Objects.equals(taskInfo.getStart(), this.taskInfo.getStart())
+                || !Objects.equals(taskInfo.getEnd(), this.taskInfo.getEnd());
+
+        if (moved && !(Double.isFinite(longitude) && Double.isFinite(latitude)))
+            throw new PointOutOfBoundException();
         this.taskInfo.setActivityId(taskInfo.getActivityId());
         this.taskInfo.setId(taskInfo.getId());
         this.taskInfo.setName(taskInfo.getName());
-        this.taskInfo.setLongitude(taskInfo.getLongitude());
         this.taskInfo.setStart(taskInfo.getStart());
         this.taskInfo.setEnd(taskInfo.getEnd());
+        if (moved || rescheduled)
+            taskQuad.relocate(this, longitude, latitude);
+        this.taskInfo.setLatitude(latitude);
+        this.taskInfo.setLongitude(longitude);
     }
 
     /**
@@ -118,21 +139,43 @@ public class Task extends MessageBroadcaster implements HasPoint, MessageObserve
 
     /**
      * The longitude where this task takes place, as defined by TaskInfo. Longitude is the "horizontal" (x) coordinate.
-     * @return latitude of task
+     * @return longitude of task
      */
 
     @Override
     public double getX() {
-        return taskInfo.getLatitude();
+        return taskInfo.getLongitude();
     }
 
     /**
      * The latitude where this task takes place, as defined by TaskInfo. Latitude is the "vertical" (y) coordinate,
-     * @return longitude of task
+     * @return latitude of task
      */
 
     @Override
     public double getY() {
-        return taskInfo.getLongitude();
+        return taskInfo.getLatitude();
+    }
+
+    /**
+     * The time when this task starts, as defined by TaskInfo.
+     * @return start in milliseconds since the epoch, or the earliest time if it has no start date
+     */
+
+    @Override
+    public long getStart() {
+        Date start = taskInfo.getStart();
+        return start == null ? Long.MIN_VALUE : start.getTime();
+    }
+
+    /**
+     * The time when this task ends, as defined by TaskInfo.
+     * @return end in milliseconds since the epoch, or the latest time if it has no end date
+     */
+
+    @Override
+    public long getEnd() {
+        Date end = taskInfo.getEnd();
+        return end == null ? Long.MAX_VALUE : end.getTime();
     }
 }
@@ -0,0 +1,239 @@
+package web.s4v.main;
+
+import web.s4v.quad.MappedQuadtree;
+import web.s4v.quad.PointOutOfBoundException;
+import web.s4v.shared.SpotsForVolunteeringException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Catalogue of tasks kept off the heap, for the millions of past tasks that need not be kept as objects.
+ * Their locations are indexed in a memory-mapped quad tree, whose references are positions in a table of ids,
+ * also memory-mapped, with the two halves of each task's UUID. Both files are kept in a directory
+ * and reopened as they are, so the catalogue is searchable right after a restart, without rebuilding it.
+ * Searches return task ids, selected as in TaskQuad: by geodesic distance within a radius, or nearest first.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+
+public class TaskArchive {
+
+    static final String INDEX_FILE = "tasks.quad";
+    static final String IDS_FILE = "tasks.ids";
+    static final int INITIAL_IDS = 1 << 16;
+
+    private static final int IDS_HEADER_SIZE = 16;
+    private static final int ID_SIZE = 16;
+
+    private final MappedQuadtree index;
+    private final RandomAccessFile idsFile;
+    private volatile MappedByteBuffer ids;
+    private volatile long size;
+
+    /**
+     * Open the catalogue in given directory, creating it if it does not exist. A new catalogue covers
+     * the area of TaskQuad.
+     * @param directory with the files of the catalogue
+     * @throws SpotsForVolunteeringException if the files cannot be created, read or mapped
+     */
+
+    public TaskArchive(File directory) throws SpotsForVolunteeringException {
+        File indexFile = new File(directory, INDEX_FILE);
+        MappedQuadtree index = null;
+        RandomAccessFile idsFile = null;
+
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("cannot create " + directory);
+            if (indexFile.exists())
+                index = MappedQuadtree.open(indexFile.toPath());
+            else
+                index = MappedQuadtree.create(indexFile.toPath(), TaskQuad.westernmostLongitude,
+                        TaskQuad.northernmostLatitude, TaskQuad.easternmostLongitude, TaskQuad.southernmostLatitude);
+            idsFile = new RandomAccessFile(new File(directory, IDS_FILE), "rw");
+            this.index = index;
+            this.idsFile = idsFile;
+            mapIds(INITIAL_IDS);
+            size = ids.getLong(0);
+        } catch (IOException e) {
+            closeQuietly(idsFile, index);
+            throw new SpotsForVolunteeringException("Failed to open task archive: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Number of tasks in the catalogue
+     * @return size
+     */
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Add given task to the catalogue. Only its id and location are kept.
+     * @param task to archive
+     * @throws SpotsForVolunteeringException if the task has no id, or its location is out of the catalogue,
+     * or the files cannot grow
+     */
+
+    public synchronized void archive(Task task) throws SpotsForVolunteeringException {
+        long reference = size;
+        UUID uuid;
+
+        if (task.getId() == null) throw new SpotsForVolunteeringException("null");
+        uuid = UUID.fromString(task.getId());
+        try {
+            mapIds(reference + 1);
+            ids.putLong(position(reference), uuid.getMostSignificantBits());
+            ids.putLong(position(reference) + 8, uuid.getLeastSignificantBits());
+            index.insert(task.getX(), task.getY(), reference);
+        } catch (PointOutOfBoundException e) {
+            throw new SpotsForVolunteeringException("out of bounds");
+        } catch (IOException e) {
+            throw new SpotsForVolunteeringException("Failed to archive task: " + e.getMessage());
+        }
+        ids.putLong(0, reference + 1);
+        size = reference + 1;
+    }
+
+    /**
+     * Ids of the archived tasks located within a circle centered at the given latitude and longitude,
+     * and with given radius
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius to the circle, in metres
+     * @return set of task ids
+     */
+
+    public Set<String> getNearbyTaskIds(double latitude, double longitude, double radius) {
+        Set<String> taskIds = new HashSet<>();
+        TaskQuad.Circle circle = new TaskQuad.Circle(latitude, longitude, radius);
+
+        index.forEachInBox(longitude - circle.longitudeSpan, latitude - circle.latitudeSpan,
+                longitude + circle.longitudeSpan, latitude + circle.latitudeSpan, (reference, x, y) -> {
+            if (circle.contains(x, y))
+                taskIds.add(idOf(reference));
+            return true;
+        });
+        return taskIds;
+    }
+
+    /**
+     * Ids of the archived tasks nearest to the given latitude and longitude, ordered by increasing distance
+     * @param latitude of the reference point
+     * @param longitude of the reference point
+     * @param count maximum number of tasks
+     * @return list of task ids, nearest first
+     */
+
+    public List<String> getNearestTaskIds(double latitude, double longitude, int count) {
+        List<String> taskIds = new ArrayList<>();
+
+        for (long reference : index.findNearest(longitude, latitude, count))
+            taskIds.add(idOf(reference));
+        return taskIds;
+    }
+
+    /**
+     * Write the changes to the disk
+     * @throws SpotsForVolunteeringException if the files cannot be written
+     */
+
+    public synchronized void flush() throws SpotsForVolunteeringException {
+        try {
+            ids.force();
+            index.flush();
+        } catch (IOException e) {
+            throw new SpotsForVolunteeringException("Failed to flush task archive: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the changes to the disk and close the files. The catalogue must not be used afterwards.
+     * @throws SpotsForVolunteeringException if the files cannot be written or closed
+     */
+
+    public synchronized void close() throws SpotsForVolunteeringException {
+        try {
+            ids.force();
+            idsFile.close();
+            index.close();
+        } catch (IOException e) {
+            throw new SpotsForVolunteeringException("Failed to close task archive: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The id of the task with given reference
+     * @param reference of the task
+     * @return task id
+     */
+
+    private String idOf(long reference) {
+        MappedByteBuffer ids = this.ids;
+        int position = position(reference);
+
+        return new UUID(ids.getLong(position), ids.getLong(position + 8)).toString();
+    }
+
+    /**
+     * Map the table of ids with room for at least given number of ids, doubling it when it grows.
+     * The new mapping is published before any reference beyond the previous one is indexed.
+     * @param count of ids
+     * @throws IOException if the file cannot grow or be mapped
+     */
+
+    private void mapIds(long count) throws IOException {
+        long length = Math.max(idsFile.length(), IDS_HEADER_SIZE + (long) INITIAL_IDS * ID_SIZE);
+
+        if (ids != null && position(count) <= ids.capacity())
+            return;
+        while (length < IDS_HEADER_SIZE + count * ID_SIZE)
+            length = IDS_HEADER_SIZE + 2 * (length - IDS_HEADER_SIZE);
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("too many tasks");
+        if (idsFile.length() < length)
+            idsFile.setLength(length);
+
+        MappedByteBuffer mapped = idsFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        ids = mapped;
+    }
+
+    /**
+     * Close the files that were opened before opening the catalogue failed, ignoring further failures
+     * @param idsFile with the ids of the tasks, or null if it was not opened
+     * @param index of the tasks, or null if it was not opened
+     */
+
+    private static void closeQuietly(RandomAccessFile idsFile, MappedQuadtree index) {
+        try {
+            if (idsFile != null)
+                idsFile.close();
+        } catch (IOException e) {
+            // the catalogue is already failing
+        }
+        try {
+            if (index != null)
+                index.close();
+        } catch (IOException e) {
+            // the catalogue is already failing
+        }
+    }
+
+    private static int position(long reference) {
+        return (int) (IDS_HEADER_SIZE + reference * ID_SIZE);
+    }
+}
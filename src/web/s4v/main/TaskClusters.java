@@ -0,0 +1,302 @@
+package web.s4v.main;
+
+import web.s4v.shared.SpotsForVolunteeringException;
+import web.s4v.shared.TaskCluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clusters of tasks for maps at each zoom level, so that a zoomed out map receives a count and a centroid
+ * for each cell of the screen instead of every task. At zoom level z, a square cell of CLUSTER_PIXELS pixels,
+ * on tiles of TILE_PIXELS pixels spanning 360 / 2^z degrees of longitude, is taken as a cell of the same size
+ * in degrees of latitude and longitude, aligned with the south pole and the antimeridian.
+ * For zoom levels up to AGGREGATE_ZOOM, the number of tasks in each cell and the sums of their coordinates are
+ * kept for every cell with tasks, and updated as tasks are inserted, deleted or moved, so a map is answered
+ * from the cells in its viewport whatever the number of tasks. Beyond that level cells are small,
+ * hence the tasks in the viewport are few enough to be aggregated from the index when requested.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+
+public class TaskClusters {
+
+    static final int TILE_PIXELS = 256;
+    static final int CLUSTER_PIXELS = 64;
+    static final int AGGREGATE_ZOOM = 12;
+    static final int MAX_ZOOM = 22;
+    static final long MAX_VIEWPORT_CELLS = 1 << 16;
+
+    /**
+     * Number of tasks in a cell and the sums of their coordinates, whose centroid is their average.
+     */
+    static final class Aggregate {
+        long count;
+        double latitudeSum;
+        double longitudeSum;
+
+        void add(double latitude, double longitude) {
+            count++;
+            latitudeSum += latitude;
+            longitudeSum += longitude;
+        }
+
+        void remove(double latitude, double longitude) {
+            count--;
+            latitudeSum -= latitude;
+            longitudeSum -= longitude;
+        }
+    }
+
+    private final TaskQuad taskQuad;
+    private final List<Map<Long, Aggregate>> levels = new ArrayList<>(AGGREGATE_ZOOM + 1);
+
+    /**
+     * Create empty clusters for given quad tree
+     * @param taskQuad where tasks are searched beyond the aggregated zoom levels
+     */
+    TaskClusters(TaskQuad taskQuad) {
+        this.taskQuad = taskQuad;
+        for (int zoom = 0; zoom <= AGGREGATE_ZOOM; zoom++)
+            levels.add(new HashMap<>());
+    }
+
+    /**
+     * Count given task, which was inserted, in the cells containing it
+     * @param task inserted
+     */
+
+    synchronized void add(Task task) {
+        add(task.getY(), task.getX());
+    }
+
+    /**
+     * Count all given tasks, which were inserted at once
+     * @param tasks inserted
+     */
+
+    synchronized void addAll(Collection<? extends Task> tasks) {
+        for (Task task : tasks)
+            add(task.getY(), task.getX());
+    }
+
+    /**
+     * Discount given task, which was deleted, from the cells containing it
+     * @param task deleted
+     */
+
+    synchronized void remove(Task task) {
+        remove(task.getY(), task.getX());
+    }
+
+    /**
+     * Move given task, which still reports its previous location, to the cells containing the new one
+     * @param task moved
+     * @param latitude of the new location
+     * @param longitude of the new location
+     */
+
+    synchronized void move(Task task, double latitude, double longitude) {
+        remove(task.getY(), task.getX());
+        add(latitude, longitude);
+    }
+
+    /**
+     * Number of cells with tasks over all aggregated zoom levels
+     * @return number of cells
+     */
+
+    public synchronized int size() {
+        int size = 0;
+
+        for (Map<Long, Aggregate> level : levels)
+            size += level.size();
+        return size;
+    }
+
+    /**
+     * The clusters of tasks in the cells of given zoom level that intersect the viewport with given limits.
+     * Clusters cover whole cells, so those on the edges of the viewport may include tasks outside it.
+     * @param southLatitude of the viewport
+     * @param westLongitude of the viewport
+     * @param northLatitude of the viewport
+     * @param eastLongitude of the viewport
+     * @param zoom level of the map, where levels above MAX_ZOOM are taken as MAX_ZOOM
+     * @return list of clusters, one for each cell with tasks
+     * @throws SpotsForVolunteeringException if the zoom level is negative, or the viewport has too many cells
+     */
+
+    List<TaskCluster> getClusters(double southLatitude, double westLongitude, double northLatitude,
+                                  double eastLongitude, int zoom) throws SpotsForVolunteeringException {
+        List<TaskCluster> clusters = new ArrayList<>();
+        long minRow;
+        long maxRow;
+        long minColumn;
+        long maxColumn;
+
+        if (zoom < 0) throw new SpotsForVolunteeringException("zoom level must not be negative");
+        if (!(southLatitude <= northLatitude && westLongitude <= eastLongitude))
+            return clusters;
+        zoom = Math.min(zoom, MAX_ZOOM);
+        minRow = rowOf(southLatitude, zoom);
+        maxRow = rowOf(northLatitude, zoom);
+        minColumn = columnOf(westLongitude, zoom);
+        maxColumn = columnOf(eastLongitude, zoom);
+        if ((maxRow - minRow + 1) * (maxColumn - minColumn + 1) > MAX_VIEWPORT_CELLS)
+            throw new SpotsForVolunteeringException("viewport has too many cells for zoom level");
+
+        if (zoom <= AGGREGATE_ZOOM) {
+            synchronized (this) {
+                collect(levels.get(zoom), zoom, minRow, maxRow, minColumn, maxColumn, clusters);
+            }
+        } else {
+            Map<Long, Aggregate> level = new HashMap<>();
+            double size = cellSize(zoom);
+            int tasksZoom = zoom;
+
+            taskQuad.forEachInBox(-180 + minColumn * size, -90 + minRow * size,
+                    -180 + (maxColumn + 1) * size, -90 + (maxRow + 1) * size, task -> {
+                level.computeIfAbsent(keyOf(rowOf(task.getY(), tasksZoom), columnOf(task.getX(), tasksZoom)),
+                        key -> new Aggregate()).add(task.getY(), task.getX());
+                return true;
+            });
+            collect(level, zoom, minRow, maxRow, minColumn, maxColumn, clusters);
+        }
+        return clusters;
+    }
+
+    /**
+     * Add the clusters of the cells with given aggregates in given range of rows and columns to given list,
+     * looking each cell up, or scanning all aggregates if there are less of these
+     * @param level aggregates of the cells with tasks, by key
+     * @param zoom level of the cells
+     * @param minRow first row of the range
+     * @param maxRow last row of the range
+     * @param minColumn first column of the range
+     * @param maxColumn last column of the range
+     * @param clusters where clusters are added
+     */
+
+    private static void collect(Map<Long, Aggregate> level, int zoom, long minRow, long maxRow,
+                                long minColumn, long maxColumn, List<TaskCluster> clusters) {
+        if ((maxRow - minRow + 1) * (maxColumn - minColumn + 1) > level.size()) {
+            for (Map.Entry<Long, Aggregate> entry : level.entrySet()) {
+                long row = entry.getKey() >>> 32;
+                long column = entry.getKey() & 0xffffffffL;
+
+                if (row >= minRow && row <= maxRow && column >= minColumn && column <= maxColumn)
+                    clusters.add(clusterOf(entry.getValue(), zoom, row, column));
+            }
+            return;
+        }
+        for (long row = minRow; row <= maxRow; row++)
+            for (long column = minColumn; column <= maxColumn; column++) {
+                Aggregate aggregate = level.get(keyOf(row, column));
+
+                if (aggregate != null)
+                    clusters.add(clusterOf(aggregate, zoom, row, column));
+            }
+    }
+
+    /**
+     * The cluster of given aggregate, in given cell
+     * @param aggregate of the tasks in the cell
+     * @param zoom level of the cell
+     * @param row of the cell, from the south
+     * @param column of the cell, from the west
+     * @return cluster
+     */
+
+    private static TaskCluster clusterOf(Aggregate aggregate, int zoom, long row, long column) {
+        double size = cellSize(zoom);
+        double south = -90 + row * size;
+        double west = -180 + column * size;
+
+        return new TaskCluster(aggregate.latitudeSum / aggregate.count, aggregate.longitudeSum / aggregate.count,
+                aggregate.count, south, west, south + size, west + size);
+    }
+
+    /**
+     * Count a task at given location in the cell containing it at each aggregated zoom level
+     * @param latitude of the task
+     * @param longitude of the task
+     */
+
+    private void add(double latitude, double longitude) {
+        for (int zoom = 0; zoom <= AGGREGATE_ZOOM; zoom++)
+            levels.get(zoom).computeIfAbsent(keyOf(rowOf(latitude, zoom), columnOf(longitude, zoom)),
+                    key -> new Aggregate()).add(latitude, longitude);
+    }
+
+    /**
+     * Discount a task at given location from the cell containing it at each aggregated zoom level,
+     * removing the cells left without tasks
+     * @param latitude of the task
+     * @param longitude of the task
+     */
+
+    private void remove(double latitude, double longitude) {
+        for (int zoom = 0; zoom <= AGGREGATE_ZOOM; zoom++) {
+            Map<Long, Aggregate> level = levels.get(zoom);
+            long key = keyOf(rowOf(latitude, zoom), columnOf(longitude, zoom));
+            Aggregate aggregate = level.get(key);
+
+            if (aggregate == null)
+                continue;
+            aggregate.remove(latitude, longitude);
+            if (aggregate.count <= 0)
+                level.remove(key);
+        }
+    }
+
+    /**
+     * Size in degrees of the cells of given zoom level
+     * @param zoom level
+     * @return size
+     */
+
+    static double cellSize(int zoom) {
+        return 360.0 * CLUSTER_PIXELS / TILE_PIXELS / (1L << zoom);
+    }
+
+    /**
+     * Row, from the south, of the cell of given zoom level containing given latitude
+     * @param latitude in degrees
+     * @param zoom level
+     * @return row
+     */
+
+    static long rowOf(double latitude, int zoom) {
+        long row = (long) Math.floor((latitude + 90) / cellSize(zoom));
+
+        return Math.max(0, Math.min((long) Math.ceil(180 / cellSize(zoom)) - 1, row));
+    }
+
+    /**
+     * Column, from the west, of the cell of given zoom level containing given longitude
+     * @param longitude in degrees
+     * @param zoom level
+     * @return column
+     */
+
+    static long columnOf(double longitude, int zoom) {
+        long column = (long) Math.floor((longitude + 180) / cellSize(zoom));
+
+        return Math.max(0, Math.min((long) Math.ceil(360 / cellSize(zoom)) - 1, column));
+    }
+
+    /**
+     * Key of the aggregate of given cell, with its row in the upper bits and its column in the lower ones
+     * @param row of the cell
+     * @param column of the cell
+     * @return key
+     */
+
+    private static long keyOf(long row, long column) {
+        return row << 32 | column;
+    }
+}
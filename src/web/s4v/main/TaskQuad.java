@@ -1,34 +1,82 @@
 package web.s4v.main;
 
+import web.s4v.quad.DistanceIterator;
+import web.s4v.quad.GridIndex;
+import web.s4v.quad.PointConsumer;
+import web.s4v.quad.PointOutOfBoundException;
 import web.s4v.quad.PointQuadtree;
+import web.s4v.quad.Polygon;
+import web.s4v.quad.QuadtreeStatistics;
+import web.s4v.quad.RTree;
+import web.s4v.quad.Region;
+import web.s4v.quad.SpatialIndex;
+import web.s4v.shared.GeoPoint;
+import web.s4v.shared.NearbyTaskPage;
+import web.s4v.shared.SpotsForVolunteeringException;
+import web.s4v.shared.TaskCluster;
 import web.s4v.shared.TaskInfo;
+import web.s4v.shared.TaskProbe;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Class representing an Activity.
+ * The index of all tasks by location, answering the nearby task queries of the application.
+ * Tasks are kept in a SpatialIndex, with x = longitude and y = latitude, chosen when the index is created
+ * by the system property named by SPATIAL_INDEX_PROPERTY: a quad tree, the default, a uniform grid or an R-tree.
+ * The static boundaries only set the initial area of the index, which grows to cover tasks outside it.
+ * Tasks may be inserted, deleted and moved by several threads at once, but not while insertAll loads a batch.
  * @author José Santos (up202007059)
  * @author Miguel Gomes (up201905102)
  * @since April 2023
- *
- * @extends PointQuadtree<Task>
  */
 
-public class TaskQuad extends PointQuadtree<Task> {
+public class TaskQuad {
 
     static final double NORTHERNMOST_LATITUDE = 42.154058;
     static final double SOUTHERNMOST_LATITUDE = 36.960158;
     static final double EASTERNMOST_LONGITUDE = -6.190217;
     static final double WESTERNMOST_LONGITUDE = -9.500552;
 
+    static final String SPATIAL_INDEX_PROPERTY = "web.s4v.spatialIndex";
+    static final String GRID_CELL_SIZE_PROPERTY = "web.s4v.gridCellSize";
+    static final String QUADTREE = "quadtree";
+    static final String GRID = "grid";
+    static final String RTREE = "rtree";
+    static final double GRID_CELL_SIZE = 0.05;
+
+    static final double EARTH_RADIUS = 6371008.8;
+    static final double METRES_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+    static final double PLANAR_TOLERANCE = 1e-3;
+    static final int MAX_CURSORS = 1024;
+    static final long CURSOR_TIMEOUT = 10 * 60 * 1000;
+
     static double northernmostLatitude = NORTHERNMOST_LATITUDE;
     static double southernmostLatitude = SOUTHERNMOST_LATITUDE;
     static double westernmostLongitude = WESTERNMOST_LONGITUDE;
     static double easternmostLongitude = EASTERNMOST_LONGITUDE;
+    static String spatialIndex = indexProperty();
+    static double gridCellSize = cellSizeProperty();
 
     private static TaskQuad taskQuad = new TaskQuad();
 
+    private final String indexType;
+    private final SpatialIndex<Task> index;
+    private final NearbyTaskCache nearbyTaskCache = new NearbyTaskCache(this);
+    private final TaskClusters taskClusters = new TaskClusters(this);
+    private final ReentrantReadWriteLock updateLock = new ReentrantReadWriteLock();
+    private final LinkedHashMap<String, NearbyTaskCursor> cursors = new LinkedHashMap<>(16, 0.75f, true);
+
     /**
      * Reset quad to its initial state. Use it only for unit testing.
      */
@@ -37,7 +85,8 @@ public class TaskQuad extends PointQuadtree<Task> {
     }
 
     private TaskQuad() {
-        super(westernmostLongitude, northernmostLatitude, easternmostLongitude, southernmostLatitude);
+        this.indexType = spatialIndex;
+        this.index = createIndex(spatialIndex);
     }
 
     /**
@@ -50,6 +99,291 @@ public class TaskQuad extends PointQuadtree<Task> {
         return taskQuad;
     }
 
+    /**
+     * Create an empty index of given type covering the initial area
+     * @param type of index: QUADTREE, GRID or RTREE
+     * @return index
+     */
+
+    private static SpatialIndex<Task> createIndex(String type) {
+        switch (type) {
+            case GRID:
+                return new GridIndex<>(westernmostLongitude, northernmostLatitude, easternmostLongitude,
+                        southernmostLatitude, gridCellSize);
+            case RTREE:
+                return new RTree<>(westernmostLongitude, northernmostLatitude, easternmostLongitude,
+                        southernmostLatitude);
+            default:
+                return new PointQuadtree<>(westernmostLongitude, northernmostLatitude, easternmostLongitude,
+                        southernmostLatitude, true);
+        }
+    }
+
+    /**
+     * Type of index named by the system property, or the quad tree if it names none
+     * @return type of index
+     */
+
+    private static String indexProperty() {
+        String type = System.getProperty(SPATIAL_INDEX_PROPERTY, QUADTREE);
+
+        return type.equals(GRID) || type.equals(RTREE) ? type : QUADTREE;
+    }
+
+    /**
+     * Size of the cells of grids given by the system property, or the default one if it is not a positive number
+     * @return cell size, in degrees
+     */
+
+    private static double cellSizeProperty() {
+        try {
+            double cellSize = Double.parseDouble(System.getProperty(GRID_CELL_SIZE_PROPERTY, ""));
+
+            return cellSize > 0 && cellSize < Double.POSITIVE_INFINITY ? cellSize : GRID_CELL_SIZE;
+        } catch (NumberFormatException e) {
+            return GRID_CELL_SIZE;
+        }
+    }
+
+    /**
+     * The type of index used by TaskQuads created from now on.
+     * @return QUADTREE, GRID or RTREE
+     */
+
+    public static String getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Change the type of index used by TaskQuads created from now on, as by reset.
+     * @param spatialIndex QUADTREE, GRID or RTREE
+     * @throws IllegalArgumentException if it is none of them
+     */
+
+    public static void setSpatialIndex(String spatialIndex) {
+        if (!(QUADTREE.equals(spatialIndex) || GRID.equals(spatialIndex) || RTREE.equals(spatialIndex)))
+            throw new IllegalArgumentException("unknown spatial index: " + spatialIndex);
+        TaskQuad.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * The size of the cells of grids created from now on.
+     * @return cell size, in degrees
+     */
+
+    public static double getGridCellSize() {
+        return gridCellSize;
+    }
+
+    /**
+     * Change the size of the cells of grids created from now on.
+     * @param gridCellSize in degrees
+     * @throws IllegalArgumentException if it is not positive and finite
+     */
+
+    public static void setGridCellSize(double gridCellSize) {
+        if (!(gridCellSize > 0 && gridCellSize < Double.POSITIVE_INFINITY))
+            throw new IllegalArgumentException("grid cell size must be positive and finite");
+        TaskQuad.gridCellSize = gridCellSize;
+    }
+
+    /**
+     * The type of the index of this TaskQuad
+     * @return QUADTREE, GRID or RTREE
+     */
+
+    public String getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * The cache of candidates for nearby task queries, with its hit and miss counters
+     * @return nearby task cache
+     */
+
+    public NearbyTaskCache getNearbyTaskCache() {
+        return nearbyTaskCache;
+    }
+
+    /**
+     * Statistics of the index, if it is a quad tree
+     * @return statistics, or null for other indexes
+     */
+
+    public QuadtreeStatistics getStatistics() {
+        return index instanceof PointQuadtree ? ((PointQuadtree<Task>) index).getStatistics() : null;
+    }
+
+    /**
+     * Check if the work done by queries is being counted, which only quad trees do
+     * @return true if profiled
+     */
+
+    public boolean isProfiling() {
+        return index instanceof PointQuadtree && ((PointQuadtree<Task>) index).isProfiling();
+    }
+
+    /**
+     * Turn on or off the counting of the work done by queries, if the index is a quad tree
+     * @param profiling true to count the work of queries, false to stop counting
+     */
+
+    public void setProfiling(boolean profiling) {
+        if (index instanceof PointQuadtree)
+            ((PointQuadtree<Task>) index).setProfiling(profiling);
+    }
+
+    /**
+     * Number of tasks in the index
+     * @return count of tasks
+     */
+
+    public long size() {
+        return index.size();
+    }
+
+    /**
+     * Minimum longitude of a box containing every task
+     * @return westernmost longitude
+     */
+
+    double getTopLeftX() {
+        return index.getTopLeftX();
+    }
+
+    /**
+     * Maximum latitude of a box containing every task
+     * @return northernmost latitude
+     */
+
+    double getTopLeftY() {
+        return index.getTopLeftY();
+    }
+
+    /**
+     * Maximum longitude of a box containing every task
+     * @return easternmost longitude
+     */
+
+    double getBottomRightX() {
+        return index.getBottomRightX();
+    }
+
+    /**
+     * Minimum latitude of a box containing every task
+     * @return southernmost latitude
+     */
+
+    double getBottomRightY() {
+        return index.getBottomRightY();
+    }
+
+    /**
+     * Insert given task, removing the cached candidates that could include it and counting it in its clusters
+     * @param task to be inserted
+     * @throws PointOutOfBoundException in case task has a location that is not finite
+     */
+
+    public void insert(Task task) throws PointOutOfBoundException {
+        updateLock.readLock().lock();
+        try {
+            index.insert(task);
+            nearbyTaskCache.invalidate(task);
+            taskClusters.add(task);
+        } finally {
+            updateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert all given tasks at once, clearing the cached candidates and counting them in their clusters.
+     * A quad tree is rebuilt from a snapshot of its tasks, so other updates wait until the load is over,
+     * while queries may proceed during it.
+     * @param tasks to be inserted
+     * @throws PointOutOfBoundException in case some task has a location that is not finite
+     */
+
+    public void insertAll(Collection<? extends Task> tasks) throws PointOutOfBoundException {
+        updateLock.writeLock().lock();
+        try {
+            index.insertAll(tasks);
+            nearbyTaskCache.clear();
+            taskClusters.addAll(tasks);
+        } finally {
+            updateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Delete given task, removing the cached candidates that include it and discounting it from its clusters.
+     * A task that is not in the index changes nothing, and other tasks in the same location are kept.
+     * @param task to be deleted
+     * @return true if the task was deleted, false if it is not in the index
+     */
+
+    public boolean delete(Task task) {
+        updateLock.readLock().lock();
+        try {
+            if (!index.delete(task))
+                return false;
+            nearbyTaskCache.invalidate(task);
+            taskClusters.remove(task);
+            return true;
+        } finally {
+            updateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Move given task to a new location, removing the cached candidates that include it in either location,
+     * and moving it to the clusters of the new one.
+     * The task must still report its previous location, and is given the new one by its caller afterwards.
+     * @param task to be moved
+     * @param longitude of the new location
+     * @param latitude of the new location
+     * @return true if the task was moved, false if it is not in the index
+     * @throws PointOutOfBoundException in case the new location is not finite
+     */
+
+    public boolean relocate(Task task, double longitude, double latitude) throws PointOutOfBoundException {
+        updateLock.readLock().lock();
+        try {
+            if (!index.relocate(task, longitude, latitude))
+                return false;
+            nearbyTaskCache.invalidate(task);
+            nearbyTaskCache.invalidate(latitude, longitude);
+            taskClusters.move(task, latitude, longitude);
+            return true;
+        } finally {
+            updateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Pass each task inside the box with given limits to given consumer, which may stop the search by returning false
+     * @param minX westernmost longitude of the box
+     * @param minY southernmost latitude of the box
+     * @param maxX easternmost longitude of the box
+     * @param maxY northernmost latitude of the box
+     * @param consumer of tasks
+     * @return false if the consumer stopped the search, true otherwise
+     */
+
+    boolean forEachInBox(double minX, double minY, double maxX, double maxY, PointConsumer<Task> consumer) {
+        return index.forEachInBox(minX, minY, maxX, maxY, consumer);
+    }
+
+    /**
+     * An iterator over all tasks by increasing distance, in degrees, to given location
+     * @param longitude of the location
+     * @param latitude of the location
+     * @return iterator, nearest first
+     */
+
+    DistanceIterator<Task> nearestIterator(double longitude, double latitude) {
+        return index.nearestIterator(longitude, latitude);
+    }
+
     /**
      * The northernmost latitude used in quad trees.
      * @return northernmost latitude
@@ -121,20 +455,398 @@ public class TaskQuad extends PointQuadtree<Task> {
         TaskQuad.easternmostLongitude = easternmostLongitude;
     }
 
+    /**
+     * Great-circle distance in metres between two locations, computed with the haversine formula.
+     * @param latitude1 of the first location
+     * @param longitude1 of the first location
+     * @param latitude2 of the second location
+     * @param longitude2 of the second location
+     * @return distance in metres
+     */
+
+    static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double h = sinLatitude * sinLatitude
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    /**
+     * Half the width, in degrees of longitude, of the smallest box containing every location within
+     * given distance of a location at given latitude.
+     * @param latitude of the circle's center
+     * @param radius of the circle, in metres
+     * @return longitude span, 180 if the circle reaches a pole
+     */
+
+    static double longitudeSpan(double latitude, double radius) {
+        double sinAngle = Math.sin(Math.min(Math.PI / 2, radius / EARTH_RADIUS));
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+
+        if (sinAngle >= cosLatitude)
+            return 180;
+        return Math.toDegrees(Math.asin(sinAngle / cosLatitude));
+    }
+
     /**
      * A set of infos on tasks located within a circle centered at the given latitude and longitude, and with given radius.
+     * Candidates come from the nearby task cache, for repeated neighbourhoods, or from the index pruned with
+     * the box enclosing the circle. They are then classified by their squared equirectangular distance;
+     * only those too close to the circle's edge for that approximation are checked with the haversine formula.
      * @param latitude of the circle's center
      * @param longitude of the circle's center
-     * @param radius to the circle
+     * @param radius to the circle, in metres
      * @return set of tasks
      */
 
     Set<TaskInfo> getNearbyTasks(double latitude, double longitude, double radius) {
         Set<TaskInfo> taskInfoSet = new HashSet<>();
-        for (Task t : findNear(longitude, latitude, radius))
-            taskInfoSet.add(t.getTaskInfo());
+        Circle circle = new Circle(latitude, longitude, radius);
+        NearbyTaskCache.Candidates candidates = nearbyTaskCache.get(latitude, longitude, radius);
+
+        if (candidates != null) {
+            for (int i = 0; i < candidates.size; i++) {
+                if (circle.contains(candidates.xs[i], candidates.ys[i]))
+                    taskInfoSet.add(candidates.tasks[i].getTaskInfo());
+            }
+            return taskInfoSet;
+        }
+        index.forEachInBox(longitude - circle.longitudeSpan, latitude - circle.latitudeSpan,
+                longitude + circle.longitudeSpan, latitude + circle.latitudeSpan, task -> {
+            if (circle.contains(task))
+                taskInfoSet.add(task.getTaskInfo());
+            return true;
+        });
+        return taskInfoSet;
+    }
+
+    /**
+     * Number of tasks located within a circle centered at the given latitude and longitude, and with given radius.
+     * Parts of the index certainly within the circle are counted from the number of tasks kept in them,
+     * so only the tasks near its edge are classified one by one, and no set is built.
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius to the circle, in metres
+     * @return number of tasks
+     */
+
+    long countNearbyTasks(double latitude, double longitude, double radius) {
+        return index.count(new Circle(latitude, longitude, radius));
+    }
+
+    /**
+     * A set of infos on tasks located within the box with given limits.
+     * @param southLatitude of the box
+     * @param westLongitude of the box
+     * @param northLatitude of the box
+     * @param eastLongitude of the box
+     * @return set of tasks
+     */
+
+    Set<TaskInfo> getTasksInBox(double southLatitude, double westLongitude, double northLatitude, double eastLongitude) {
+        Set<TaskInfo> taskInfoSet = new HashSet<>();
+
+        index.forEachInBox(westLongitude, southLatitude, eastLongitude, northLatitude, task -> {
+            taskInfoSet.add(task.getTaskInfo());
+            return true;
+        });
+        return taskInfoSet;
+    }
+
+    /**
+     * A set of infos on tasks located within the polygon with given vertices, joined by straight lines
+     * in the plane of latitude and longitude. Parts of the index within the polygon are taken whole,
+     * and those outside it are skipped, so only the tasks near its edges are checked.
+     * @param vertices of the polygon, in order
+     * @return set of tasks
+     * @throws SpotsForVolunteeringException if there are less than 3 vertices
+     */
+
+    Set<TaskInfo> getTasksInPolygon(List<GeoPoint> vertices) throws SpotsForVolunteeringException {
+        Set<TaskInfo> taskInfoSet = new HashSet<>();
+
+        if (vertices.size() < 3) throw new SpotsForVolunteeringException("a polygon must have at least 3 vertices");
+        index.forEachIn(new Polygon(vertices), task -> {
+            taskInfoSet.add(task.getTaskInfo());
+            return true;
+        });
+        return taskInfoSet;
+    }
+
+    /**
+     * The clusters of tasks in the cells of the given zoom level that intersect the viewport with given limits,
+     * with the number of tasks in each cell and their centroid, so that their number is bounded by the cells
+     * on the screen rather than by the tasks. Zoomed out levels are answered from the aggregates kept in
+     * TaskClusters as tasks are inserted, deleted and moved; others from the tasks in the viewport.
+     * @param southLatitude of the viewport
+     * @param westLongitude of the viewport
+     * @param northLatitude of the viewport
+     * @param eastLongitude of the viewport
+     * @param zoom level of the map
+     * @return list of clusters
+     * @throws SpotsForVolunteeringException if the zoom level is negative, or the viewport has too many cells for it
+     */
+
+    List<TaskCluster> getTaskClusters(double southLatitude, double westLongitude, double northLatitude,
+                                      double eastLongitude, int zoom) throws SpotsForVolunteeringException {
+        return taskClusters.getClusters(southLatitude, westLongitude, northLatitude, eastLongitude, zoom);
+    }
+
+    /**
+     * A set of infos on tasks located within a circle centered at the given latitude and longitude, and with given radius,
+     * that take place during the given time window, that is, which start before it ends and end after it starts.
+     * In a quad tree, subtrees whose tasks all fall outside the window are skipped, so expired tasks cost nothing
+     * once they fill whole subtrees; other indexes check the window of each task in the box.
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius to the circle, in metres
+     * @param from start of the time window
+     * @param to end of the time window
+     * @return set of tasks
+     */
+
+    Set<TaskInfo> getNearbyTasks(double latitude, double longitude, double radius, Date from, Date to) {
+        Set<TaskInfo> taskInfoSet = new HashSet<>();
+        Circle circle = new Circle(latitude, longitude, radius);
+
+        index.forEachInBox(longitude - circle.longitudeSpan, latitude - circle.latitudeSpan,
+                longitude + circle.longitudeSpan, latitude + circle.latitudeSpan, from.getTime(), to.getTime(), task -> {
+            if (circle.contains(task))
+                taskInfoSet.add(task.getTaskInfo());
+            return true;
+        });
         return taskInfoSet;
     }
 
+    /**
+     * The first page of infos on tasks located within a circle centered at the given latitude and longitude,
+     * and with given radius, ordered by increasing distance. If there are more tasks, the page has a cursor
+     * to request the next one, which resumes the search where this page ended.
+     * Cursors are kept on the server while used, but only the most recently used ones are kept,
+     * and those not used for a while expire.
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius to the circle, in metres
+     * @param pageSize maximum number of tasks in the page
+     * @return page of tasks, nearest first
+     * @throws SpotsForVolunteeringException if the page size is not positive
+     */
+
+    NearbyTaskPage getNearbyTaskPage(double latitude, double longitude, double radius, int pageSize)
+            throws SpotsForVolunteeringException {
+        if (pageSize < 1) throw new SpotsForVolunteeringException("page size must be positive");
+        return page(UUID.randomUUID().toString(), new NearbyTaskCursor(this, latitude, longitude, radius), pageSize);
+    }
+
+    /**
+     * The next page of infos on nearby tasks, after the page with given cursor.
+     * @param cursor of the previous page
+     * @param pageSize maximum number of tasks in the page
+     * @return page of tasks, nearest first
+     * @throws SpotsForVolunteeringException if the page size is not positive, or the cursor is unknown or expired
+     */
+
+    NearbyTaskPage getNextNearbyTaskPage(String cursor, int pageSize) throws SpotsForVolunteeringException {
+        NearbyTaskCursor nearbyTaskCursor;
+
+        if (pageSize < 1) throw new SpotsForVolunteeringException("page size must be positive");
+        synchronized (cursors) {
+            expireCursors();
+            nearbyTaskCursor = cursors.remove(cursor);
+        }
+        if (nearbyTaskCursor == null) throw new SpotsForVolunteeringException("unknown or expired cursor");
+        return page(cursor, nearbyTaskCursor, pageSize);
+    }
+
+    /**
+     * A page with the next tasks of given cursor, which is kept under given id if there are more tasks
+     * @param id of the cursor
+     * @param cursor of the search
+     * @param pageSize maximum number of tasks in the page
+     * @return page of tasks
+     */
+
+    private NearbyTaskPage page(String id, NearbyTaskCursor cursor, int pageSize) {
+        List<TaskInfo> taskInfoList = cursor.next(pageSize);
+
+        if (!cursor.hasNext())
+            return new NearbyTaskPage(taskInfoList, null);
+        synchronized (cursors) {
+            cursors.put(id, cursor);
+            expireCursors();
+        }
+        return new NearbyTaskPage(taskInfoList, id);
+    }
+
+    /**
+     * Forget the least recently used cursors, while there are too many or they expired
+     */
+
+    private void expireCursors() {
+        Iterator<NearbyTaskCursor> iterator = cursors.values().iterator();
+        long expired = System.currentTimeMillis() - CURSOR_TIMEOUT;
+
+        while (iterator.hasNext()) {
+            NearbyTaskCursor cursor = iterator.next();
+
+            if (cursors.size() <= MAX_CURSORS && cursor.getLastUsed() >= expired)
+                break;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Sets of infos on tasks located within each of the given circles, all found in a single traversal of a quad tree,
+     * or by one search per circle in other indexes.
+     * Each circle is approximated, in degrees, by the circle circumscribing the box that encloses it, and candidates
+     * are then classified as in {@link #getNearbyTasks(double, double, double)}.
+     * @param probes circles to search, with center and radius in metres
+     * @return map from each probe to its set of tasks
+     */
+
+    Map<TaskProbe, Set<TaskInfo>> getNearbyTasks(List<TaskProbe> probes) {
+        int count = probes.size();
+        Circle[] circles = new Circle[count];
+        List<Set<TaskInfo>> taskInfoSets = new ArrayList<>(count);
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] radius = new double[count];
+        Map<TaskProbe, Set<TaskInfo>> taskInfoMap = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            TaskProbe probe = probes.get(i);
+            Circle circle = new Circle(probe.getLatitude(), probe.getLongitude(), probe.getRadius());
+
+            circles[i] = circle;
+            taskInfoSets.add(new HashSet<>());
+            x[i] = probe.getLongitude();
+            y[i] = probe.getLatitude();
+            radius[i] = Math.hypot(circle.longitudeSpan, circle.latitudeSpan);
+        }
+        index.forEachNear(x, y, radius, (i, task) -> {
+            if (circles[i].contains(task))
+                taskInfoSets.get(i).add(task.getTaskInfo());
+        });
+        for (int i = 0; i < count; i++)
+            taskInfoMap.put(probes.get(i), taskInfoSets.get(i));
+        return taskInfoMap;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    /**
+     * A circle on the Earth's surface, with the spans of its enclosing box and the bounds used to
+     * classify tasks by their squared equirectangular distance before resorting to the haversine formula.
+     * As a region, a cell is wholly inside it if its farthest corner is within the inner bound, where every
+     * location is certainly inside, and may intersect it if it intersects the enclosing box.
+     */
+
+    static class Circle implements Region {
+        final double latitude;
+        final double longitude;
+        final double radius;
+        final double latitudeSpan;
+        final double longitudeSpan;
+        final double cosLatitude;
+        final double innerSquared;
+        final double outerSquared;
+
+        /**
+         * Create a circle
+         * @param latitude of the circle's center
+         * @param longitude of the circle's center
+         * @param radius of the circle, in metres
+         */
+
+        Circle(double latitude, double longitude, double radius) {
+            double farthestLatitude;
+            double tolerance;
+
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radius = radius;
+            this.latitudeSpan = radius / METRES_PER_DEGREE;
+            this.longitudeSpan = longitudeSpan(latitude, radius);
+            this.cosLatitude = Math.cos(Math.toRadians(latitude));
+            farthestLatitude = Math.min(89.9, Math.abs(latitude) + latitudeSpan);
+            tolerance = PLANAR_TOLERANCE + 2 * Math.toRadians(latitudeSpan) * Math.tan(Math.toRadians(farthestLatitude));
+            this.innerSquared = tolerance < 1 ? square(latitudeSpan * (1 - tolerance)) : 0;
+            this.outerSquared = square(latitudeSpan * (1 + tolerance));
+        }
+
+        /**
+         * Check if given task is located within this circle
+         * @param task to check
+         * @return true if it is within, false otherwise
+         */
+
+        boolean contains(Task task) {
+            return contains(task.getX(), task.getY());
+        }
+
+        /**
+         * Check if given location is within this circle
+         * @param x longitude of the location
+         * @param y latitude of the location
+         * @return true if it is within, false otherwise
+         */
+
+        public boolean contains(double x, double y) {
+            double distX = (x - longitude) * cosLatitude;
+            double distY = y - latitude;
+            double distanceSquared = distX * distX + distY * distY;
+
+            return distanceSquared <= innerSquared
+                    || distanceSquared <= outerSquared && distance(latitude, longitude, y, x) <= radius;
+        }
+
+        /**
+         * Check if the cell with given limits is certainly within this circle
+         * @param minX minimum longitude of the cell
+         * @param minY minimum latitude of the cell
+         * @param maxX maximum longitude of the cell
+         * @param maxY maximum latitude of the cell
+         * @return true if every location of the cell is within, false if some may not be
+         */
+
+        public boolean contains(double minX, double minY, double maxX, double maxY) {
+            double distX = Math.max(longitude - minX, maxX - longitude) * cosLatitude;
+            double distY = Math.max(latitude - minY, maxY - latitude);
+
+            return distX * distX + distY * distY <= innerSquared;
+        }
+
+        /**
+         * Check if the cell with given limits intersects the box enclosing this circle
+         * @param minX minimum longitude of the cell
+         * @param minY minimum latitude of the cell
+         * @param maxX maximum longitude of the cell
+         * @param maxY maximum latitude of the cell
+         * @return true if it may have locations within this circle, false otherwise
+         */
+
+        public boolean intersects(double minX, double minY, double maxX, double maxY) {
+            return minX <= longitude + longitudeSpan && maxX >= longitude - longitudeSpan
+                    && minY <= latitude + latitudeSpan && maxY >= latitude - latitudeSpan;
+        }
+    }
+
+    /**
+     * A list of infos on the tasks nearest to the given latitude and longitude, ordered by increasing
+     * great-circle distance. Tasks are taken from a cursor over a circle without limit, which stops
+     * the search in the index once no task still to come can be nearer than the last one returned.
+     * @param latitude of the reference point
+     * @param longitude of the reference point
+     * @param count maximum number of tasks
+     * @return list of tasks, nearest first
+     */
+
+    List<TaskInfo> getNearestTasks(double latitude, double longitude, int count) {
+        return new NearbyTaskCursor(this, latitude, longitude, Double.POSITIVE_INFINITY).next(count);
+    }
+
 
 }
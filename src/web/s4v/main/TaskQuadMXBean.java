@@ -0,0 +1,122 @@
+package web.s4v.main;
+
+/**
+ * Management interface publishing the statistics of TaskQuad and of its cache of nearby tasks as JMX attributes,
+ * so that monitoring tools can alert when the quad tree degrades or queries get slower.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+
+public interface TaskQuadMXBean {
+
+    /**
+     * Number of nodes on the longest path from the top of the quad tree to a leaf
+     * @return depth
+     */
+    int getDepth();
+
+    /**
+     * Number of nodes of the quad tree
+     * @return node count
+     */
+    long getNodeCount();
+
+    /**
+     * Number of leaves of the quad tree
+     * @return leaf count
+     */
+    long getLeafCount();
+
+    /**
+     * Number of leaves of the quad tree without tasks
+     * @return empty leaf count
+     */
+    long getEmptyLeafCount();
+
+    /**
+     * Number of tasks in the index
+     * @return task count
+     */
+    long getTaskCount();
+
+    /**
+     * Type of the index of tasks: quadtree, grid or rtree. The other attributes of the index are only
+     * reported for quad trees.
+     * @return index type
+     */
+    String getIndexType();
+
+    /**
+     * Maximum number of task locations in a leaf
+     * @return capacity
+     */
+    int getCapacity();
+
+    /**
+     * Histogram of the number of task locations of leaves: position 0 counts the empty leaves,
+     * and position k counts the leaves with at least 2^(k-1) and less than 2^k locations
+     * @return histogram
+     */
+    long[] getLeafOccupancy();
+
+    /**
+     * Average number of task locations of a leaf
+     * @return mean leaf occupancy
+     */
+    double getMeanLeafOccupancy();
+
+    /**
+     * Check if the work done by queries is being counted
+     * @return true if profiled
+     */
+    boolean isProfiling();
+
+    /**
+     * Turn on or off the counting of the work done by queries, which starts from zero each time it is turned on
+     * @param profiling true to count the work of queries
+     */
+    void setProfiling(boolean profiling);
+
+    /**
+     * Number of queries counted while profiling
+     * @return query count
+     */
+    long getQueryCount();
+
+    /**
+     * Average number of nodes and leaves visited by a query counted while profiling
+     * @return tries visited per query
+     */
+    double getTriesVisitedPerQuery();
+
+    /**
+     * Average number of task locations tested by a query counted while profiling
+     * @return points tested per query
+     */
+    double getPointsTestedPerQuery();
+
+    /**
+     * Number of nearby task queries answered from cached candidates
+     * @return cache hits
+     */
+    long getCacheHits();
+
+    /**
+     * Number of nearby task queries that had to search the quad tree
+     * @return cache misses
+     */
+    long getCacheMisses();
+
+    /**
+     * Number of entries evicted from the cache of nearby tasks
+     * @return cache evictions
+     */
+    long getCacheEvictions();
+
+    /**
+     * Number of entries in the cache of nearby tasks
+     * @return cache size
+     */
+    int getCacheSize();
+}
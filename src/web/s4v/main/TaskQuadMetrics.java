@@ -0,0 +1,196 @@
+package web.s4v.main;
+
+import web.s4v.quad.QuadtreeStatistics;
+import web.s4v.shared.SpotsForVolunteeringException;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Publishes the statistics of TaskQuad as the MXBean named by OBJECT_NAME in the platform MBean server.
+ * The attributes of the quad tree come from a snapshot that is collected again once it is older than SNAPSHOT_AGE,
+ * since collecting it visits the whole tree, and monitoring tools read attributes one at a time.
+ * The singleton TaskQuad is looked up on every read, so the MXBean keeps reporting it if it is reset.
+ * Only quad trees have these statistics: for other indexes their attributes are zero, or empty.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+
+public class TaskQuadMetrics implements TaskQuadMXBean {
+
+    static final String OBJECT_NAME = "web.s4v:type=TaskQuad";
+    static final long SNAPSHOT_AGE = 1000;
+
+    private TaskQuad snapshotQuad;
+    private QuadtreeStatistics snapshot;
+    private long snapshotTime;
+
+    /**
+     * Register the MXBean of TaskQuad in the platform MBean server, replacing one registered before,
+     * as when the application is deployed again in the same server
+     * @throws SpotsForVolunteeringException if it cannot be registered
+     */
+
+    public static void register() throws SpotsForVolunteeringException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(new TaskQuadMetrics(), name);
+        } catch (JMException e) {
+            throw new SpotsForVolunteeringException("Failed to register TaskQuad metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Unregister the MXBean of TaskQuad from the platform MBean server, if registered,
+     * as when the application is undeployed, so that the server does not keep it and its class loader.
+     */
+
+    public static void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            server.unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (InstanceNotFoundException e) {
+            // not registered, or already unregistered
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister TaskQuad metrics: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Statistics of the quad tree, collected again if the snapshot is too old or belongs to a previous TaskQuad
+     * @return statistics, or null if the index is not a quad tree
+     */
+
+    private synchronized QuadtreeStatistics statistics() {
+        TaskQuad taskQuad = TaskQuad.getInstance();
+        long now = System.currentTimeMillis();
+
+        if (snapshotQuad != taskQuad || now - snapshotTime > SNAPSHOT_AGE) {
+            snapshot = taskQuad.getStatistics();
+            snapshotQuad = taskQuad;
+            snapshotTime = now;
+        }
+        return snapshot;
+    }
+
+    @Override
+    public int getDepth() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? 0 : statistics.getDepth();
+    }
+
+    @Override
+    public long getNodeCount() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? 0 : statistics.getNodeCount();
+    }
+
+    @Override
+    public long getLeafCount() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? 0 : statistics.getLeafCount();
+    }
+
+    @Override
+    public long getEmptyLeafCount() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? 0 : statistics.getEmptyLeafCount();
+    }
+
+    @Override
+    public long getTaskCount() {
+        return TaskQuad.getInstance().size();
+    }
+
+    @Override
+    public String getIndexType() {
+        return TaskQuad.getInstance().getIndexType();
+    }
+
+    @Override
+    public int getCapacity() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? 0 : statistics.getCapacity();
+    }
+
+    @Override
+    public long[] getLeafOccupancy() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? new long[0] : statistics.getLeafOccupancy();
+    }
+
+    @Override
+    public double getMeanLeafOccupancy() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? 0 : statistics.getMeanLeafOccupancy();
+    }
+
+    @Override
+    public boolean isProfiling() {
+        return TaskQuad.getInstance().isProfiling();
+    }
+
+    @Override
+    public synchronized void setProfiling(boolean profiling) {
+        TaskQuad.getInstance().setProfiling(profiling);
+        snapshotQuad = null;
+    }
+
+    @Override
+    public long getQueryCount() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? 0 : statistics.getQueryCount();
+    }
+
+    @Override
+    public double getTriesVisitedPerQuery() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? 0 : statistics.getTriesVisitedPerQuery();
+    }
+
+    @Override
+    public double getPointsTestedPerQuery() {
+        QuadtreeStatistics statistics = statistics();
+
+        return statistics == null ? 0 : statistics.getPointsTestedPerQuery();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return TaskQuad.getInstance().getNearbyTaskCache().getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return TaskQuad.getInstance().getNearbyTaskCache().getMisses();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return TaskQuad.getInstance().getNearbyTaskCache().getEvictions();
+    }
+
+    @Override
+    public int getCacheSize() {
+        return TaskQuad.getInstance().getNearbyTaskCache().size();
+    }
+}
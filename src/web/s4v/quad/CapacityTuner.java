@@ -0,0 +1,81 @@
+package web.s4v.quad;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chooses the capacity of leaves of an adaptive quad tree from the observed mix of queries and inserts.
+ * Larger leaves make the tree shallower, which saves descending through nodes on every operation,
+ * but each query scans more points in the leaves it reaches, and each concurrent insert copies a larger leaf.
+ * The cost of an operation is modelled as descent * log4(n / capacity) + scan * capacity,
+ * whose minimum is at capacity = descent / (scan * ln 4) for the weighted mix of operations.
+ * The constants were measured on a capacity sweep from 2 to 128 points per leaf.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+class CapacityTuner {
+
+	/**
+	 * Average number of inserts between two choices of capacity
+	 */
+	static final int PERIOD = 1024;
+	static final int MIN_CAPACITY = 4;
+	static final int MAX_CAPACITY = 128;
+
+	static final double QUERY_DESCENT_COST = 2400;
+	static final double QUERY_SCAN_COST = 45;
+	static final double INSERT_DESCENT_COST = 700;
+	static final double INSERT_SCAN_COST = 1;
+	static final double CONCURRENT_INSERT_SCAN_COST = 9;
+
+	private final LongAdder queries = new LongAdder();
+	private final LongAdder inserts = new LongAdder();
+	private final boolean concurrent;
+
+	/**
+	 * Create a tuner for a quad tree
+	 * @param concurrent true if the quad tree is in concurrent mode, where inserts copy leaves
+	 */
+	CapacityTuner(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	/**
+	 * Record given number of queries
+	 * @param count of queries
+	 */
+	void queried(int count) {
+		queries.add(count);
+	}
+
+	/**
+	 * Record an insert and, about once every PERIOD inserts, choose the capacity again.
+	 * Only inserts trigger a new choice, since the capacity has no effect until leaves split.
+	 * @param capacity currently in use
+	 * @return capacity to be used from now on
+	 */
+	int inserted(int capacity) {
+		inserts.increment();
+		if(ThreadLocalRandom.current().nextInt(PERIOD) != 0)
+			return capacity;
+		return choose(queries.sumThenReset(), inserts.sumThenReset());
+	}
+
+	/**
+	 * The capacity with the lowest modelled cost for given numbers of operations, as a power of two
+	 * @param queries number of queries
+	 * @param inserts number of inserts
+	 * @return capacity
+	 */
+	int choose(long queries, long inserts) {
+		double share = queries / (double) Math.max(1, queries + inserts);
+		double descent = share * QUERY_DESCENT_COST + (1 - share) * INSERT_DESCENT_COST;
+		double scan = share * QUERY_SCAN_COST
+				+ (1 - share) * (concurrent ? CONCURRENT_INSERT_SCAN_COST : INSERT_SCAN_COST);
+		double best = descent / (scan * Math.log(Trie.QUADRANTS));
+		int capacity = 1 << (int) Math.round(Math.log(best) / Math.log(2));
+
+		return Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, capacity));
+	}
+}
@@ -0,0 +1,27 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.Iterator;
+
+/**
+ * Iterator over points by increasing distance to a given point, that tells the distance of the next one
+ * before returning it, so that a search can stop as soon as points get too far.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ * @implements Iterator
+ *
+ * @param <T> type that extends HasPoint
+ */
+public interface DistanceIterator<T extends HasPoint> extends Iterator<T> {
+	/**
+	 * Squared distance to the given point of the point that next will return
+	 * @return squared distance
+	 * @throws java.util.NoSuchElementException if all points were already returned
+	 */
+	double peekDistanceSquared();
+}
@@ -0,0 +1,778 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * A uniform grid of square cells, an alternative to PointQuadtree for points spread evenly
+ * and queries of about the size of a cell.
+ * Only cells with points exist, kept in a hash map by column and row, so the grid covers the whole plane.
+ * A point is found in constant time from its coordinates, hence inserting, deleting and moving points is cheap,
+ * but dense cells are scanned whole and sparse areas cost one lookup per cell.
+ * Ranges of cells are divided in halves while they cross the boundary of a region, so cells wholly inside
+ * are taken without testing their points, and ranges wholly outside are skipped without any lookup.
+ * It may be shared by several threads: queries hold a read lock and updates a write lock,
+ * hence consumers must not update the grid. Iterators reflect the grid at their creation,
+ * while nearest iterators take the lock on each step and may miss points moved meanwhile.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ * @implements SpatialIndex
+ *
+ * @param <T> a type extending HasPoint
+ */
+public class GridIndex<T extends HasPoint> implements SpatialIndex<T> {
+
+	private static final int INITIAL_LENGTH = 4;
+
+	/**
+	 * The points of a cell, next to their coordinates, in no particular order
+	 */
+	private static final class Cell<T extends HasPoint> {
+		final int column;
+		final int row;
+		T[] points;
+		double[] xs;
+		double[] ys;
+		int size;
+
+		@SuppressWarnings("unchecked")
+		Cell(int column, int row) {
+			this.column = column;
+			this.row = row;
+			this.points = (T[]) new HasPoint[INITIAL_LENGTH];
+			this.xs = new double[INITIAL_LENGTH];
+			this.ys = new double[INITIAL_LENGTH];
+		}
+
+		void add(T point, double x, double y) {
+			if(size == points.length) {
+				points = Arrays.copyOf(points, 2 * size);
+				xs = Arrays.copyOf(xs, 2 * size);
+				ys = Arrays.copyOf(ys, 2 * size);
+			}
+			points[size] = point;
+			xs[size] = x;
+			ys[size] = y;
+			size++;
+		}
+
+		/**
+		 * Position of given point, recorded at given coordinates
+		 * @param point to look for
+		 * @param x coordinate where it is recorded
+		 * @param y coordinate where it is recorded
+		 * @return position, or -1 if not found
+		 */
+
+		int indexOf(T point, double x, double y) {
+			for(int i = 0; i < size; i++) {
+				if(xs[i] == x && ys[i] == y && (points[i] == point || points[i].equals(point)))
+					return i;
+			}
+			return -1;
+		}
+
+		/**
+		 * Remove the point at given position, moving the last one to its place
+		 * @param index of the point
+		 */
+
+		void remove(int index) {
+			size--;
+			points[index] = points[size];
+			xs[index] = xs[size];
+			ys[index] = ys[size];
+			points[size] = null;
+		}
+	}
+
+	/**
+	 * Consumer of the cells found by a search, told whether each cell is wholly inside the searched region
+	 */
+	private interface CellConsumer<T extends HasPoint> {
+		boolean accept(Cell<T> cell, boolean inside);
+	}
+
+	private final double cellSize;
+	private final Map<Long, Cell<T>> cells = new HashMap<Long, Cell<T>>();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private double topLeftX;
+	private double topLeftY;
+	private double bottomRightX;
+	private double bottomRightY;
+	private int minColumn = Integer.MAX_VALUE;
+	private int minRow = Integer.MAX_VALUE;
+	private int maxColumn = Integer.MIN_VALUE;
+	private int maxRow = Integer.MIN_VALUE;
+	private long size;
+
+	/**
+	 * Create a grid with cells of given size, whose bounds start as the rectangle with given corners
+	 * and grow to cover the points inserted outside it
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @param cellSize width and height of cells
+	 * @throws IllegalArgumentException if the cell size is not positive and finite
+	 */
+	public GridIndex(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY, double cellSize) {
+		if(!(cellSize > 0 && cellSize < Double.POSITIVE_INFINITY))
+			throw new IllegalArgumentException("Cell size must be positive and finite");
+		this.cellSize = cellSize;
+		this.topLeftX = topLeftX;
+		this.topLeftY = topLeftY;
+		this.bottomRightX = bottomRightX;
+		this.bottomRightY = bottomRightY;
+	}
+
+	/**
+	 * Width and height of the cells of the grid
+	 * @return cell size
+	 */
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Number of cells with points
+	 * @return count of cells
+	 */
+	public int getCellCount() {
+		lock.readLock().lock();
+		try {
+			return cells.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public long size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public double getTopLeftX() {
+		lock.readLock().lock();
+		try {
+			return topLeftX;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public double getTopLeftY() {
+		lock.readLock().lock();
+		try {
+			return topLeftY;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public double getBottomRightX() {
+		lock.readLock().lock();
+		try {
+			return bottomRightX;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public double getBottomRightY() {
+		lock.readLock().lock();
+		try {
+			return bottomRightY;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Column of the cells with given x coordinate. Columns beyond the range of integers are merged at its ends.
+	 * @param x coordinate
+	 * @return column
+	 */
+	private int column(double x) {
+		return index(x);
+	}
+
+	/**
+	 * Row of the cells with given y coordinate. Rows beyond the range of integers are merged at its ends.
+	 * @param y coordinate
+	 * @return row
+	 */
+	private int row(double y) {
+		return index(y);
+	}
+
+	/**
+	 * Column or row of the cells with given coordinate, corrected where the division was rounded across
+	 * a boundary, so that the coordinate is always within the limits given by lower and upper
+	 * @param coordinate x or y
+	 * @return column or row
+	 */
+	private int index(double coordinate) {
+		int index = (int) Math.floor(coordinate / cellSize);
+
+		if(coordinate < lower(index))
+			return index - 1;
+		if(coordinate >= upper(index))
+			return index + 1;
+		return index;
+	}
+
+	private static long key(int column, int row) {
+		return (long) column << 32 | row & 0xffffffffL;
+	}
+
+	/**
+	 * Minimum coordinate of the cells with given column or row, unbounded for the first one,
+	 * which also has the cells beyond the range of integers
+	 * @param index column or row
+	 * @return minimum coordinate
+	 */
+	private double lower(int index) {
+		return index == Integer.MIN_VALUE ? Double.NEGATIVE_INFINITY : index * cellSize;
+	}
+
+	/**
+	 * Maximum coordinate of the cells with given column or row, unbounded for the last one,
+	 * which also has the cells beyond the range of integers
+	 * @param index column or row
+	 * @return maximum coordinate
+	 */
+	private double upper(int index) {
+		return index == Integer.MAX_VALUE ? Double.POSITIVE_INFINITY : (index + 1.0) * cellSize;
+	}
+
+	/**
+	 * Grow the bounds to cover given location
+	 * @param x coordinate of the location
+	 * @param y coordinate of the location
+	 * @throws PointOutOfBoundException if the location is not finite
+	 */
+	private void cover(double x, double y) throws PointOutOfBoundException {
+		if(!(Double.isFinite(x) && Double.isFinite(y)))
+			throw new PointOutOfBoundException();
+		topLeftX = Math.min(topLeftX, x);
+		topLeftY = Math.max(topLeftY, y);
+		bottomRightX = Math.max(bottomRightX, x);
+		bottomRightY = Math.min(bottomRightY, y);
+	}
+
+	/**
+	 * Add given point at given coordinates, to the cell that covers them
+	 * @param point to add
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 */
+	private void add(T point, double x, double y) {
+		int column = column(x);
+		int row = row(y);
+		Cell<T> cell = cells.get(key(column, row));
+
+		if(cell == null) {
+			cell = new Cell<T>(column, row);
+			cells.put(key(column, row), cell);
+			minColumn = Math.min(minColumn, column);
+			maxColumn = Math.max(maxColumn, column);
+			minRow = Math.min(minRow, row);
+			maxRow = Math.max(maxRow, row);
+		}
+		cell.add(point, x, y);
+		size++;
+	}
+
+	/**
+	 * Remove the point at given position of given cell, dropping the cell if it gets empty
+	 * @param cell of the point
+	 * @param index of the point in the cell
+	 */
+	private void remove(Cell<T> cell, int index) {
+		cell.remove(index);
+		if(cell.size == 0)
+			cells.remove(key(cell.column, cell.row));
+		size--;
+	}
+
+	public void insert(T point) throws PointOutOfBoundException {
+		double x = point.getX();
+		double y = point.getY();
+
+		lock.writeLock().lock();
+		try {
+			cover(x, y);
+			add(point, x, y);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void insertAll(Collection<? extends T> points) throws PointOutOfBoundException {
+		for(T point : points) {
+			if(!(Double.isFinite(point.getX()) && Double.isFinite(point.getY())))
+				throw new PointOutOfBoundException();
+		}
+		lock.writeLock().lock();
+		try {
+			for(T point : points) {
+				cover(point.getX(), point.getY());
+				add(point, point.getX(), point.getY());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean delete(T point) {
+		double x = point.getX();
+		double y = point.getY();
+
+		lock.writeLock().lock();
+		try {
+			Cell<T> cell = cells.get(key(column(x), row(y)));
+			int index = cell == null ? -1 : cell.indexOf(point, x, y);
+
+			if(index < 0)
+				return false;
+			remove(cell, index);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Move given point to new coordinates. Inside the same cell only its coordinates are replaced,
+	 * otherwise it is removed from its cell and added to the new one.
+	 * @param point to be moved
+	 * @param newX new x coordinate of point
+	 * @param newY new y coordinate of point
+	 * @return true if the point was moved, false if it is not recorded
+	 * @throws PointOutOfBoundException in case the new coordinates are not finite, and then nothing is changed
+	 */
+	public boolean relocate(T point, double newX, double newY) throws PointOutOfBoundException {
+		double x = point.getX();
+		double y = point.getY();
+
+		lock.writeLock().lock();
+		try {
+			cover(newX, newY);
+
+			Cell<T> cell = cells.get(key(column(x), row(y)));
+			int index = cell == null ? -1 : cell.indexOf(point, x, y);
+
+			if(index < 0)
+				return false;
+			if(cell.column == column(newX) && cell.row == row(newY)) {
+				cell.xs[index] = newX;
+				cell.ys[index] = newY;
+			} else {
+				remove(cell, index);
+				add(point, newX, newY);
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public Set<T> findNear(double x, double y, double radius) {
+		final Set<T> set = new HashSet<T>();
+		forEachNear(x, y, radius, point -> { set.add(point); return true; });
+		return set;
+	}
+
+	public boolean forEachNear(double x, double y, double radius, PointConsumer<T> consumer) {
+		return forEachIn(new PointQuadtree.Circle(x, y, radius), consumer);
+	}
+
+	/**
+	 * Pass each point near each query in a batch to given consumer, running the queries one after the other
+	 * @param x coordinates of the centers of the queries
+	 * @param y coordinates of the centers of the queries
+	 * @param radius of each query
+	 * @param consumer of points and the queries they satisfy
+	 */
+	public void forEachNear(double[] x, double[] y, double[] radius, ProbeConsumer<T> consumer) {
+		lock.readLock().lock();
+		try {
+			for(int probe = 0; probe < x.length; probe++) {
+				final int query = probe;
+				forEachNear(x[probe], y[probe], radius[probe], point -> { consumer.accept(query, point); return true; });
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean forEachInBox(double minX, double minY, double maxX, double maxY, PointConsumer<T> consumer) {
+		return forEachIn(new PointQuadtree.Box(minX, minY, maxX, maxY), consumer);
+	}
+
+	/**
+	 * Pass each point inside the rectangle with given limits that takes place during given time window
+	 * to given consumer. The grid keeps no summary of intervals, so each point in the rectangle is checked.
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	public boolean forEachInBox(double minX, double minY, double maxX, double maxY, long from, long to,
+			PointConsumer<T> consumer) {
+		return forEachInBox(minX, minY, maxX, maxY, point -> !Trie.during(point, from, to) || consumer.accept(point));
+	}
+
+	public boolean forEachIn(Region region, PointConsumer<T> consumer) {
+		lock.readLock().lock();
+		try {
+			return search(region, (cell, inside) -> {
+				for(int i = 0; i < cell.size; i++) {
+					if((inside || region.contains(cell.xs[i], cell.ys[i])) && !consumer.accept(cell.points[i]))
+						return false;
+				}
+				return true;
+			});
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Set<T> findIn(Region region) {
+		final Set<T> set = new HashSet<T>();
+		forEachIn(region, point -> { set.add(point); return true; });
+		return set;
+	}
+
+	public long count(Region region) {
+		long[] count = new long[1];
+
+		lock.readLock().lock();
+		try {
+			search(region, (cell, inside) -> {
+				if(inside)
+					count[0] += cell.size;
+				else {
+					for(int i = 0; i < cell.size; i++) {
+						if(region.contains(cell.xs[i], cell.ys[i]))
+							count[0]++;
+					}
+				}
+				return true;
+			});
+			return count[0];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Pass the cells that may have points inside given region to given consumer
+	 * @param region where points are searched
+	 * @param consumer of cells
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	private boolean search(Region region, CellConsumer<T> consumer) {
+		return cells.isEmpty() || search(region, minColumn, minRow, maxColumn, maxRow, consumer);
+	}
+
+	/**
+	 * Pass the cells in given range of columns and rows that may have points inside given region to given consumer.
+	 * A range crossing the boundary of the region is divided in halves along its longest side,
+	 * unless its perimeter has more cells than the grid has cells with points, and then these are classified one by one.
+	 * @param region where points are searched
+	 * @param minColumn first column of the range
+	 * @param minRow first row of the range
+	 * @param maxColumn last column of the range
+	 * @param maxRow last row of the range
+	 * @param consumer of cells
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	private boolean search(Region region, int minColumn, int minRow, int maxColumn, int maxRow,
+			CellConsumer<T> consumer) {
+		double minX = lower(minColumn);
+		double minY = lower(minRow);
+		double maxX = upper(maxColumn);
+		double maxY = upper(maxRow);
+		long columns = (long) maxColumn - minColumn + 1;
+		long rows = (long) maxRow - minRow + 1;
+
+		if(!region.intersects(minX, minY, maxX, maxY))
+			return true;
+		if(region.contains(minX, minY, maxX, maxY))
+			return forEachCell(minColumn, minRow, maxColumn, maxRow, cell -> consumer.accept(cell, true));
+		if(columns * rows == 1) {
+			Cell<T> cell = cells.get(key(minColumn, minRow));
+			return cell == null || consumer.accept(cell, false);
+		}
+		if(2 * (columns + rows) > cells.size()) {
+			return forEachCell(minColumn, minRow, maxColumn, maxRow, cell -> {
+				double cellMinX = lower(cell.column);
+				double cellMinY = lower(cell.row);
+				double cellMaxX = upper(cell.column);
+				double cellMaxY = upper(cell.row);
+
+				return !region.intersects(cellMinX, cellMinY, cellMaxX, cellMaxY)
+						|| consumer.accept(cell, region.contains(cellMinX, cellMinY, cellMaxX, cellMaxY));
+			});
+		}
+		if(columns >= rows) {
+			int middle = (int) (minColumn + (columns - 1) / 2);
+			return search(region, minColumn, minRow, middle, maxRow, consumer)
+					&& search(region, middle + 1, minRow, maxColumn, maxRow, consumer);
+		}
+		int middle = (int) (minRow + (rows - 1) / 2);
+		return search(region, minColumn, minRow, maxColumn, middle, consumer)
+				&& search(region, minColumn, middle + 1, maxColumn, maxRow, consumer);
+	}
+
+	/**
+	 * Pass the cells with points in given range of columns and rows to given consumer, looking each of them up,
+	 * or scanning all cells with points if there are less of these
+	 * @param minColumn first column of the range
+	 * @param minRow first row of the range
+	 * @param maxColumn last column of the range
+	 * @param maxRow last row of the range
+	 * @param consumer of cells, which returns false to stop
+	 * @return false if the consumer stopped, true otherwise
+	 */
+	private boolean forEachCell(int minColumn, int minRow, int maxColumn, int maxRow,
+			Predicate<Cell<T>> consumer) {
+		minColumn = Math.max(minColumn, this.minColumn);
+		minRow = Math.max(minRow, this.minRow);
+		maxColumn = Math.min(maxColumn, this.maxColumn);
+		maxRow = Math.min(maxRow, this.maxRow);
+		if(((long) maxColumn - minColumn + 1) * ((long) maxRow - minRow + 1) > cells.size()) {
+			for(Cell<T> cell : cells.values()) {
+				if(cell.column >= minColumn && cell.column <= maxColumn && cell.row >= minRow && cell.row <= maxRow
+						&& !consumer.test(cell))
+					return false;
+			}
+			return true;
+		}
+		for(int column = minColumn; column <= maxColumn; column++) {
+			for(int row = minRow; row <= maxRow; row++) {
+				Cell<T> cell = cells.get(key(column, row));
+
+				if(cell != null && !consumer.test(cell))
+					return false;
+				if(row == Integer.MAX_VALUE)
+					break;
+			}
+			if(column == Integer.MAX_VALUE)
+				break;
+		}
+		return true;
+	}
+
+	public List<T> findNearest(double x, double y, int k) {
+		List<T> list = new ArrayList<T>(Math.max(0, Math.min(k, 1024)));
+
+		lock.readLock().lock();
+		try {
+			DistanceIterator<T> iterator = nearestIterator(x, y);
+
+			while(list.size() < k && iterator.hasNext())
+				list.add(iterator.next());
+			return list;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * An iterator over all points by increasing distance to the point with given coordinates.
+	 * Cells are visited in square rings around the cell of that point, and a point is returned once
+	 * no ring still to visit can have a nearer one.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return iterator, nearest first
+	 */
+	public DistanceIterator<T> nearestIterator(double x, double y) {
+		return new RingIterator(x, y);
+	}
+
+	public boolean forEachAll(PointConsumer<T> consumer) {
+		lock.readLock().lock();
+		try {
+			for(Cell<T> cell : cells.values()) {
+				for(int i = 0; i < cell.size; i++) {
+					if(!consumer.accept(cell.points[i]))
+						return false;
+				}
+			}
+			return true;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * An iterator over a copy of the points taken on its creation, which does not support removal
+	 * @return iterator
+	 */
+	public Iterator<T> iterator() {
+		final List<T> list = new ArrayList<T>();
+		forEachAll(point -> { list.add(point); return true; });
+		return Collections.unmodifiableList(list).iterator();
+	}
+
+	/**
+	 * Iterator over the points by increasing distance to a given point, visiting cells in square rings around it.
+	 * Points of visited rings wait in a priority queue until they are nearer than any ring still to visit.
+	 * If a ring has more cells than the grid has cells with points, these are all queued at once instead.
+	 */
+	private final class RingIterator implements DistanceIterator<T> {
+
+		private final double x;
+		private final double y;
+		private final int column;
+		private final int row;
+		private final PriorityQueue<Candidate<T>> queue = new PriorityQueue<Candidate<T>>();
+		private long ring;
+		private boolean exhausted;
+
+		RingIterator(double x, double y) {
+			lock.readLock().lock();
+			try {
+				this.x = x;
+				this.y = y;
+				this.column = column(x);
+				this.row = row(y);
+				this.ring = Math.max(0, Math.max(Math.max((long) minColumn - column, (long) column - maxColumn),
+						Math.max((long) minRow - row, (long) row - maxRow)));
+				this.exhausted = cells.isEmpty();
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		public boolean hasNext() {
+			lock.readLock().lock();
+			try {
+				while(!exhausted && (queue.isEmpty() || queue.peek().distanceSquared > bound()))
+					visitRing();
+				return !queue.isEmpty();
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		public T next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			return queue.poll().point;
+		}
+
+		public double peekDistanceSquared() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			return queue.peek().distanceSquared;
+		}
+
+		/**
+		 * Squared distance to the given point below which no point of the rings still to visit can be.
+		 * Those points are outside the square of the rings already visited.
+		 * @return squared distance
+		 */
+		private double bound() {
+			if(ring == 0)
+				return 0;
+
+			double distance = Math.min(Math.min(x - lower((int) Math.max(Integer.MIN_VALUE, column - ring + 1)),
+					upper((int) Math.min(Integer.MAX_VALUE, column + ring - 1)) - x),
+					Math.min(y - lower((int) Math.max(Integer.MIN_VALUE, row - ring + 1)),
+					upper((int) Math.min(Integer.MAX_VALUE, row + ring - 1)) - y));
+			return distance * distance;
+		}
+
+		/**
+		 * Queue the points of the cells in the next ring, or of all remaining cells if looking them up costs more
+		 */
+		private void visitRing() {
+			long farthest = Math.max(Math.max((long) column - minColumn, (long) maxColumn - column),
+					Math.max((long) row - minRow, (long) maxRow - row));
+
+			if(ring > farthest) {
+				exhausted = true;
+				return;
+			}
+			if(8 * ring > cells.size()) {
+				for(Cell<T> cell : cells.values()) {
+					if(Math.max(Math.abs((long) cell.column - column), Math.abs((long) cell.row - row)) >= ring)
+						queue(cell);
+				}
+				exhausted = true;
+				return;
+			}
+			for(long i = column - ring; i <= column + ring; i++) {
+				if(i < minColumn || i > maxColumn)
+					continue;
+				if(i == column - ring || i == column + ring) {
+					for(long j = Math.max(row - ring, minRow); j <= Math.min(row + ring, maxRow); j++)
+						queue(cells.get(key((int) i, (int) j)));
+				} else {
+					if(row - ring >= minRow)
+						queue(cells.get(key((int) i, (int) (row - ring))));
+					if(row + ring <= maxRow)
+						queue(cells.get(key((int) i, (int) (row + ring))));
+				}
+			}
+			ring++;
+		}
+
+		private void queue(Cell<T> cell) {
+			if(cell == null)
+				return;
+			for(int i = 0; i < cell.size; i++) {
+				double distX = cell.xs[i] - x;
+				double distY = cell.ys[i] - y;
+				queue.add(new Candidate<T>(distX * distX + distY * distY, cell.points[i]));
+			}
+		}
+	}
+
+	/**
+	 * A point waiting in the queue of a nearest iterator, with its squared distance
+	 */
+	private static final class Candidate<T> implements Comparable<Candidate<T>> {
+		final double distanceSquared;
+		final T point;
+
+		Candidate(double distanceSquared, T point) {
+			this.distanceSquared = distanceSquared;
+			this.point = point;
+		}
+
+		public int compareTo(Candidate<T> other) {
+			return Double.compare(distanceSquared, other.distanceSquared);
+		}
+	}
+}
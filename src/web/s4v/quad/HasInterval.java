@@ -0,0 +1,23 @@
+package web.s4v.quad;
+
+/**
+ * Points that take place during an interval of time, so that quad trees can prune subtrees outside a time window.
+ * Times are in milliseconds since the epoch, and both ends of the interval are included.
+ * Like the coordinates, the interval must not change while the point is recorded in a quad tree.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+public interface HasInterval {
+	/**
+	 * The time when the interval starts
+	 * @return start in milliseconds since the epoch
+	 */
+	long getStart();
+
+	/**
+	 * The time when the interval ends, not before its start
+	 * @return end in milliseconds since the epoch
+	 */
+	long getEnd();
+}
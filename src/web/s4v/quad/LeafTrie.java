@@ -3,11 +3,18 @@ package web.s4v.quad;
 import web.s4v.shared.HasPoint;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Set;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A Trie that has no descendants. This class corresponds to the Leaf in the Composite design pattern.
+ * Points are kept in an array, next to two parallel arrays with their coordinates,
+ * so that searches scan contiguous primitives instead of calling HasPoint on every candidate.
+ * Each entry of these arrays is a different location: other points in the same location are kept in a bucket
+ * attached to the entry, since splitting could never separate them, so they do not count towards the capacity.
+ * A leaf smaller than twice the minimum cell size never splits, however close its locations are.
  * @author José Santos (up202007059)
  * @author Miguel Gomes (up201905102)
  * @since April 2023
@@ -20,8 +27,29 @@ import java.util.Set;
  */
 
 public class LeafTrie<T extends HasPoint> extends Trie<T> implements Element<T> {
-	
-	private ArrayList<T> points;
+
+	/**
+	 * Points in the same location of an entry, besides the one in the entry itself.
+	 * Buckets are immutable lists, hence they are shared by the copies of a leaf in concurrent mode.
+	 */
+	static final class Bucket<T> {
+		final T point;
+		final Bucket<T> next;
+
+		Bucket(T point, Bucket<T> next) {
+			this.point = point;
+			this.next = next;
+		}
+	}
+
+	private static final HasPoint[] NO_POINTS = new HasPoint[0];
+	private static final double[] NO_COORDINATES = new double[0];
+
+	private T[] points;
+	private double[] xs;
+	private double[] ys;
+	private Bucket<T>[] buckets;
+	private int size;
 	boolean visited;
 
 	/**
@@ -32,12 +60,68 @@ public class LeafTrie<T extends HasPoint> extends Trie<T> implements Element<T>
 	 * @param bottomRightY to set right Y
 	 */
 
+	@SuppressWarnings("unchecked")
 	LeafTrie(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY) {
 		super(topLeftX, topLeftY, bottomRightX, bottomRightY);
-		points = new ArrayList<T>();
+		points = (T[]) NO_POINTS;
+		xs = NO_COORDINATES;
+		ys = NO_COORDINATES;
+		buckets = null;
+		size = 0;
 		visited = false;
 	}
 
+	/**
+	 * Initialize LeafTrie with the points in a range of given arrays, which must lie inside its rectangle
+	 * @param topLeftX to set left X
+	 * @param topLeftY to set left Y
+	 * @param bottomRightX to set right X
+	 * @param bottomRightY to set right Y
+	 * @param points array of points
+	 * @param indexes positions in array points of the points whose coordinates are in xs and ys
+	 * @param xs x coordinates of points
+	 * @param ys y coordinates of points
+	 * @param from index of the first point in the leaf
+	 * @param to index after the last point in the leaf
+	 */
+
+	@SuppressWarnings("unchecked")
+	LeafTrie(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY,
+			T[] points, int[] indexes, double[] xs, double[] ys, int from, int to) {
+		this(topLeftX, topLeftY, bottomRightX, bottomRightY);
+		if(to > from) {
+			this.points = (T[]) new HasPoint[to - from];
+			this.xs = new double[to - from];
+			this.ys = new double[to - from];
+			for(int i = from; i < to; i++) {
+				int index = indexOf(xs[i], ys[i]);
+
+				if(index < 0)
+					append(points[indexes[i]], xs[i], ys[i], to - from);
+				else
+					addToBucket(index, points[indexes[i]]);
+			}
+		}
+	}
+
+	/**
+	 * A new leaf with the same rectangle and points as this one, used for copy-on-write updates
+	 * @param capacity of leaves in the quad tree
+	 * @return copy of this leaf
+	 */
+
+	LeafTrie<T> copy(int capacity) {
+		LeafTrie<T> leaf = new LeafTrie<T>(topLeftX, topLeftY, bottomRightX, bottomRightY);
+		int length = Math.min(size + 1, Math.max(size, capacity));
+
+		leaf.points = Arrays.copyOf(points, length);
+		leaf.xs = Arrays.copyOf(xs, length);
+		leaf.ys = Arrays.copyOf(ys, length);
+		leaf.buckets = buckets == null ? null : Arrays.copyOf(buckets, length);
+		leaf.size = size;
+		return leaf;
+	}
+
 	/**
 	 * Accept a visitor to operate on a node of the composite structure
 	 * @param visitor to the node
@@ -48,57 +132,208 @@ public class LeafTrie<T extends HasPoint> extends Trie<T> implements Element<T>
 	}
 
 	/**
-	 * Collect all points in this node and its descendants in given set
-	 * @param nodes set of HasPoint for collecting points
+	 * Pass all points in this leaf to given consumer
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
 	 */
 
-	void collectAll(Set<T> nodes) {
-        nodes.addAll(this.points);
+	boolean forEachAll(PointConsumer<T> consumer) {
+		for(int i = 0; i < size; i++) {
+			if(!acceptAll(i, consumer))
+				return false;
+		}
+		return true;
 	}
 
 	/**
-	 * Collect points at a distance smaller or equal to radius from (x,y) and place them in given list
+	 * Pass points at a distance smaller or equal to radius from (x,y) to given consumer
 	 * @param x coordinate of point
 	 * @param y coordinate of point
 	 * @param radius from given point
-	 * @param nodes set for collecting points
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
 	 */
-	
-	void collectNear(double x, double y, double radius, Set<T> nodes) {
-		for(T point : this.points) {
-			if(isNear(x, y, radius, point)) {
-				nodes.add(point);
+
+	boolean forEachNear(double x, double y, double radius, PointConsumer<T> consumer) {
+		double radiusSquared = radius * radius;
+		for(int i = 0; i < size; i++) {
+			if(isNear(x, y, radiusSquared, i) && !acceptAll(i, consumer))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Pass points at a distance smaller or equal to the radius of each query in a batch from its center to given consumer
+	 * @param x coordinates of the centers of the queries
+	 * @param y coordinates of the centers of the queries
+	 * @param radius of each query
+	 * @param probes positions of the queries that overlap this leaf, in their first count positions
+	 * @param count number of queries that overlap this leaf
+	 * @param consumer of points
+	 */
+
+	void forEachNear(double[] x, double[] y, double[] radius, int[] probes, int count, ProbeConsumer<T> consumer) {
+		for(int j = 0; j < count; j++) {
+			int probe = probes[j];
+			double probeX = x[probe];
+			double probeY = y[probe];
+			double radiusSquared = radius[probe] * radius[probe];
+
+			for(int i = 0; i < size; i++) {
+				if(isNear(probeX, probeY, radiusSquared, i)) {
+					consumer.accept(probe, points[i]);
+					for(Bucket<T> bucket = getBucket(i); bucket != null; bucket = bucket.next)
+						consumer.accept(probe, bucket.point);
+				}
 			}
 		}
 	}
 
 	/**
-	 * To determine if a given point is near the circle
+	 * Pass points inside the rectangle with given limits to given consumer
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+
+	boolean forEachInBox(double minX, double minY, double maxX, double maxY, PointConsumer<T> consumer) {
+		for(int i = 0; i < size; i++) {
+			if(xs[i] >= minX && xs[i] <= maxX && ys[i] >= minY && ys[i] <= maxY && !acceptAll(i, consumer))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Pass points inside given region to given consumer
+	 * @param region where points are searched
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+
+	boolean forEachIn(Region region, PointConsumer<T> consumer) {
+		for(int i = 0; i < size; i++) {
+			if(region.contains(xs[i], ys[i]) && !acceptAll(i, consumer))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Pass points inside the rectangle with given limits whose interval overlaps given time window to given consumer
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+
+	boolean forEachInBox(double minX, double minY, double maxX, double maxY, long from, long to,
+			PointConsumer<T> consumer) {
+		for(int i = 0; i < size; i++) {
+			if(xs[i] >= minX && xs[i] <= maxX && ys[i] >= minY && ys[i] <= maxY
+					&& !acceptDuring(i, from, to, consumer))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Pass the points of the entry at given position, and of its bucket, that take place during given time window
+	 * to given consumer
+	 * @param index of the entry
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+
+	private boolean acceptDuring(int index, long from, long to, PointConsumer<T> consumer) {
+		if(during(points[index], from, to) && !consumer.accept(points[index]))
+			return false;
+		for(Bucket<T> bucket = getBucket(index); bucket != null; bucket = bucket.next) {
+			if(during(bucket.point, from, to) && !consumer.accept(bucket.point))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Pass the point of the entry at given position, and those in its bucket, to given consumer
+	 * @param index of the entry
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+
+	private boolean acceptAll(int index, PointConsumer<T> consumer) {
+		if(!consumer.accept(points[index]))
+			return false;
+		for(Bucket<T> bucket = getBucket(index); bucket != null; bucket = bucket.next) {
+			if(!consumer.accept(bucket.point))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * To determine if the point at given position is inside the circle
 	 * @param x coordinate of point
 	 * @param y coordinate of point
-	 * @param radius from given point
-	 * @param point a point
+	 * @param radiusSquared square of the radius from given point
+	 * @param index of the point in this leaf
 	 * @return true if near, false if far
 	 */
-	
-	private boolean isNear(double x, double y, double radius, T point) {
-		double dist = super.getDistance(x, y, point.getX(), point.getY());
-		return dist <= radius;
+
+	private boolean isNear(double x, double y, double radiusSquared, int index) {
+		double distX = xs[index] - x;
+		double distY = ys[index] - y;
+		return distX * distX + distY * distY <= radiusSquared;
 	}
 
 	/**
-	 * Delete given point
-	 * @param point to delete
+	 * Position of the entry with given coordinates
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return index of the entry, or -1 if there is none
 	 */
 
-	void delete(T point) {
-		for(int i = 0; i<this.points.size(); i++) {
-			if(point.getX() == this.points.get(i).getX() 
-				&& point.getY() == this.points.get(i).getY()) {
-				this.points.remove(i);
-				return;
-			}
+	private int indexOf(double x, double y) {
+		for(int i = 0; i < size; i++) {
+			if(xs[i] == x && ys[i] == y)
+				return i;
 		}
+		return -1;
+	}
+
+	/**
+	 * Check if this leaf is large enough to be split in quadrants
+	 * @param minCellSize minimum width and height of a trie
+	 * @return true if can be split, false otherwise
+	 */
+
+	private boolean isDivisible(double minCellSize) {
+		return Math.max(bottomRightX - topLeftX, topLeftY - bottomRightY) / 2 >= minCellSize;
+	}
+
+	/**
+	 * Delete given point, or another point in the same location if it is not recorded
+	 * @param point to delete
+	 * @param capacity of leaves in the quad tree
+	 * @return this leaf
+	 */
+
+	Trie<T> delete(T point, int capacity) {
+		int index = indexOf(point.getX(), point.getY());
+		if(index >= 0)
+			remove(index, point);
+		return this;
 	}
 
 	/**
@@ -108,56 +343,378 @@ public class LeafTrie<T extends HasPoint> extends Trie<T> implements Element<T>
 	 */
 
 	T find(T point) {
-		for(T pointInList : this.points) {
-			if(point.getX() == pointInList.getX() && point.getY() == pointInList.getY())
-				return pointInList;
-		}	
-		return null;
+		int index = indexOf(point.getX(), point.getY());
+		return index < 0 ? null : points[index];
+	}
+
+	/**
+	 * Delete given point only if it is recorded
+	 * @param point to delete
+	 * @param capacity of leaves in the quad tree
+	 * @return this leaf, or null if the point is not recorded
+	 */
+
+	Trie<T> extract(T point, int capacity) {
+		int index = indexOf(point.getX(), point.getY());
+
+		if(index < 0 || !holds(index, point))
+			return null;
+		remove(index, point);
+		return this;
+	}
+
+	/**
+	 * Check if given point is recorded, at the coordinates it reports
+	 * @param point to look for
+	 * @return true if recorded, false otherwise
+	 */
+
+	boolean holds(T point) {
+		int index = indexOf(point.getX(), point.getY());
+		return index >= 0 && holds(index, point);
+	}
+
+	/**
+	 * Check if the entry at given position, or its bucket, has given point
+	 * @param index of the entry
+	 * @param point to look for
+	 * @return true if found, false otherwise
+	 */
+
+	private boolean holds(int index, T point) {
+		return points[index] == point || points[index].equals(point) || contains(getBucket(index), point);
+	}
+
+	/**
+	 * Move given point to new coordinates inside this leaf.
+	 * A point alone in its location, moving to a location without points, just has its coordinates replaced in place;
+	 * otherwise it is removed from its entry and inserted again, which may split the leaf.
+	 * @param point to be moved
+	 * @param newX new x coordinate of point
+	 * @param newY new y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 * @param minCellSize minimum width and height of a trie
+	 * @return changed trie, or null if the point is not recorded
+	 */
+
+	Trie<T> relocate(T point, double newX, double newY, int capacity, double minCellSize) {
+		int index = indexOf(point.getX(), point.getY());
+		int target = indexOf(newX, newY);
+
+		if(index < 0 || !holds(index, point))
+			return null;
+		if(target == index)
+			return this;
+		if(getBucket(index) == null && target < 0) {
+			xs[index] = newX;
+			ys[index] = newY;
+			return this;
+		}
+		remove(index, point);
+		return insert(point, newX, newY, capacity, minCellSize);
 	}
 
 	/**
-	 * A collection of points currently in this leaf
+	 * A read only view of the points currently in this leaf
 	 * @return collection of points
 	 */
 
 	Collection<T> getPoints() {
-		Collection<T> coll = new ArrayList<T>(super.getCapacity());
-		coll.addAll(this.points);
-		return coll;
+		if(buckets == null)
+			return Collections.unmodifiableList(Arrays.asList(points).subList(0, size));
+
+		List<T> list = new ArrayList<T>(size);
+		forEachAll(point -> { list.add(point); return true; });
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Number of points in this leaf, including those in buckets
+	 * @return count of points
+	 */
+
+	long count() {
+		long count = size;
+
+		if(buckets != null) {
+			for(int i = 0; i < size; i++)
+				count += countBucket(i);
+		}
+		return count;
 	}
 
 	/**
-	 * Insert given point
+	 * Number of points of this leaf inside given region
+	 * @param region where points are counted
+	 * @return count of points
+	 */
+
+	long count(Region region) {
+		long count = 0;
+
+		for(int i = 0; i < size; i++) {
+			if(region.contains(xs[i], ys[i]))
+				count += 1 + countBucket(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Number of points in the bucket of the entry at given position
+	 * @param index of the entry
+	 * @return count of other points in the location of the entry
+	 */
+
+	private int countBucket(int index) {
+		int count = 0;
+
+		for(Bucket<T> bucket = getBucket(index); bucket != null; bucket = bucket.next)
+			count++;
+		return count;
+	}
+
+	/**
+	 * Number of entries currently in this leaf, that is, of different locations of its points
+	 * @return number of entries
+	 */
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Point of the entry at given position of this leaf
+	 * @param index of the entry
+	 * @return point at index
+	 */
+
+	T get(int index) {
+		return points[index];
+	}
+
+	/**
+	 * Other points in the location of the entry at given position of this leaf
+	 * @param index of the entry
+	 * @return bucket with the other points, or null if there are none
+	 */
+
+	Bucket<T> getBucket(int index) {
+		return buckets == null ? null : buckets[index];
+	}
+
+	/**
+	 * Recorded x coordinate of the entry at given position of this leaf
+	 * @param index of the entry
+	 * @return x coordinate
+	 */
+
+	double getX(int index) {
+		return xs[index];
+	}
+
+	/**
+	 * Recorded y coordinate of the entry at given position of this leaf
+	 * @param index of the entry
+	 * @return y coordinate
+	 */
+
+	double getY(int index) {
+		return ys[index];
+	}
+
+	/**
+	 * Remove the entry at given position of this leaf, with all points in its location.
+	 * The last entry of the leaf takes its position.
+	 * @param index of the entry
+	 */
+
+	void remove(int index) {
+		int last = --size;
+		points[index] = points[last];
+		xs[index] = xs[last];
+		ys[index] = ys[last];
+		points[last] = null;
+		if(buckets != null) {
+			buckets[index] = buckets[last];
+			buckets[last] = null;
+		}
+	}
+
+	/**
+	 * Remove given point from the entry at given position of this leaf, or another point in the same location
+	 * if it is not recorded. The entry is removed with its last point, and otherwise keeps its position.
+	 * @param index of the entry
+	 * @param point to remove
+	 */
+
+	void remove(int index, T point) {
+		Bucket<T> bucket = getBucket(index);
+
+		if(bucket == null)
+			remove(index);
+		else if(points[index] == point || points[index].equals(point) || !contains(bucket, point)) {
+			points[index] = bucket.point;
+			buckets[index] = bucket.next;
+		}
+		else
+			buckets[index] = without(bucket, point);
+	}
+
+	/**
+	 * Check if given bucket has given point
+	 * @param bucket of points
+	 * @param point to look for
+	 * @return true if found, false otherwise
+	 */
+
+	private static <T> boolean contains(Bucket<T> bucket, T point) {
+		for(; bucket != null; bucket = bucket.next) {
+			if(bucket.point == point || bucket.point.equals(point))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * A bucket with the points of given one except the first one equal to given point.
+	 * Only the points before it are copied, the following ones are shared.
+	 * @param bucket of points, which must have given point
+	 * @param point to leave out
+	 * @return new bucket
+	 */
+
+	private static <T> Bucket<T> without(Bucket<T> bucket, T point) {
+		List<T> before = new ArrayList<T>();
+		Bucket<T> result;
+
+		for(; !(bucket.point == point || bucket.point.equals(point)); bucket = bucket.next)
+			before.add(bucket.point);
+		result = bucket.next;
+		for(int i = before.size() - 1; i >= 0; i--)
+			result = new Bucket<T>(before.get(i), result);
+		return result;
+	}
+
+	/**
+	 * Add given point to the bucket of the entry at given position
+	 * @param index of the entry
+	 * @param point in the location of the entry
+	 */
+
+	@SuppressWarnings("unchecked")
+	private void addToBucket(int index, T point) {
+		if(buckets == null)
+			buckets = (Bucket<T>[]) new Bucket<?>[points.length];
+		buckets[index] = new Bucket<T>(point, buckets[index]);
+	}
+
+	/**
+	 * Append all entries of given leaf to this one, whose locations must be different from those in this one
+	 * @param leaf whose entries are appended
+	 */
+
+	@SuppressWarnings("unchecked")
+	void appendAll(LeafTrie<T> leaf) {
+		int length = size + leaf.size;
+
+		if(length > points.length) {
+			points = Arrays.copyOf(points, length);
+			xs = Arrays.copyOf(xs, length);
+			ys = Arrays.copyOf(ys, length);
+			if(buckets != null)
+				buckets = Arrays.copyOf(buckets, length);
+		}
+		if(leaf.buckets != null) {
+			if(buckets == null)
+				buckets = (Bucket<T>[]) new Bucket<?>[points.length];
+			System.arraycopy(leaf.buckets, 0, buckets, size, leaf.size);
+		}
+		System.arraycopy(leaf.points, 0, points, size, leaf.size);
+		System.arraycopy(leaf.xs, 0, xs, size, leaf.size);
+		System.arraycopy(leaf.ys, 0, ys, size, leaf.size);
+		size = length;
+	}
+
+	/**
+	 * Append an entry with given point and coordinates, growing the arrays if needed.
+	 * Arrays start small and double up to the capacity, since most leaves are far from full.
+	 * @param point to append
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 */
+
+	private void append(T point, double x, double y, int capacity) {
+		if(size == points.length) {
+			int length = Math.max(size + 1, Math.min(Math.max(4, 2 * size), capacity));
+			points = Arrays.copyOf(points, length);
+			xs = Arrays.copyOf(xs, length);
+			ys = Arrays.copyOf(ys, length);
+			if(buckets != null)
+				buckets = Arrays.copyOf(buckets, length);
+		}
+		points[size] = point;
+		xs[size] = x;
+		ys[size] = y;
+		size++;
+	}
+
+	/**
+	 * Insert given point with given coordinates.
+	 * A point in the location of an entry goes to its bucket, hence only new locations may split the leaf.
 	 * @param point to be inserted
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 * @param minCellSize minimum width and height of a trie
 	 * @return changed parent node
 	 */
 
-	Trie<T> insert(T point) {
-		if(this.points.size() + 1 > Trie.getCapacity()) {
+	Trie<T> insert(T point, double x, double y, int capacity, double minCellSize) {
+		int index = indexOf(x, y);
+
+		if(index >= 0) {
+			addToBucket(index, point);
+			return this;
+		}
+
+		if(size + 1 > capacity && isDivisible(minCellSize)) {
 			Trie<T> trie = new NodeTrie<T>
 				(topLeftX, topLeftY, bottomRightX, bottomRightY);
-			
-			trie.insert(point);
-			for(T p : this.points) 
-				trie.insert(p);
 
-			this.points.clear();
+			trie = trie.insert(point, x, y, capacity, minCellSize);
+			for(int i = 0; i < size; i++) {
+				trie = trie.insert(points[i], xs[i], ys[i], capacity, minCellSize);
+				for(Bucket<T> bucket = getBucket(i); bucket != null; bucket = bucket.next)
+					trie = trie.insert(bucket.point, xs[i], ys[i], capacity, minCellSize);
+			}
+
 			return trie;
 		}
-		
-		this.points.add(point);
+
+		append(point, x, y, capacity);
 		return this;
 	}
 
 	/**
 	 * Insert given point, replacing existing points in same location
 	 * @param point point to be inserted
+	 * @param capacity of leaves in the quad tree
 	 * @return changed parent node
 	 */
 
-	Trie<T> insertReplace(T point) {
-		this.points.removeAll(points);
-		this.points.add(point);
+	Trie<T> insertReplace(T point, int capacity) {
+		double x = point.getX();
+		double y = point.getY();
+		int index = indexOf(x, y);
+
+		if(index < 0)
+			append(point, x, y, capacity);
+		else {
+			points[index] = point;
+			if(buckets != null)
+				buckets[index] = null;
+		}
 		return this;
 	}
 
@@ -166,4 +723,4 @@ public class LeafTrie<T extends HasPoint> extends Trie<T> implements Element<T>
 		return "LeafTrie []";
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,808 @@
+package web.s4v.quad;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A quad tree kept off the heap, in a memory-mapped file, for catalogues too large to be kept as objects.
+ * Entries are primitive records with the coordinates of a point and a long reference to it, such as its position
+ * in a table of ids, and nodes and leaves are fixed size records linked by their offsets in the file.
+ * The file is mapped in segments of fixed size that no record straddles, so that it grows without remapping
+ * what is already mapped, and a quad tree is reopened by mapping its file again, without rebuilding it.
+ * Leaves split when full, as in PointQuadtree, down to a maximum depth below which full leaves are chained.
+ * Deletes do not merge nodes back into leaves, but the records of split leaves are reused by later splits.
+ * Records are little-endian, whatever the platform. Queries may run concurrently, while updates are exclusive.
+ * Changes reach the disk when flushed or closed.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @implements Closeable
+ */
+public class MappedQuadtree implements Closeable {
+
+	public static final int DEFAULT_CAPACITY = 32;
+
+	/**
+	 * Size of the segments in which the file is mapped
+	 */
+	static final long SEGMENT_SIZE = 1L << 26;
+
+	/**
+	 * Depth below which full leaves are chained instead of split, since their points can hardly be separated
+	 */
+	static final int MAX_DEPTH = 48;
+
+	private static final int MAGIC = 0x53345651;
+	private static final int VERSION = 1;
+
+	private static final long MAGIC_FIELD = 0;
+	private static final long VERSION_FIELD = 4;
+	private static final long TOP_LEFT_X_FIELD = 8;
+	private static final long TOP_LEFT_Y_FIELD = 16;
+	private static final long BOTTOM_RIGHT_X_FIELD = 24;
+	private static final long BOTTOM_RIGHT_Y_FIELD = 32;
+	private static final long CAPACITY_FIELD = 40;
+	private static final long ROOT_FIELD = 48;
+	private static final long SIZE_FIELD = 56;
+	private static final long END_FIELD = 64;
+	private static final long FREE_FIELD = 72;
+	private static final long HEADER_SIZE = 128;
+
+	private static final int NODE = 1;
+	private static final int LEAF = 2;
+	private static final int FREE = 3;
+
+	/**
+	 * A node has a tag and the offsets of its quadrants, in the slots given by their ordinals
+	 */
+	private static final int NODE_SIZE = 40;
+
+	/**
+	 * A leaf has a tag, its number of entries and the offset of the next leaf in its chain, followed by its entries
+	 */
+	private static final int LEAF_HEADER_SIZE = 16;
+
+	/**
+	 * An entry has the coordinates of a point and its reference
+	 */
+	private static final int ENTRY_SIZE = 24;
+
+	/**
+	 * A trie still to be expanded by a search for nearest entries, with its rectangle
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+		final double distanceSquared;
+		final long offset;
+		final double minX;
+		final double minY;
+		final double maxX;
+		final double maxY;
+
+		Candidate(double distanceSquared, long offset, double minX, double minY, double maxX, double maxY) {
+			this.distanceSquared = distanceSquared;
+			this.offset = offset;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		public int compareTo(Candidate other) {
+			return Double.compare(distanceSquared, other.distanceSquared);
+		}
+	}
+
+	/**
+	 * An entry found by a search for nearest entries, the farthest first
+	 */
+	private static final class Neighbour implements Comparable<Neighbour> {
+		final double distanceSquared;
+		final long reference;
+
+		Neighbour(double distanceSquared, long reference) {
+			this.distanceSquared = distanceSquared;
+			this.reference = reference;
+		}
+
+		public int compareTo(Neighbour other) {
+			return Double.compare(other.distanceSquared, distanceSquared);
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final double topLeftX;
+	private final double topLeftY;
+	private final double bottomRightX;
+	private final double bottomRightY;
+	private final int capacity;
+	private final int leafSize;
+
+	/**
+	 * Map the file of a quad tree, whose header must have been written in its first segment, which is already mapped
+	 * @param file with the quad tree
+	 * @throws IOException if the file cannot be mapped
+	 */
+	private MappedQuadtree(RandomAccessFile file) throws IOException {
+		this.file = file;
+		this.channel = file.getChannel();
+		map(Math.max(file.length(), HEADER_SIZE));
+		this.topLeftX = getDouble(TOP_LEFT_X_FIELD);
+		this.topLeftY = getDouble(TOP_LEFT_Y_FIELD);
+		this.bottomRightX = getDouble(BOTTOM_RIGHT_X_FIELD);
+		this.bottomRightY = getDouble(BOTTOM_RIGHT_Y_FIELD);
+		this.capacity = getInt(CAPACITY_FIELD);
+		this.leafSize = LEAF_HEADER_SIZE + capacity * ENTRY_SIZE;
+	}
+
+	/**
+	 * Create a memory-mapped quad tree in given file, for points in a rectangle with given top left and bottom right
+	 * corners, replacing whatever the file had
+	 * @param path of the file
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @param capacity maximum number of entries in a leaf
+	 * @return empty quad tree
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public static MappedQuadtree create(Path path, double topLeftX, double topLeftY, double bottomRightX,
+			double bottomRightY, int capacity) throws IOException {
+		if(capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive");
+
+		RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+		MappedByteBuffer header;
+
+		try {
+			file.setLength(0);
+			file.setLength(SEGMENT_SIZE);
+			header = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt((int) VERSION_FIELD, VERSION);
+			header.putDouble((int) TOP_LEFT_X_FIELD, topLeftX);
+			header.putDouble((int) TOP_LEFT_Y_FIELD, topLeftY);
+			header.putDouble((int) BOTTOM_RIGHT_X_FIELD, bottomRightX);
+			header.putDouble((int) BOTTOM_RIGHT_Y_FIELD, bottomRightY);
+			header.putInt((int) CAPACITY_FIELD, capacity);
+			header.putLong((int) END_FIELD, HEADER_SIZE);
+			header.putInt((int) MAGIC_FIELD, MAGIC);
+
+			MappedQuadtree quadtree = new MappedQuadtree(file);
+			quadtree.putLong(ROOT_FIELD, quadtree.allocateLeaf());
+			return quadtree;
+		} catch(IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Create a memory-mapped quad tree in given file with the default capacity of leaves
+	 * @param path of the file
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @return empty quad tree
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public static MappedQuadtree create(Path path, double topLeftX, double topLeftY, double bottomRightX,
+			double bottomRightY) throws IOException {
+		return create(path, topLeftX, topLeftY, bottomRightX, bottomRightY, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Reopen the memory-mapped quad tree in given file, as it was last flushed
+	 * @param path of the file
+	 * @return quad tree
+	 * @throws IOException if the file cannot be mapped, or it does not have a quad tree
+	 */
+	public static MappedQuadtree open(Path path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+
+		if(file.length() < HEADER_SIZE) {
+			file.close();
+			throw new IOException("not a quad tree file: " + path);
+		}
+
+		MappedQuadtree quadtree = new MappedQuadtree(file);
+		if(quadtree.getInt(MAGIC_FIELD) != MAGIC || quadtree.getInt(VERSION_FIELD) != VERSION) {
+			quadtree.close();
+			throw new IOException("not a quad tree file: " + path);
+		}
+		return quadtree;
+	}
+
+	/**
+	 * Number of entries in the quad tree
+	 * @return size
+	 */
+	public long size() {
+		return getLong(SIZE_FIELD);
+	}
+
+	/**
+	 * Maximum number of entries in a leaf of this quad tree
+	 * @return capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Check if given coordinates are inside the boundaries of this quad tree, where entries can be inserted
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return true if inside, false otherwise
+	 */
+	public boolean covers(double x, double y) {
+		return (x >= topLeftX && y <= topLeftY) && (x <= bottomRightX && y >= bottomRightY);
+	}
+
+	/**
+	 * Insert an entry with given coordinates and reference
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param reference to the point
+	 * @throws PointOutOfBoundException in case point is out of the quadtree
+	 * @throws IOException if the file cannot grow
+	 */
+	public void insert(double x, double y, long reference) throws IOException {
+		if(!covers(x, y))
+			throw new PointOutOfBoundException();
+
+		lock.writeLock().lock();
+		try {
+			long slot = ROOT_FIELD;
+			long offset = getLong(slot);
+			double minX = topLeftX;
+			double minY = bottomRightY;
+			double maxX = bottomRightX;
+			double maxY = topLeftY;
+			int depth = 0;
+
+			while(true) {
+				if(getInt(offset) == NODE) {
+					double middleX = (minX + maxX) / 2;
+					double middleY = (minY + maxY) / 2;
+					int quad = quadrantOf(x, y, middleX, middleY);
+
+					if((quad & 2) == 0) maxX = middleX; else minX = middleX;
+					if((quad & 1) == 0) maxY = middleY; else minY = middleY;
+					slot = offset + 8 + 8 * quad;
+					offset = getLong(slot);
+					depth++;
+					continue;
+				}
+
+				int count = getInt(offset + 4);
+				if(count < capacity) {
+					putEntry(offset, count, x, y, reference);
+					putInt(offset + 4, count + 1);
+					break;
+				}
+				if(depth < MAX_DEPTH) {
+					offset = split(offset, minX, minY, maxX, maxY);
+					putLong(slot, offset);
+					continue;
+				}
+
+				long next = getLong(offset + 8);
+				if(next == 0) {
+					next = allocateLeaf();
+					putLong(offset + 8, next);
+				}
+				offset = next;
+			}
+			putLong(SIZE_FIELD, getLong(SIZE_FIELD) + 1);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Delete the entry with given coordinates and reference, if it exists
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param reference to the point
+	 * @return true if deleted, false if there was no such entry
+	 */
+	public boolean delete(double x, double y, long reference) {
+		lock.writeLock().lock();
+		try {
+			long offset = leafOf(x, y);
+
+			for(; offset != 0; offset = getLong(offset + 8)) {
+				MappedByteBuffer buffer = segment(offset);
+				int base = position(offset);
+				int count = buffer.getInt(base + 4);
+
+				for(int i = 0; i < count; i++) {
+					int entry = base + LEAF_HEADER_SIZE + i * ENTRY_SIZE;
+
+					if(buffer.getDouble(entry) == x && buffer.getDouble(entry + 8) == y
+							&& buffer.getLong(entry + 16) == reference) {
+						int last = base + LEAF_HEADER_SIZE + (count - 1) * ENTRY_SIZE;
+
+						buffer.putDouble(entry, buffer.getDouble(last));
+						buffer.putDouble(entry + 8, buffer.getDouble(last + 8));
+						buffer.putLong(entry + 16, buffer.getLong(last + 16));
+						buffer.putInt(base + 4, count - 1);
+						putLong(SIZE_FIELD, getLong(SIZE_FIELD) - 1);
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Pass entries at a distance smaller or equal to radius from (x,y) to given consumer
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @param consumer of entries
+	 * @return false if the consumer stopped the query, true otherwise
+	 */
+	public boolean forEachNear(double x, double y, double radius, ReferenceConsumer consumer) {
+		lock.readLock().lock();
+		try {
+			return forEachNear(getLong(ROOT_FIELD), topLeftX, bottomRightY, bottomRightX, topLeftY,
+					x, y, radius * radius, consumer);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * References of the entries at a distance smaller or equal to radius from (x,y)
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @return array of references
+	 */
+	public long[] findNear(double x, double y, double radius) {
+		long[][] found = { new long[16] };
+		int[] size = { 0 };
+
+		forEachNear(x, y, radius, (reference, pointX, pointY) -> {
+			if(size[0] == found[0].length)
+				found[0] = Arrays.copyOf(found[0], 2 * size[0]);
+			found[0][size[0]++] = reference;
+			return true;
+		});
+		return Arrays.copyOf(found[0], size[0]);
+	}
+
+	/**
+	 * Pass entries inside the rectangle with given limits to given consumer
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param consumer of entries
+	 * @return false if the consumer stopped the query, true otherwise
+	 */
+	public boolean forEachInBox(double minX, double minY, double maxX, double maxY, ReferenceConsumer consumer) {
+		lock.readLock().lock();
+		try {
+			return forEachInBox(getLong(ROOT_FIELD), topLeftX, bottomRightY, bottomRightX, topLeftY,
+					minX, minY, maxX, maxY, consumer);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * References of the entries nearest to (x,y), found by a best-first search that expands tries
+	 * by increasing distance and stops once the nearest trie left is farther than the k-th entry found
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param k maximum number of entries
+	 * @return array of references, nearest first
+	 */
+	public long[] findNearest(double x, double y, int k) {
+		PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+		PriorityQueue<Neighbour> neighbours = new PriorityQueue<Neighbour>();
+
+		if(k < 1)
+			return new long[0];
+		lock.readLock().lock();
+		try {
+			candidates.add(new Candidate(0, getLong(ROOT_FIELD), topLeftX, bottomRightY, bottomRightX, topLeftY));
+			while(!candidates.isEmpty()) {
+				Candidate candidate = candidates.poll();
+
+				if(neighbours.size() == k && candidate.distanceSquared > neighbours.peek().distanceSquared)
+					break;
+				if(getInt(candidate.offset) == NODE) {
+					double middleX = (candidate.minX + candidate.maxX) / 2;
+					double middleY = (candidate.minY + candidate.maxY) / 2;
+
+					for(int quad = 0; quad < Trie.QUADRANTS; quad++) {
+						double minX = (quad & 2) == 0 ? candidate.minX : middleX;
+						double maxX = (quad & 2) == 0 ? middleX : candidate.maxX;
+						double minY = (quad & 1) == 0 ? candidate.minY : middleY;
+						double maxY = (quad & 1) == 0 ? middleY : candidate.maxY;
+						double distanceSquared = distanceSquared(x, y, minX, minY, maxX, maxY);
+
+						if(neighbours.size() < k || distanceSquared <= neighbours.peek().distanceSquared)
+							candidates.add(new Candidate(distanceSquared,
+									getLong(candidate.offset + 8 + 8 * quad), minX, minY, maxX, maxY));
+					}
+					continue;
+				}
+				for(long offset = candidate.offset; offset != 0; offset = getLong(offset + 8)) {
+					MappedByteBuffer buffer = segment(offset);
+					int base = position(offset);
+					int count = buffer.getInt(base + 4);
+
+					for(int i = 0; i < count; i++) {
+						int entry = base + LEAF_HEADER_SIZE + i * ENTRY_SIZE;
+						double distX = buffer.getDouble(entry) - x;
+						double distY = buffer.getDouble(entry + 8) - y;
+						double distanceSquared = distX * distX + distY * distY;
+
+						if(neighbours.size() < k)
+							neighbours.add(new Neighbour(distanceSquared, buffer.getLong(entry + 16)));
+						else if(distanceSquared < neighbours.peek().distanceSquared) {
+							neighbours.poll();
+							neighbours.add(new Neighbour(distanceSquared, buffer.getLong(entry + 16)));
+						}
+					}
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+
+		long[] references = new long[neighbours.size()];
+		for(int i = references.length - 1; i >= 0; i--)
+			references[i] = neighbours.poll().reference;
+		return references;
+	}
+
+	/**
+	 * Write the changes to the disk
+	 * @throws IOException if the file cannot be written
+	 */
+	public void flush() throws IOException {
+		lock.readLock().lock();
+		try {
+			for(MappedByteBuffer segment : segments)
+				segment.force();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Write the changes to the disk and close the file. The quad tree must not be used afterwards.
+	 * @throws IOException if the file cannot be written or closed
+	 */
+	public void close() throws IOException {
+		flush();
+		file.close();
+	}
+
+	/**
+	 * Pass entries at a distance smaller or equal to a radius from (x,y), below the record at given offset
+	 * with given rectangle, to given consumer
+	 * @param offset of the record
+	 * @param minX minimum x coordinate of the record's rectangle
+	 * @param minY minimum y coordinate of the record's rectangle
+	 * @param maxX maximum x coordinate of the record's rectangle
+	 * @param maxY maximum y coordinate of the record's rectangle
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radiusSquared square of the radius from given point
+	 * @param consumer of entries
+	 * @return false if the consumer stopped the query, true otherwise
+	 */
+	private boolean forEachNear(long offset, double minX, double minY, double maxX, double maxY,
+			double x, double y, double radiusSquared, ReferenceConsumer consumer) {
+		if(getInt(offset) == NODE) {
+			double middleX = (minX + maxX) / 2;
+			double middleY = (minY + maxY) / 2;
+
+			for(int quad = 0; quad < Trie.QUADRANTS; quad++) {
+				double quadMinX = (quad & 2) == 0 ? minX : middleX;
+				double quadMaxX = (quad & 2) == 0 ? middleX : maxX;
+				double quadMinY = (quad & 1) == 0 ? minY : middleY;
+				double quadMaxY = (quad & 1) == 0 ? middleY : maxY;
+
+				if(distanceSquared(x, y, quadMinX, quadMinY, quadMaxX, quadMaxY) <= radiusSquared
+						&& !forEachNear(getLong(offset + 8 + 8 * quad), quadMinX, quadMinY, quadMaxX, quadMaxY,
+								x, y, radiusSquared, consumer))
+					return false;
+			}
+			return true;
+		}
+		for(; offset != 0; offset = getLong(offset + 8)) {
+			MappedByteBuffer buffer = segment(offset);
+			int base = position(offset);
+			int count = buffer.getInt(base + 4);
+
+			for(int i = 0; i < count; i++) {
+				int entry = base + LEAF_HEADER_SIZE + i * ENTRY_SIZE;
+				double pointX = buffer.getDouble(entry);
+				double pointY = buffer.getDouble(entry + 8);
+				double distX = pointX - x;
+				double distY = pointY - y;
+
+				if(distX * distX + distY * distY <= radiusSquared
+						&& !consumer.accept(buffer.getLong(entry + 16), pointX, pointY))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Pass entries inside a box, below the record at given offset with given rectangle, to given consumer
+	 * @param offset of the record
+	 * @param minX minimum x coordinate of the record's rectangle
+	 * @param minY minimum y coordinate of the record's rectangle
+	 * @param maxX maximum x coordinate of the record's rectangle
+	 * @param maxY maximum y coordinate of the record's rectangle
+	 * @param boxMinX minimum x coordinate of the box
+	 * @param boxMinY minimum y coordinate of the box
+	 * @param boxMaxX maximum x coordinate of the box
+	 * @param boxMaxY maximum y coordinate of the box
+	 * @param consumer of entries
+	 * @return false if the consumer stopped the query, true otherwise
+	 */
+	private boolean forEachInBox(long offset, double minX, double minY, double maxX, double maxY,
+			double boxMinX, double boxMinY, double boxMaxX, double boxMaxY, ReferenceConsumer consumer) {
+		if(getInt(offset) == NODE) {
+			double middleX = (minX + maxX) / 2;
+			double middleY = (minY + maxY) / 2;
+
+			for(int quad = 0; quad < Trie.QUADRANTS; quad++) {
+				double quadMinX = (quad & 2) == 0 ? minX : middleX;
+				double quadMaxX = (quad & 2) == 0 ? middleX : maxX;
+				double quadMinY = (quad & 1) == 0 ? minY : middleY;
+				double quadMaxY = (quad & 1) == 0 ? middleY : maxY;
+
+				if(quadMinX <= boxMaxX && quadMaxX >= boxMinX && quadMinY <= boxMaxY && quadMaxY >= boxMinY
+						&& !forEachInBox(getLong(offset + 8 + 8 * quad), quadMinX, quadMinY, quadMaxX, quadMaxY,
+								boxMinX, boxMinY, boxMaxX, boxMaxY, consumer))
+					return false;
+			}
+			return true;
+		}
+		for(; offset != 0; offset = getLong(offset + 8)) {
+			MappedByteBuffer buffer = segment(offset);
+			int base = position(offset);
+			int count = buffer.getInt(base + 4);
+
+			for(int i = 0; i < count; i++) {
+				int entry = base + LEAF_HEADER_SIZE + i * ENTRY_SIZE;
+				double pointX = buffer.getDouble(entry);
+				double pointY = buffer.getDouble(entry + 8);
+
+				if(pointX >= boxMinX && pointX <= boxMaxX && pointY >= boxMinY && pointY <= boxMaxY
+						&& !consumer.accept(buffer.getLong(entry + 16), pointX, pointY))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Offset of the first leaf of the chain covering given coordinates
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return offset of the leaf
+	 */
+	private long leafOf(double x, double y) {
+		long offset = getLong(ROOT_FIELD);
+		double minX = topLeftX;
+		double minY = bottomRightY;
+		double maxX = bottomRightX;
+		double maxY = topLeftY;
+
+		while(getInt(offset) == NODE) {
+			double middleX = (minX + maxX) / 2;
+			double middleY = (minY + maxY) / 2;
+			int quad = quadrantOf(x, y, middleX, middleY);
+
+			if((quad & 2) == 0) maxX = middleX; else minX = middleX;
+			if((quad & 1) == 0) maxY = middleY; else minY = middleY;
+			offset = getLong(offset + 8 + 8 * quad);
+		}
+		return offset;
+	}
+
+	/**
+	 * Replace the full leaf at given offset by a node whose quadrants are new leaves with its entries.
+	 * The record of the leaf is kept for reuse.
+	 * @param offset of the leaf
+	 * @param minX minimum x coordinate of the leaf's rectangle
+	 * @param minY minimum y coordinate of the leaf's rectangle
+	 * @param maxX maximum x coordinate of the leaf's rectangle
+	 * @param maxY maximum y coordinate of the leaf's rectangle
+	 * @return offset of the node
+	 * @throws IOException if the file cannot grow
+	 */
+	private long split(long offset, double minX, double minY, double maxX, double maxY) throws IOException {
+		double middleX = (minX + maxX) / 2;
+		double middleY = (minY + maxY) / 2;
+		long node = allocate(NODE_SIZE);
+		long[] leaves = new long[Trie.QUADRANTS];
+		int[] counts = new int[Trie.QUADRANTS];
+		int count = getInt(offset + 4);
+
+		putInt(node, NODE);
+		for(int quad = 0; quad < Trie.QUADRANTS; quad++) {
+			leaves[quad] = allocateLeaf();
+			putLong(node + 8 + 8 * quad, leaves[quad]);
+		}
+		for(int i = 0; i < count; i++) {
+			long entry = offset + LEAF_HEADER_SIZE + (long) i * ENTRY_SIZE;
+			double x = getDouble(entry);
+			double y = getDouble(entry + 8);
+			int quad = quadrantOf(x, y, middleX, middleY);
+
+			putEntry(leaves[quad], counts[quad]++, x, y, getLong(entry + 16));
+		}
+		for(int quad = 0; quad < Trie.QUADRANTS; quad++)
+			putInt(leaves[quad] + 4, counts[quad]);
+
+		putInt(offset, FREE);
+		putLong(offset + 8, getLong(FREE_FIELD));
+		putLong(FREE_FIELD, offset);
+		return node;
+	}
+
+	/**
+	 * Record of an empty leaf, reusing the record of a split leaf if there is one
+	 * @return offset of the leaf
+	 * @throws IOException if the file cannot grow
+	 */
+	private long allocateLeaf() throws IOException {
+		long offset = getLong(FREE_FIELD);
+
+		if(offset != 0)
+			putLong(FREE_FIELD, getLong(offset + 8));
+		else
+			offset = allocate(leafSize);
+		putInt(offset, LEAF);
+		putInt(offset + 4, 0);
+		putLong(offset + 8, 0);
+		return offset;
+	}
+
+	/**
+	 * Space for a new record at the end of the file, starting a new segment if it does not fit in the last one
+	 * @param size of the record
+	 * @return offset of the record
+	 * @throws IOException if the file cannot grow
+	 */
+	private long allocate(int size) throws IOException {
+		long offset = getLong(END_FIELD);
+
+		if((offset & (SEGMENT_SIZE - 1)) + size > SEGMENT_SIZE)
+			offset = (offset | (SEGMENT_SIZE - 1)) + 1;
+		map(offset + size);
+		putLong(END_FIELD, offset + size);
+		return offset;
+	}
+
+	/**
+	 * Map the segments of the file up to given length, growing the file if needed
+	 * @param length of the file to be mapped
+	 * @throws IOException if the file cannot grow or be mapped
+	 */
+	private void map(long length) throws IOException {
+		while((long) segments.size() * SEGMENT_SIZE < length) {
+			long start = (long) segments.size() * SEGMENT_SIZE;
+
+			if(file.length() < start + SEGMENT_SIZE)
+				file.setLength(start + SEGMENT_SIZE);
+			MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT_SIZE);
+
+			segment.order(ByteOrder.LITTLE_ENDIAN);
+			segments.add(segment);
+		}
+	}
+
+	/**
+	 * Write an entry in the leaf at given offset
+	 * @param leaf offset of the leaf
+	 * @param index of the entry in the leaf
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param reference to the point
+	 */
+	private void putEntry(long leaf, int index, double x, double y, long reference) {
+		MappedByteBuffer buffer = segment(leaf);
+		int entry = position(leaf) + LEAF_HEADER_SIZE + index * ENTRY_SIZE;
+
+		buffer.putDouble(entry, x);
+		buffer.putDouble(entry + 8, y);
+		buffer.putLong(entry + 16, reference);
+	}
+
+	/**
+	 * Determine the quadrant of given coordinates, as the ordinal of its Quadrant, as in NodeTrie
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param middleX x coordinate of the middle of the rectangle
+	 * @param middleY y coordinate of the middle of the rectangle
+	 * @return ordinal of the quadrant
+	 */
+	private static int quadrantOf(double x, double y, double middleX, double middleY) {
+		return (x < middleX ? 0 : 2) | (y < middleY ? 0 : 1);
+	}
+
+	/**
+	 * Square of the distance from given point to the nearest point of a rectangle
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @return squared distance, zero if the point is inside the rectangle
+	 */
+	private static double distanceSquared(double x, double y, double minX, double minY, double maxX, double maxY) {
+		double distX = Math.max(minX, Math.min(x, maxX)) - x;
+		double distY = Math.max(minY, Math.min(y, maxY)) - y;
+		return distX * distX + distY * distY;
+	}
+
+	private MappedByteBuffer segment(long offset) {
+		return segments.get((int) (offset / SEGMENT_SIZE));
+	}
+
+	private static int position(long offset) {
+		return (int) (offset & (SEGMENT_SIZE - 1));
+	}
+
+	private int getInt(long offset) {
+		return segment(offset).getInt(position(offset));
+	}
+
+	private long getLong(long offset) {
+		return segment(offset).getLong(position(offset));
+	}
+
+	private double getDouble(long offset) {
+		return segment(offset).getDouble(position(offset));
+	}
+
+	private void putInt(long offset, int value) {
+		segment(offset).putInt(position(offset), value);
+	}
+
+	private void putLong(long offset, long value) {
+		segment(offset).putLong(position(offset), value);
+	}
+}
@@ -0,0 +1,449 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A linear quad tree, an alternative to PointQuadtree that keeps no nodes at all.
+ * Each point is given a Z-order (Morton) key, interleaving the bits of its coordinates quantized to 31 bits,
+ * and points are kept in arrays sorted by key, next to their coordinates.
+ * Every cell of the implicit quad tree is then a contiguous range of keys, hence a contiguous range of the arrays,
+ * found by binary search. Queries scan memory sequentially instead of following pointers scattered across the heap.
+ * Insertions and deletions shift the arrays, so this index suits catalogues that are read much more than updated,
+ * and are loaded with insertAll. It is not safe for use by several threads.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ * @implements Iterable
+ *
+ * @param <T> a type extending HasPoint
+ */
+public class MortonQuadtree<T extends HasPoint> implements Iterable<T> {
+
+	/**
+	 * Number of bits of each quantized coordinate, which is also the depth of the implicit quad tree
+	 */
+	static final int BITS = 31;
+
+	/**
+	 * Cells with at most this number of points are scanned instead of being divided in quadrants
+	 */
+	static final int SCAN_THRESHOLD = 32;
+
+	private static final int INITIAL_LENGTH = 16;
+
+	private final double topLeftX;
+	private final double topLeftY;
+	private final double bottomRightX;
+	private final double bottomRightY;
+	private final double scaleX;
+	private final double scaleY;
+
+	private long[] keys;
+	private double[] xs;
+	private double[] ys;
+	private T[] points;
+	private int size;
+
+	/**
+	 * Create a linear quad tree for points in a rectangle with given top left and bottom right corners.
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 */
+	@SuppressWarnings("unchecked")
+	public MortonQuadtree(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY) {
+		this.topLeftX = topLeftX;
+		this.topLeftY = topLeftY;
+		this.bottomRightX = bottomRightX;
+		this.bottomRightY = bottomRightY;
+		this.scaleX = (1L << BITS) / (bottomRightX - topLeftX);
+		this.scaleY = (1L << BITS) / (topLeftY - bottomRightY);
+
+		keys = new long[INITIAL_LENGTH];
+		xs = new double[INITIAL_LENGTH];
+		ys = new double[INITIAL_LENGTH];
+		points = (T[]) new HasPoint[INITIAL_LENGTH];
+		size = 0;
+	}
+
+	/**
+	 * Number of points in the quad tree
+	 * @return number of points
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Delete given point from the quad tree, if it exists there
+	 * @param point to be deleted
+	 */
+	public void delete(T point) {
+		int index = indexOf(point.getX(), point.getY());
+
+		if(index >= 0) {
+			int moved = size - index - 1;
+			System.arraycopy(keys, index + 1, keys, index, moved);
+			System.arraycopy(xs, index + 1, xs, index, moved);
+			System.arraycopy(ys, index + 1, ys, index, moved);
+			System.arraycopy(points, index + 1, points, index, moved);
+			points[--size] = null;
+		}
+	}
+
+	/**
+	 * Find a recorded point with the same coordinates of given point
+	 * @param point with requested coordinates
+	 * @return recorded point, if found; null otherwise
+	 */
+	public T find(T point) {
+		int index = indexOf(point.getX(), point.getY());
+		return index < 0 ? null : points[index];
+	}
+
+	/**
+	 * Returns a set of points at a distance smaller or equal to radius from point with given coordinates.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @return set of instances of type HasPoint
+	 */
+	public Set<T> findNear(double x, double y, double radius) {
+		final Set<T> set = new HashSet<T>();
+		forEachNear(x, y, radius, point -> { set.add(point); return true; });
+		return set;
+	}
+
+	/**
+	 * Pass each point at a distance smaller or equal to radius from point with given coordinates to given consumer.
+	 * The consumer may stop the search by returning false.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	public boolean forEachNear(double x, double y, double radius, PointConsumer<T> consumer) {
+		return forEachNear(x, y, radius * radius, consumer, 0, 0, 0, 0, size);
+	}
+
+	/**
+	 * A set with all points in the quad tree
+	 * @return set of instances of type HasPoint
+	 */
+	public Set<T> getAll() {
+		Set<T> set = new HashSet<T>();
+		for(int i = 0; i < size; i++)
+			set.add(points[i]);
+		return set;
+	}
+
+	/**
+	 * Insert given point in the quad tree
+	 * @param point to be inserted
+	 * @throws PointOutOfBoundException in case point is out of the quadtree
+	 */
+	public void insert(T point) throws PointOutOfBoundException {
+		double x = point.getX();
+		double y = point.getY();
+		long key = keyOf(x, y);
+		int index = lowerBound(key + 1, 0, size);
+
+		if(size == keys.length)
+			grow(size + 1);
+
+		int moved = size - index;
+		System.arraycopy(keys, index, keys, index + 1, moved);
+		System.arraycopy(xs, index, xs, index + 1, moved);
+		System.arraycopy(ys, index, ys, index + 1, moved);
+		System.arraycopy(points, index, points, index + 1, moved);
+		keys[index] = key;
+		xs[index] = x;
+		ys[index] = y;
+		points[index] = point;
+		size++;
+	}
+
+	/**
+	 * Insert all given points in the quad tree at once, by appending them and sorting all points by key
+	 * @param newPoints to be inserted
+	 * @throws PointOutOfBoundException in case some point is out of the quadtree, and then no point is inserted
+	 */
+	public void insertAll(Collection<? extends T> newPoints) throws PointOutOfBoundException {
+		int count = newPoints.size();
+		long[] newKeys = new long[count];
+		int i = 0;
+
+		for(T point : newPoints)
+			newKeys[i++] = keyOf(point.getX(), point.getY());
+
+		if(size + count > keys.length)
+			grow(size + count);
+
+		i = 0;
+		for(T point : newPoints) {
+			keys[size] = newKeys[i++];
+			xs[size] = point.getX();
+			ys[size] = point.getY();
+			points[size] = point;
+			size++;
+		}
+		sort();
+	}
+
+	/**
+	 * Returns an iterator over the points stored in the quad tree, in Z-order
+	 * @return iterator in interface java.lang.Iterable<T extends HasPoint>
+	 */
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			int index = 0;
+
+			public boolean hasNext() {
+				return index < size;
+			}
+
+			public T next() {
+				if(index >= size)
+					throw new NoSuchElementException();
+				return points[index++];
+			}
+		};
+	}
+
+	/**
+	 * Pass points in a cell of the implicit quad tree that are inside a circle to given consumer.
+	 * A cell outside the circle is pruned, a cell inside it is passed whole, and a cell with few points is scanned;
+	 * otherwise each quadrant is searched, with its range of keys found by binary search within the cell's range.
+	 * @param x coordinate of the center of the circle
+	 * @param y coordinate of the center of the circle
+	 * @param radiusSquared square of the radius of the circle
+	 * @param consumer of points
+	 * @param level of the cell, 0 being the whole rectangle
+	 * @param cellX quantized x coordinate of the cell at its level
+	 * @param cellY quantized y coordinate of the cell at its level
+	 * @param from index of the first point in the cell
+	 * @param to index after the last point in the cell
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	private boolean forEachNear(double x, double y, double radiusSquared, PointConsumer<T> consumer,
+			int level, long cellX, long cellY, int from, int to) {
+		if(from >= to)
+			return true;
+
+		int shift = BITS - level;
+		double quantumX = 1 / scaleX;
+		double quantumY = 1 / scaleY;
+		double minX = topLeftX + (cellX << shift) * quantumX - quantumX;
+		double maxX = topLeftX + ((cellX + 1) << shift) * quantumX + quantumX;
+		double minY = bottomRightY + (cellY << shift) * quantumY - quantumY;
+		double maxY = bottomRightY + ((cellY + 1) << shift) * quantumY + quantumY;
+
+		double nearX = Math.max(minX, Math.min(x, maxX)) - x;
+		double nearY = Math.max(minY, Math.min(y, maxY)) - y;
+		if(nearX * nearX + nearY * nearY > radiusSquared)
+			return true;
+
+		double farX = Math.max(x - minX, maxX - x);
+		double farY = Math.max(y - minY, maxY - y);
+		boolean inside = farX * farX + farY * farY <= radiusSquared;
+
+		if(inside || to - from <= SCAN_THRESHOLD || level == BITS) {
+			for(int i = from; i < to; i++) {
+				double distX = xs[i] - x;
+				double distY = ys[i] - y;
+				if((inside || distX * distX + distY * distY <= radiusSquared) && !consumer.accept(points[i]))
+					return false;
+			}
+			return true;
+		}
+
+		long cellKey = interleave(cellX, cellY) << 2 * shift;
+		long quadrantSize = 1L << 2 * (shift - 1);
+		int start = from;
+
+		for(int quad = 0; quad < Trie.QUADRANTS; quad++) {
+			int end = quad == Trie.QUADRANTS - 1 ? to : lowerBound(cellKey + (quad + 1) * quadrantSize, start, to);
+			if(!forEachNear(x, y, radiusSquared, consumer,
+					level + 1, 2 * cellX + (quad >> 1), 2 * cellY + (quad & 1), start, end))
+				return false;
+			start = end;
+		}
+		return true;
+	}
+
+	/**
+	 * Position of the first point recorded with given coordinates
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return index of the point, or -1 if there is none
+	 */
+	private int indexOf(double x, double y) {
+		if(!contains(x, y))
+			return -1;
+
+		long key = keyOf(x, y);
+		for(int i = lowerBound(key, 0, size); i < size && keys[i] == key; i++) {
+			if(xs[i] == x && ys[i] == y)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Index of the first key not smaller than given key, in a range of the sorted keys
+	 * @param key to search
+	 * @param from index of the first key in the range
+	 * @param to index after the last key in the range
+	 * @return index of the first key not smaller than key, or to if there is none
+	 */
+	private int lowerBound(long key, int from, int to) {
+		int low = from;
+		int high = to;
+
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(keys[middle] < key)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Check if given coordinates are inside the rectangle of this quad tree
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return true if inside and false otherwise
+	 */
+	private boolean contains(double x, double y) {
+		return (x >= topLeftX && y <= topLeftY) && (x <= bottomRightX && y >= bottomRightY);
+	}
+
+	/**
+	 * Z-order key of given coordinates
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return key with the bits of x and y interleaved, x in the most significant position of each pair
+	 * @throws PointOutOfBoundException in case point is out of the quadtree
+	 */
+	private long keyOf(double x, double y) throws PointOutOfBoundException {
+		if(!contains(x, y))
+			throw new PointOutOfBoundException();
+		return interleave(quantize(x - topLeftX, scaleX), quantize(y - bottomRightY, scaleY));
+	}
+
+	/**
+	 * Quantize an offset from the rectangle's origin to BITS bits
+	 * @param offset from the origin
+	 * @param scale number of quanta per unit
+	 * @return quantized offset
+	 */
+	private static long quantize(double offset, double scale) {
+		return Math.min((long) (offset * scale), (1L << BITS) - 1);
+	}
+
+	/**
+	 * Interleave the bits of two quantized coordinates
+	 * @param x quantized x coordinate
+	 * @param y quantized y coordinate
+	 * @return Z-order key
+	 */
+	static long interleave(long x, long y) {
+		return (spread(x) << 1) | spread(y);
+	}
+
+	/**
+	 * Spread the lower 32 bits of given value to the even bits of the result
+	 * @param value to spread
+	 * @return spread value
+	 */
+	private static long spread(long value) {
+		value &= 0xFFFFFFFFL;
+		value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+		value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+		value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		value = (value | (value << 2)) & 0x3333333333333333L;
+		value = (value | (value << 1)) & 0x5555555555555555L;
+		return value;
+	}
+
+	/**
+	 * Grow the arrays to hold at least given number of points
+	 * @param length minimum length of the arrays
+	 */
+	private void grow(int length) {
+		length = Math.max(length, 2 * keys.length);
+		keys = Arrays.copyOf(keys, length);
+		xs = Arrays.copyOf(xs, length);
+		ys = Arrays.copyOf(ys, length);
+		points = Arrays.copyOf(points, length);
+	}
+
+	/**
+	 * Sort all points by key, keeping their coordinates alongside.
+	 * Keys are sorted by a least significant digit radix sort that carries the original positions,
+	 * which are then used to permute coordinates and points.
+	 */
+	@SuppressWarnings("unchecked")
+	private void sort() {
+		if(size == 0)
+			return;
+
+		long[] sortedKeys = Arrays.copyOf(keys, size);
+		long[] bufferKeys = new long[size];
+		int[] order = new int[size];
+		int[] bufferOrder = new int[size];
+		int[] counts = new int[257];
+
+		for(int i = 0; i < size; i++)
+			order[i] = i;
+
+		for(int shift = 0; shift < 2 * BITS; shift += 8) {
+			Arrays.fill(counts, 0);
+			for(int i = 0; i < size; i++)
+				counts[(int) (sortedKeys[i] >>> shift & 0xFF) + 1]++;
+			if(counts[(int) (sortedKeys[0] >>> shift & 0xFF) + 1] == size)
+				continue;
+			for(int digit = 0; digit < 256; digit++)
+				counts[digit + 1] += counts[digit];
+			for(int i = 0; i < size; i++) {
+				int position = counts[(int) (sortedKeys[i] >>> shift & 0xFF)]++;
+				bufferKeys[position] = sortedKeys[i];
+				bufferOrder[position] = order[i];
+			}
+			long[] keySwap = sortedKeys;
+			sortedKeys = bufferKeys;
+			bufferKeys = keySwap;
+			int[] orderSwap = order;
+			order = bufferOrder;
+			bufferOrder = orderSwap;
+		}
+
+		double[] sortedXs = new double[keys.length];
+		double[] sortedYs = new double[keys.length];
+		T[] sortedPoints = (T[]) new HasPoint[keys.length];
+
+		for(int i = 0; i < size; i++) {
+			sortedXs[i] = xs[order[i]];
+			sortedYs[i] = ys[order[i]];
+			sortedPoints[i] = points[order[i]];
+		}
+		keys = Arrays.copyOf(sortedKeys, keys.length);
+		xs = sortedXs;
+		ys = sortedYs;
+		points = sortedPoints;
+	}
+}
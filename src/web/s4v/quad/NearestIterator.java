@@ -0,0 +1,208 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Iterator over the points of a quad tree by increasing distance to a given point.
+ * It performs a best-first search: tries and points are kept in a single priority queue ordered by
+ * their distance, and a trie is only expanded when it reaches the head of the queue.
+ * When the number of points to be requested is known, tries and points farther away
+ * than the farthest of the best candidates found so far are pruned.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ * @implements DistanceIterator, Visitor
+ *
+ * @param <T> type that extends HasPoint
+ */
+public class NearestIterator<T extends HasPoint> implements DistanceIterator<T>, Visitor<T> {
+
+	/**
+	 * An entry in the queue, either a trie still to be expanded or a point
+	 */
+	private static final class Entry<T extends HasPoint> implements Comparable<Entry<T>> {
+		final double distanceSquared;
+		final Trie<T> trie;
+		final T point;
+
+		Entry(double distanceSquared, Trie<T> trie, T point) {
+			this.distanceSquared = distanceSquared;
+			this.trie = trie;
+			this.point = point;
+		}
+
+		public int compareTo(Entry<T> other) {
+			return Double.compare(distanceSquared, other.distanceSquared);
+		}
+	}
+
+	private final double x;
+	private final double y;
+	private final PriorityQueue<Entry<T>> queue;
+	private final double[] best;
+	private final QueryCounters counters;
+	private int bestSize;
+
+	/**
+	 * Create an iterator over the points under given trie, nearest to (x,y) first
+	 * @param top trie where the search starts
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param limit maximum number of points that will be requested, used for pruning
+	 */
+	NearestIterator(Trie<T> top, double x, double y, int limit) {
+		this(top, x, y, limit, null);
+	}
+
+	/**
+	 * Create an iterator over the points under given trie, nearest to (x,y) first, recording its work as it goes,
+	 * since it may be abandoned at any time
+	 * @param top trie where the search starts
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param limit maximum number of points that will be requested, used for pruning
+	 * @param counters where the work is recorded, or null if the quad tree is not profiled
+	 */
+	NearestIterator(Trie<T> top, double x, double y, int limit, QueryCounters counters) {
+		this.counters = counters;
+		this.x = x;
+		this.y = y;
+		this.queue = new PriorityQueue<Entry<T>>();
+		this.best = limit < Integer.MAX_VALUE ? new double[Math.max(limit, 0)] : null;
+		this.bestSize = 0;
+
+		if(best == null || best.length > 0)
+			queue.add(new Entry<T>(top.distanceSquared(x, y), top, null));
+		if(counters != null)
+			counters.queries.increment();
+	}
+
+	/**
+	 * to determine if there is a next point
+	 * @return true if there is a next point, false if not
+	 */
+
+	public boolean hasNext() {
+		Entry<T> head;
+
+		while((head = queue.peek()) != null && head.trie != null) {
+			queue.poll();
+			head.trie.accept(this);
+		}
+		return head != null;
+	}
+
+	/**
+	 * The point nearest to (x,y) among those not yet returned
+	 * @return next point
+	 * @throws NoSuchElementException if all points were already returned
+	 */
+
+	public T next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+		if(counters != null)
+			counters.pointsFound.increment();
+		return queue.poll().point;
+	}
+
+	/**
+	 * Squared distance to (x,y) of the point that next will return
+	 * @return squared distance
+	 * @throws NoSuchElementException if all points were already returned
+	 */
+
+	public double peekDistanceSquared() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+		return queue.peek().distanceSquared;
+	}
+
+	/**
+	 * visits leaf, queueing its points that may be among the nearest
+	 * @param leaf to be visited
+	 */
+
+	public void visit(LeafTrie<T> leaf) {
+		if(counters != null) {
+			counters.triesVisited.increment();
+			counters.pointsTested.add(leaf.size());
+		}
+		for(int i = 0; i < leaf.size(); i++) {
+			double distX = leaf.getX(i) - x;
+			double distY = leaf.getY(i) - y;
+			double distanceSquared = distX * distX + distY * distY;
+
+			if(distanceSquared <= bound()) {
+				queue.add(new Entry<T>(distanceSquared, null, leaf.get(i)));
+				record(distanceSquared);
+				for(LeafTrie.Bucket<T> bucket = leaf.getBucket(i); bucket != null && distanceSquared <= bound(); bucket = bucket.next) {
+					queue.add(new Entry<T>(distanceSquared, null, bucket.point));
+					record(distanceSquared);
+				}
+			}
+		}
+	}
+
+	/**
+	 * visits node, queueing its quadrants that overlap the circle of the best candidates
+	 * @param node to be visited
+	 */
+
+	public void visit(NodeTrie<T> node) {
+		if(counters != null)
+			counters.triesVisited.increment();
+		for(Trie<T> trie : node.tries) {
+			if(trie.overlaps(x, y, Math.sqrt(bound())))
+				queue.add(new Entry<T>(trie.distanceSquared(x, y), trie, null));
+		}
+	}
+
+	/**
+	 * Squared distance beyond which nothing can be among the requested points.
+	 * It is the largest of the best squared distances once enough points were found.
+	 * @return bound on squared distance
+	 */
+
+	private double bound() {
+		if(best == null || bestSize < best.length)
+			return Double.POSITIVE_INFINITY;
+		return best[0];
+	}
+
+	/**
+	 * Record the squared distance of a queued point, keeping in a max-heap only the best ones
+	 * @param distanceSquared of the point
+	 */
+
+	private void record(double distanceSquared) {
+		if(best == null)
+			return;
+		if(bestSize < best.length) {
+			int child = bestSize++;
+			while(child > 0 && best[(child - 1) / 2] < distanceSquared) {
+				best[child] = best[(child - 1) / 2];
+				child = (child - 1) / 2;
+			}
+			best[child] = distanceSquared;
+		} else {
+			int parent = 0;
+			while(2 * parent + 1 < bestSize) {
+				int child = 2 * parent + 1;
+				if(child + 1 < bestSize && best[child + 1] > best[child])
+					child++;
+				if(best[child] <= distanceSquared)
+					break;
+				best[parent] = best[child];
+				parent = child;
+			}
+			best[parent] = distanceSquared;
+		}
+	}
+}
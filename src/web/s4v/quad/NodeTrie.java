@@ -4,10 +4,18 @@ package web.s4v.quad;
 import web.s4v.shared.HasPoint;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * Trie with 4 sub tries with equal dimensions covering all its area.
  * This class corresponds to the Container in the Composite design pattern.
+ * Each node keeps the earliest start and latest end of the intervals of the points below it, if they implement
+ * HasInterval, so that queries restricted to a time window skip subtrees that take place entirely outside it.
+ * The summary is widened by every insert on its way down, but deletes do not narrow it,
+ * which keeps it safe to read and widen concurrently; it becomes tight again when nodes are rebuilt.
+ * Each node also keeps the number of points below it, so that whole subtrees inside a region are counted at once.
+ * Sequential updates adjust it on their way back up, and concurrent ones add the change of the leaf they replaced
+ * to every node on their way down once the leaf is published.
  * @author José Santos (up202007059)
  * @author Miguel Gomes (up201905102)
  * @since April 2023
@@ -21,8 +29,25 @@ import java.util.*;
 
 public class NodeTrie<T extends HasPoint> extends Trie<T> implements Element<T> {
 
-	Map<Trie.Quadrant, Trie<T>> tries;
+	@SuppressWarnings("rawtypes")
+	private static final AtomicLongFieldUpdater<NodeTrie> MIN_START =
+			AtomicLongFieldUpdater.newUpdater(NodeTrie.class, "minStart");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicLongFieldUpdater<NodeTrie> MAX_END =
+			AtomicLongFieldUpdater.newUpdater(NodeTrie.class, "maxEnd");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicLongFieldUpdater<NodeTrie> COUNT =
+			AtomicLongFieldUpdater.newUpdater(NodeTrie.class, "count");
+
+	volatile Trie<T>[] tries;
+	final double middleX;
+	final double middleY;
 	boolean visited;
+	boolean detached;
+	volatile long minStart = Long.MAX_VALUE;
+	volatile long maxEnd = Long.MIN_VALUE;
+	volatile long count;
+	boolean summing;
 
 	/**
 	 * Initialize NodeTrie
@@ -35,39 +60,86 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> implements Element<T>
 	NodeTrie(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY) {
 		super(topLeftX, topLeftY, bottomRightX, bottomRightY);
 		
-		Trie<T> SW = new LeafTrie<T>(topLeftX, (topLeftY+bottomRightY)/2, 
-				(bottomRightX+topLeftX)/2, bottomRightY);
-		
-		Trie<T> NW = new LeafTrie<T>(topLeftX, topLeftY, 
-				(bottomRightX+topLeftX)/2, (bottomRightY+topLeftY)/2);
+		middleX = (topLeftX+bottomRightX)/2;
+		middleY = (topLeftY+bottomRightY)/2;
 		
-		Trie<T> SE = new LeafTrie<T>((bottomRightX+topLeftX)/2, (topLeftY+bottomRightY)/2, 
-				bottomRightX, bottomRightY);
+		this.tries = initializeQuadrants(
+				new LeafTrie<T>(topLeftX, middleY, middleX, bottomRightY),
+				new LeafTrie<T>(topLeftX, topLeftY, middleX, middleY),
+				new LeafTrie<T>(middleX, middleY, bottomRightX, bottomRightY),
+				new LeafTrie<T>(middleX, topLeftY, bottomRightX, middleY));
+		visited = false;
+	}
+
+	/**
+	 * Initialize NodeTrie with given sub tries, which must cover the quadrants of its rectangle
+	 * @param topLeftX to set left X
+	 * @param topLeftY to set left Y
+	 * @param bottomRightX to set right X
+	 * @param bottomRightY to set right Y
+	 * @param SW compass
+	 * @param NW compass
+	 * @param SE compass
+	 * @param NE compass
+	 */
+
+	NodeTrie(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY,
+			Trie<T> SW, Trie<T> NW, Trie<T> SE, Trie<T> NE) {
+		this(topLeftX, topLeftY, bottomRightX, bottomRightY,
+				(topLeftX+bottomRightX)/2, (topLeftY+bottomRightY)/2, SW, NW, SE, NE);
+	}
+
+	/**
+	 * Initialize NodeTrie with given sub tries, split at given coordinates instead of at the middle of its rectangle.
+	 * It is used to add a level above the top of a quad tree, whose rectangle is then one of the quadrants.
+	 * @param topLeftX to set left X
+	 * @param topLeftY to set left Y
+	 * @param bottomRightX to set right X
+	 * @param bottomRightY to set right Y
+	 * @param middleX x coordinate where western and eastern quadrants meet
+	 * @param middleY y coordinate where southern and northern quadrants meet
+	 * @param SW compass
+	 * @param NW compass
+	 * @param SE compass
+	 * @param NE compass
+	 */
+
+	NodeTrie(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY,
+			double middleX, double middleY, Trie<T> SW, Trie<T> NW, Trie<T> SE, Trie<T> NE) {
+		super(topLeftX, topLeftY, bottomRightX, bottomRightY);
 		
-		Trie<T> NE = new LeafTrie<T>((topLeftX+bottomRightX)/2, topLeftY, 
-				bottomRightX, (bottomRightY+topLeftY)/2);
+		this.middleX = middleX;
+		this.middleY = middleY;
 		
 		this.tries = initializeQuadrants(SW, NW, SE, NE);
 		visited = false;
+		for(Trie<T> trie : tries) {
+			count += trie.count();
+			if(trie instanceof NodeTrie)
+				widen(((NodeTrie<T>) trie).minStart, ((NodeTrie<T>) trie).maxEnd);
+			else
+				trie.forEachAll(point -> { widen(point); return true; });
+		}
 	}
 
 	/**
-	 * Initialize the quadrants of the compass
+	 * Initialize the quadrants of the compass, each in the slot given by the ordinal of its quadrant
 	 * @param SW compass
 	 * @param NW compass
 	 * @param SE compass
 	 * @param NE compass
-	 * @return a new node according to compass coordinates
+	 * @return array of tries indexed by quadrant ordinal
 	 */
 
-	Map<Trie.Quadrant, Trie<T>> initializeQuadrants(Trie<T> SW, Trie<T> NW, Trie<T> SE, Trie<T> NE) {
+	@SuppressWarnings("unchecked")
+	Trie<T>[] initializeQuadrants(Trie<T> SW, Trie<T> NW, Trie<T> SE, Trie<T> NE) {
 		
-		Map<Trie.Quadrant, Trie<T>> newNode = new HashMap<Trie.Quadrant, Trie<T>>();
+		Trie<T>[] newNode = (Trie<T>[]) new Trie<?>[QUADRANTS];
 			
-		newNode.put(Quadrant.SE, SE);
-		newNode.put(Quadrant.NE, NE);
-		newNode.put(Quadrant.SW, SW);
-		newNode.put(Quadrant.NW, NW);
+		newNode[Quadrant.SW.ordinal()] = SW;
+		newNode[Quadrant.NW.ordinal()] = NW;
+		newNode[Quadrant.SE.ordinal()] = SE;
+		newNode[Quadrant.NE.ordinal()] = NE;
 		
 		return newNode;
 	}
@@ -82,38 +154,251 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> implements Element<T>
 	}
 
 	/**
-	 * Collect all points in this node and its descendants in given set
-	 * @param set set of HasPoint for collecting points
+	 * Pass all points in this node and its descendants to given consumer
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+
+	boolean forEachAll(PointConsumer<T> consumer) {
+		for(Trie<T> trie : tries) {
+			if(!trie.forEachAll(consumer))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Number of points below this node. A node added above the top while the quad tree is shared
+	 * sums those of its quadrants instead, since updates already on their way down do not know about it.
+	 * @return count of points
+	 */
+
+	long count() {
+		if(!summing)
+			return count;
+
+		long count = 0;
+		for(Trie<T> trie : tries)
+			count += trie.count();
+		return count;
+	}
+
+	/**
+	 * Number of points below this node inside given region. Quadrants wholly inside it are taken from their counts,
+	 * and only those crossing its boundary are searched.
+	 * @param region where points are counted
+	 * @return count of points
+	 */
+
+	long count(Region region) {
+		long count = 0;
+
+		for(Trie<T> trie : tries) {
+			if(trie.inside(region))
+				count += trie.count();
+			else if(trie.intersects(region))
+				count += trie.count(region);
+		}
+		return count;
+	}
+
+	/**
+	 * Pass points below this node inside given region to given consumer. Quadrants wholly inside it are passed
+	 * without testing their points, and only those crossing its boundary are searched.
+	 * @param region where points are searched
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
 	 */
 
-	void collectAll(Set<T> set) {
-		for(Quadrant q : Quadrant.values()) {
-				tries.get(q).collectAll(set);
+	boolean forEachIn(Region region, PointConsumer<T> consumer) {
+		for(Trie<T> trie : tries) {
+			if(trie.inside(region)) {
+				if(!trie.forEachAll(consumer))
+					return false;
+			}
+			else if(trie.intersects(region) && !trie.forEachIn(region, consumer))
+				return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Add given change to the number of points below this node, in concurrent mode
+	 * @param delta change in the number of points
+	 */
+
+	void counted(long delta) {
+		if(delta != 0 && !summing)
+			COUNT.addAndGet(this, delta);
 	}
 
 	/**
-	 * Collect points at a distance smaller or equal to radius from (x,y) and place them in given list
+	 * Pass points at a distance smaller or equal to radius from (x,y) to given consumer
 	 * @param x coordinate of point
 	 * @param y coordinate of point
 	 * @param radius from given point
-	 * @param nodes set for collecting points
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+
+	boolean forEachNear(double x, double y, double radius, PointConsumer<T> consumer) {
+		for(Trie<T> trie : tries) {
+			if(trie.overlaps(x, y, radius) && !trie.forEachNear(x, y, radius, consumer))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Pass points at a distance smaller or equal to the radius of each query in a batch from its center to given consumer.
+	 * The queries are partitioned by quadrant, so that each quadrant is traversed once for all queries overlapping it.
+	 * @param x coordinates of the centers of the queries
+	 * @param y coordinates of the centers of the queries
+	 * @param radius of each query
+	 * @param probes positions of the queries that overlap this node, in their first count positions
+	 * @param count number of queries that overlap this node
+	 * @param consumer of points
+	 */
+
+	void forEachNear(double[] x, double[] y, double[] radius, int[] probes, int count, ProbeConsumer<T> consumer) {
+		int[] overlapping = new int[count];
+
+		for(Trie<T> trie : tries) {
+			int size = 0;
+
+			for(int i = 0; i < count; i++) {
+				int probe = probes[i];
+				if(trie.overlaps(x[probe], y[probe], radius[probe]))
+					overlapping[size++] = probe;
+			}
+			if(size > 0)
+				trie.forEachNear(x, y, radius, overlapping, size, consumer);
+		}
+	}
+
+	/**
+	 * Pass points inside the rectangle with given limits to given consumer
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+
+	boolean forEachInBox(double minX, double minY, double maxX, double maxY, PointConsumer<T> consumer) {
+		for(Trie<T> trie : tries) {
+			if(trie.intersects(minX, minY, maxX, maxY) && !trie.forEachInBox(minX, minY, maxX, maxY, consumer))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Pass points inside the rectangle with given limits whose interval overlaps given time window to given consumer,
+	 * skipping quadrants whose summary lies outside the window
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
 	 */
 
-	void collectNear(double x, double y, double radius, Set<T> nodes) {
-		for(Quadrant q : Quadrant.values()) {
-			if(tries.get(q).overlaps(x, y, radius)) 
-				this.tries.get(q).collectNear(x, y, radius, nodes);
+	boolean forEachInBox(double minX, double minY, double maxX, double maxY, long from, long to,
+			PointConsumer<T> consumer) {
+		for(Trie<T> trie : tries) {
+			if(trie.intersects(minX, minY, maxX, maxY) && trie.during(from, to)
+					&& !trie.forEachInBox(minX, minY, maxX, maxY, from, to, consumer))
+				return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Check if some point below this node may take place during given time window, according to its summary
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @return false if no point takes place during the window, true otherwise
+	 */
+
+	@Override
+	boolean during(long from, long to) {
+		return minStart <= to && maxEnd >= from;
+	}
+
+	/**
+	 * Widen the summary of this node to include the interval of given point
+	 * @param point to include
+	 */
+
+	void widen(T point) {
+		widen(startOf(point), endOf(point));
+	}
+
+	/**
+	 * Widen the summary of this node to include given interval. Concurrent writers widen it
+	 * with compare-and-set, so that no interval is lost.
+	 * @param start of the interval
+	 * @param end of the interval
+	 */
+
+	private void widen(long start, long end) {
+		if(start < minStart)
+			MIN_START.accumulateAndGet(this, start, Math::min);
+		if(end > maxEnd)
+			MAX_END.accumulateAndGet(this, end, Math::max);
 	}
 
 	/**
-	 * Delete given point
+	 * Delete given point, merging this node into a single leaf if it becomes sparse
 	 * @param point to delete
+	 * @param capacity of leaves in the quad tree
+	 * @return changed trie
+	 */
+
+	Trie<T> delete(T point, int capacity) {
+		int quad = quadrantOf(point.getX(), point.getY());
+		long before = tries[quad].count();
+
+		tries[quad] = tries[quad].delete(point, capacity);
+		count += tries[quad].count() - before;
+		return canMerge(capacity) ? merge() : this;
+	}
+
+	/**
+	 * Check if this node is sparse enough to be merged into a single leaf, that is, if its quadrants
+	 * are leaves holding at most half the capacity. Since a leaf only splits when it exceeds the capacity,
+	 * the gap between both thresholds keeps alternating inserts and deletes from splitting and merging
+	 * the same node over and over.
+	 * @param capacity of leaves in the quad tree
+	 * @return true if can be merged, false otherwise
+	 */
+
+	boolean canMerge(int capacity) {
+		int size = 0;
+
+		for(Trie<T> trie : tries) {
+			if(!(trie instanceof LeafTrie))
+				return false;
+			size += ((LeafTrie<T>) trie).size();
+		}
+		return size <= capacity / 2;
+	}
+
+	/**
+	 * A leaf with the same rectangle and all points of this node, whose quadrants must all be leaves
+	 * @return merged leaf
 	 */
 
-	void delete(T point) {
-		this.tries.get(quadrantOf(point)).delete(point);
+	LeafTrie<T> merge() {
+		LeafTrie<T> leaf = new LeafTrie<T>(topLeftX, topLeftY, bottomRightX, bottomRightY);
+
+		for(Trie<T> trie : tries)
+			leaf.appendAll((LeafTrie<T>) trie);
+		return leaf;
 	}
 
 	/**
@@ -123,7 +408,70 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> implements Element<T>
 	 */
 
 	T find(T point) {
-		return this.tries.get(quadrantOf(point)).find(point);
+		return this.tries[quadrantOf(point.getX(), point.getY())].find(point);
+	}
+
+	/**
+	 * Delete given point only if it is recorded, merging this node into a single leaf if it becomes sparse
+	 * @param point to delete
+	 * @param capacity of leaves in the quad tree
+	 * @return changed trie, or null if the point is not recorded
+	 */
+
+	Trie<T> extract(T point, int capacity) {
+		int quad = quadrantOf(point.getX(), point.getY());
+		Trie<T> trie = tries[quad].extract(point, capacity);
+
+		if(trie == null)
+			return null;
+		count--;
+		tries[quad] = trie;
+		return canMerge(capacity) ? merge() : this;
+	}
+
+	/**
+	 * Check if given point is recorded, at the coordinates it reports
+	 * @param point to look for
+	 * @return true if recorded, false otherwise
+	 */
+
+	boolean holds(T point) {
+		return tries[quadrantOf(point.getX(), point.getY())].holds(point);
+	}
+
+	/**
+	 * Move given point to new coordinates inside this node. While both positions fall in the same quadrant
+	 * the move is passed down; otherwise this is the deepest node covering both, and the point is deleted
+	 * from one quadrant and inserted in the other, without descending again from the top.
+	 * @param point to be moved
+	 * @param newX new x coordinate of point
+	 * @param newY new y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 * @param minCellSize minimum width and height of a trie
+	 * @return this node, or null if the point is not recorded
+	 */
+
+	Trie<T> relocate(T point, double newX, double newY, int capacity, double minCellSize) {
+		int quad = quadrantOf(point.getX(), point.getY());
+		int newQuad = quadrantOf(newX, newY);
+
+		if(quad == newQuad) {
+			Trie<T> trie = tries[quad].relocate(point, newX, newY, capacity, minCellSize);
+
+			if(trie == null)
+				return null;
+			widen(point);
+			tries[quad] = trie;
+			return this;
+		}
+		Trie<T> trie = tries[quad].extract(point, capacity);
+
+		if(trie == null)
+			return null;
+		widen(point);
+		tries[quad] = trie;
+		tries[newQuad] = tries[newQuad].insert(point, newX, newY, capacity, minCellSize);
+		return this;
 	}
 
 	/**
@@ -132,67 +480,74 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> implements Element<T>
 	 */
 
 	Collection<Trie<T>> getTries() {
-		Collection<Trie<T>> retVal = new ArrayList<Trie<T>>();
-		
-		for(Quadrant q : Quadrant.values()) {
-			retVal.add(tries.get(q));
-		}
-		
-		return retVal;
+		return Arrays.asList(tries);
 	}
 
 	/**
-	 * Insert given point
+	 * Insert given point with given coordinates
 	 * @param point to be inserted
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 * @param minCellSize minimum width and height of a trie
 	 * @return changed parent node
 	 */
 
-	Trie<T> insert(T point) {
-		Quadrant quad = quadrantOf(point);
-		Trie<T> trie = tries.get(quad).insert(point);
+	Trie<T> insert(T point, double x, double y, int capacity, double minCellSize) {
+		int quad = quadrantOf(x, y);
 		
-		tries.put(quad, trie);
+		widen(point);
+		count++;
+		tries[quad] = tries[quad].insert(point, x, y, capacity, minCellSize);
 		return this;
 	}
 
 	/**
 	 * Insert given point, replacing existing points in same location
 	 * @param point point to be inserted
+	 * @param capacity of leaves in the quad tree
 	 * @return changed parent node
 	 */
 
-	Trie<T> insertReplace(T point) {
-		Quadrant quad = quadrantOf(point);
-		Trie<T> trie = tries.get(quad).insertReplace(point);
+	Trie<T> insertReplace(T point, int capacity) {
+		int quad = quadrantOf(point.getX(), point.getY());
+		long before = tries[quad].count();
 		
-		tries.put(quad, trie);
+		widen(point);
+		tries[quad] = tries[quad].insertReplace(point, capacity);
+		count += tries[quad].count() - before;
 		return this;
 	}
 
 	/**
-	 * Determine quadrants
-	 * @param point point to determine
-	 * @return quadrant
+	 * Replace the sub trie in given quadrant by publishing a new array of tries.
+	 * Concurrent readers see either the old or the new sub trie, never a partially built one.
+	 * @param quad ordinal of the quadrant
+	 * @param trie replacing the current one
 	 */
 
-	Quadrant quadrantOf(T point) {
-		if (point.getX() < ((topLeftX+bottomRightX)/2)) {
-			if (point.getY() < ((topLeftY+bottomRightY)/2))
-				return Quadrant.SW;
-			else
-				return Quadrant.NW;
-		} 
-		else {
-			if (point.getY() < ((topLeftY+bottomRightY)/2))
-				return Quadrant.SE;
-			else
-				return Quadrant.NE;
-		}
+	void publish(int quad, Trie<T> trie) {
+		Trie<T>[] newTries = tries.clone();
+
+		newTries[quad] = trie;
+		tries = newTries;
+	}
+
+	/**
+	 * Determine the quadrant of given coordinates, as the ordinal of its Quadrant.
+	 * The west/east half selects bit 1 and the south/north half selects bit 0.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return ordinal of the quadrant
+	 */
+
+	int quadrantOf(double x, double y) {
+		return (x < middleX ? 0 : 2) | (y < middleY ? 0 : 1);
 	}
 
 	@Override
 	public String toString() {
-		return "NodeTrie [tries=" + tries + "]";
+		return "NodeTrie [tries=" + Arrays.toString(tries) + "]";
 	}
 
 }
\ No newline at end of file
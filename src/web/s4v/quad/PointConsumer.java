@@ -0,0 +1,21 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+/**
+ * Receives the points found by a query on a quad tree, as soon as they are found.
+ * Returning false stops the query, hence a consumer may end a search early.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ */
+public interface PointConsumer<T extends HasPoint> {
+	/**
+	 * Receive a point found by a query
+	 * @param point found
+	 * @return true to continue the query, false to stop it
+	 */
+	boolean accept(T point);
+}
@@ -1,7 +1,9 @@
 package web.s4v.quad;
 
 /**
- * Exception raised when the quad tree is used with a point outside its boundaries.
+ * Exception raised when a quad tree is used with a point outside its boundaries.
+ * Quad trees with fixed boundaries raise it for points outside them, while PointQuadtree grows to cover
+ * any point and raises it only for coordinates that are not finite.
  * Programmers can easily avoid these exceptions by checking points before attempting to insert them in a quad tree.
  * Since it extends RuntimeException, it is not mandatory to handle this kind of exception.
  * @author José Santos (up202007059)
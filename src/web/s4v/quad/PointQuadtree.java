@@ -1,41 +1,80 @@
 package web.s4v.quad;
 
 
-import web.s4v.quad.Trie.Quadrant;
 import web.s4v.shared.HasPoint;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 /**
  * This class follows the Facade design pattern and presents a single access point to manage quad trees.
  * It provides methods for inserting, deleting and finding elements implementing HasPoint.
  * This class corresponds to the Client in the Composite design pattern used in this package.
+ * A quad tree created in concurrent mode may be shared by several threads: queries never block,
+ * and updates replace leaves with modified copies while holding only the lock of the leaf's parent node,
+ * so that updates in different subtrees proceed in parallel.
+ * The rectangle given on creation is only the initial area: inserting or moving a point outside it
+ * adds parent levels around the existing tree until the point is covered, without inserting any point again.
  * @author José Santos (up202007059)
  * @author Miguel Gomes (up201905102)
  * @since April 2023
  *
  *
  * @extends HasPoint
- * @implements Iterable
+ * @implements SpatialIndex
  *
  * @param <T> a type extending HasPoint
  */
-public class PointQuadtree<T extends HasPoint> implements Iterable<T> {
+public class PointQuadtree<T extends HasPoint> implements SpatialIndex<T> {
 
-	Trie<T> top;
+	/**
+	 * Capacity of leaves in quad trees created without one
+	 */
+	public static final int DEFAULT_CAPACITY = 32;
 
-	public class PointIterator implements Iterator<T>, Runnable, Visitor<T> {
-		T nextPoint;
-		boolean terminated;
-		Thread thread;
+	/**
+	 * Maximum depth of tries, which sets the minimum cell size as a fraction of the initial rectangle
+	 */
+	static final int MAX_DEPTH = 30;
+
+	volatile Trie<T> top;
+	volatile int capacity;
+	volatile CapacityTuner tuner;
+	volatile QueryCounters counters;
+	final double minCellSize;
+	final boolean concurrent;
+
+	/**
+	 * Iterator over the points of the quad tree. Tries still to be visited are kept in an explicit stack
+	 * and points are consumed from the current leaf with a cursor, so no thread is involved and
+	 * an iterator can be abandoned at any time.
+	 */
+	public class PointIterator implements Iterator<T>, Visitor<T> {
+		Deque<Trie<T>> pending;
+		LeafTrie<T> leaf;
+		int index;
+		LeafTrie.Bucket<T> bucket;
+		LeafTrie<T> lastLeaf;
+		int lastIndex;
+		T last;
 
 		/**
 		 * Point Iterator
 		 */
 		PointIterator() {
-			thread = new Thread(this, "Point Iterator");
-			thread.start();
+			pending = new ArrayDeque<Trie<T>>();
+			pending.push(top);
 		}
 
 		/**
@@ -44,82 +83,153 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T> {
 		 */
 
 		public boolean hasNext() {
-			synchronized (this) {
-				if(!terminated)
-					handshake();
+			while(bucket == null && (leaf == null || index >= leaf.size())) {
+				if(pending.isEmpty())
+					return false;
+				leaf = null;
+				pending.pop().accept(this);
 			}
-
-			return nextPoint != null;
+			return true;
 		}
 
 		/**
 		 * search the next point
 		 * @return next point
+		 * @throws NoSuchElementException if all points were already returned
 		 */
 
 		public T next() {
-			T value = nextPoint;
+			if(!hasNext())
+				throw new NoSuchElementException();
+			lastLeaf = leaf;
+			if(bucket != null) {
+				last = bucket.point;
+				bucket = bucket.next;
+			}
+			else {
+				lastIndex = index;
+				last = leaf.get(index);
+				bucket = leaf.getBucket(index++);
+			}
+			return last;
+		}
 
-			synchronized (this) {
-				nextPoint = null;
+		/**
+		 * remove from the quad tree the last point returned by next
+		 * @throws IllegalStateException if next was not called or the point was already removed
+		 */
+
+		public void remove() {
+			if(lastLeaf == null)
+				throw new IllegalStateException();
+			if(concurrent)
+				PointQuadtree.this.delete(last);
+			else {
+				uncount(lastLeaf.getX(lastIndex), lastLeaf.getY(lastIndex));
+				if(lastLeaf.getBucket(lastIndex) != null)
+					lastLeaf.remove(lastIndex, last);
+				else {
+					lastLeaf.remove(lastIndex);
+					if(lastLeaf == leaf)
+						index--;
+				}
 			}
-			return value;
+			lastLeaf = null;
 		}
 
 		/**
-		 * run iterator
+		 * Take a point out of the counts of the nodes above the leaf where it is recorded at given coordinates,
+		 * in sequential mode
+		 * @param x recorded coordinate of point
+		 * @param y recorded coordinate of point
 		 */
 
-		public void run() {
-			terminated = false;
-			top.accept(this);
+		private void uncount(double x, double y) {
+			for(Trie<T> trie = top; trie instanceof NodeTrie; ) {
+				NodeTrie<T> node = (NodeTrie<T>) trie;
 
-			synchronized(this) {
-				terminated = true;
-				handshake();
+				node.count--;
+				trie = node.tries[node.quadrantOf(x, y)];
 			}
 		}
 
 		/**
-		 * visits leaf
+		 * visits leaf, making it the current one
 		 * @param leaf to be visited
 		 */
 
 		public void visit(LeafTrie<T> leaf) {
-			if(leaf != null) {
-				synchronized(this) {
-					for(T point : leaf.getPoints()) {
-						if(nextPoint != null)
-							handshake();
-						nextPoint = point;
-						handshake();
-					}
-				}
-			}
+			this.leaf = leaf;
+			this.index = 0;
 		}
 
 		/**
-		 * visits node
+		 * visits node, stacking its quadrants so that they are visited in order
 		 * @param node to be visited
 		 */
 
 		public void visit(NodeTrie<T> node) {
-			if(node != null) {
-				for(Quadrant q : Quadrant.values()) {
-					synchronized(this) {
-						node.tries.get(q).accept(this);
-					}
-				}
-			}
+			Trie<T>[] tries = node.tries;
+			for(int i = tries.length - 1; i >= 0; i--)
+				pending.push(tries[i]);
 		}
+	}
 
-		private void handshake() {
-			notify();
-			try {
-				wait();
-			}catch (InterruptedException cause) {
-				throw new RuntimeException("Unexpected Interruption while waiting");
-			}
+	/**
+	 * Circle where points are searched or counted
+	 */
+	static class Circle implements Region {
+		final double x;
+		final double y;
+		final double radius;
+
+		Circle(double x, double y, double radius) {
+			this.x = x;
+			this.y = y;
+			this.radius = radius;
+		}
+
+		public boolean contains(double x, double y) {
+			double distX = x - this.x;
+			double distY = y - this.y;
+			return distX * distX + distY * distY <= radius * radius;
+		}
+
+		public boolean contains(double minX, double minY, double maxX, double maxY) {
+			return contains(x - minX > maxX - x ? minX : maxX, y - minY > maxY - y ? minY : maxY);
+		}
+
+		public boolean intersects(double minX, double minY, double maxX, double maxY) {
+			return contains(Math.max(minX, Math.min(x, maxX)), Math.max(minY, Math.min(y, maxY)));
+		}
+	}
+
+	/**
+	 * Rectangle where points are searched or counted
+	 */
+	static class Box implements Region {
+		final double minX;
+		final double minY;
+		final double maxX;
+		final double maxY;
+
+		Box(double minX, double minY, double maxX, double maxY) {
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		public boolean contains(double x, double y) {
+			return x >= minX && x <= maxX && y >= minY && y <= maxY;
+		}
+
+		public boolean contains(double minX, double minY, double maxX, double maxY) {
+			return minX >= this.minX && maxX <= this.maxX && minY >= this.minY && maxY <= this.maxY;
+		}
+
+		public boolean intersects(double minX, double minY, double maxX, double maxY) {
+			return minX <= this.maxX && maxX >= this.minX && minY <= this.maxY && maxY >= this.minY;
 		}
 	}
 
@@ -129,7 +239,7 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T> {
 	 * @param height height of the rectangle
 	 */
 	public PointQuadtree(double width, double height) {
-		this.top = new NodeTrie<T>(0, height, width, 0);
+		this(0, height, width, 0);
 	}
 
 	/**
@@ -140,7 +250,7 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T> {
 	 */
 
 	public PointQuadtree(double width, double height, double margin) {
-		this.top = new NodeTrie<T>(-margin, height+margin, width+margin, -margin);
+		this(-margin, height+margin, width+margin, -margin);
 	}
 
 	/**
@@ -152,16 +262,324 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T> {
 	 * @param bottomRightY y coordinate of bottom right corner
 	 */
 	public PointQuadtree(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY) {
+		this(topLeftX, topLeftY, bottomRightX, bottomRightY, false);
+	}
+
+	/**
+	 * Create a quad tree for points in a rectangle with given top left and bottom right corners,
+	 * that may be shared by several threads if created in concurrent mode.
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @param concurrent true if the quad tree is to be used by several threads
+	 */
+	public PointQuadtree(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY, boolean concurrent) {
+		this(topLeftX, topLeftY, bottomRightX, bottomRightY, DEFAULT_CAPACITY, concurrent);
+	}
+
+	/**
+	 * Create a quad tree for points initially in a rectangle with given top left and bottom right corners,
+	 * whose leaves split when they exceed given capacity,
+	 * that may be shared by several threads if created in concurrent mode.
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @param capacity maximum number of points in a leaf
+	 * @param concurrent true if the quad tree is to be used by several threads
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public PointQuadtree(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY,
+			int capacity, boolean concurrent) {
+		setCapacity(capacity);
 		this.top = new NodeTrie<T>(topLeftX, topLeftY, bottomRightX, bottomRightY);
+		this.minCellSize = Math.max(bottomRightX - topLeftX, topLeftY - bottomRightY) / (1 << MAX_DEPTH);
+		this.concurrent = concurrent;
+	}
+
+	/**
+	 * Create a quad tree for points in a rectangle with given top left and bottom right corners,
+	 * loaded at once with given points. This is much faster than inserting them one by one.
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @param points to be inserted
+	 * @param parallel true if large subtrees are to be built in parallel, in the common fork-join pool
+	 * @param <T> a type extending HasPoint
+	 * @return quad tree with given points
+	 * @throws PointOutOfBoundException in case some point has coordinates that are not finite
+	 */
+	public static <T extends HasPoint> PointQuadtree<T> build(double topLeftX, double topLeftY,
+			double bottomRightX, double bottomRightY, Collection<? extends T> points, boolean parallel)
+			throws PointOutOfBoundException {
+		return build(topLeftX, topLeftY, bottomRightX, bottomRightY, DEFAULT_CAPACITY, points, parallel);
+	}
+
+	/**
+	 * Create a quad tree for points in a rectangle with given top left and bottom right corners and leaf capacity,
+	 * loaded at once with given points.
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @param capacity maximum number of points in a leaf
+	 * @param points to be inserted
+	 * @param parallel true if large subtrees are to be built in parallel, in the common fork-join pool
+	 * @param <T> a type extending HasPoint
+	 * @return quad tree with given points
+	 * @throws PointOutOfBoundException in case some point has coordinates that are not finite
+	 */
+	public static <T extends HasPoint> PointQuadtree<T> build(double topLeftX, double topLeftY,
+			double bottomRightX, double bottomRightY, int capacity, Collection<? extends T> points, boolean parallel)
+			throws PointOutOfBoundException {
+		PointQuadtree<T> quadtree = new PointQuadtree<T>(topLeftX, topLeftY, bottomRightX, bottomRightY, capacity, false);
+
+		quadtree.insertAll(points, parallel);
+		return quadtree;
+	}
+
+	/**
+	 * Check if this quad tree was created in concurrent mode
+	 * @return true if it may be shared by several threads
+	 */
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * Check if given coordinates are inside the current boundaries of this quad tree,
+	 * where points can be inserted without growing it
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return true if inside, false otherwise
+	 */
+	public boolean covers(double x, double y) {
+		Trie<T> top = this.top;
+
+		return (x >= top.topLeftX && y <= top.topLeftY) && (x <= top.bottomRightX && y >= top.bottomRightY);
 	}
 
 	/**
-	 * Delete given point from QuadTree, if it exists there
+	 * Minimum x coordinate of the current boundaries of this quad tree
+	 * @return x coordinate of top left corner
+	 */
+	public double getTopLeftX() {
+		return top.topLeftX;
+	}
+
+	/**
+	 * Maximum y coordinate of the current boundaries of this quad tree
+	 * @return y coordinate of top left corner
+	 */
+	public double getTopLeftY() {
+		return top.topLeftY;
+	}
+
+	/**
+	 * Maximum x coordinate of the current boundaries of this quad tree
+	 * @return x coordinate of bottom right corner
+	 */
+	public double getBottomRightX() {
+		return top.bottomRightX;
+	}
+
+	/**
+	 * Minimum y coordinate of the current boundaries of this quad tree
+	 * @return y coordinate of bottom right corner
+	 */
+	public double getBottomRightY() {
+		return top.bottomRightY;
+	}
+
+	/**
+	 * Grow this quad tree until it covers given coordinates. Each step adds a parent level around the top,
+	 * twice as wide and as high, with the top as the quadrant facing away from the point and empty leaves
+	 * in the other three, so the points already recorded stay where they are.
+	 * The split of the new level is placed on the edge of the old top, just past it on its eastern and northern sides
+	 * since those edges are inclusive, so every point of the old top is still routed into it.
+	 * In concurrent mode the top is replaced while holding the lock of the quad tree, as in every other change of the top.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @throws PointOutOfBoundException in case a coordinate is not finite, and then nothing is changed
+	 */
+
+	private void cover(double x, double y) throws PointOutOfBoundException {
+		if(covers(x, y))
+			return;
+		if(!Double.isFinite(x) || !Double.isFinite(y))
+			throw new PointOutOfBoundException();
+		if(concurrent) {
+			synchronized(this) {
+				while(!covers(x, y))
+					top = grow(top, x, y);
+			}
+		}
+		else {
+			while(!covers(x, y))
+				top = grow(top, x, y);
+		}
+	}
+
+	/**
+	 * Parent level of given trie, extended towards given coordinates
+	 * @param trie current top of the quad tree
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return new top, with given trie as one of its quadrants
+	 */
+
+	private NodeTrie<T> grow(Trie<T> trie, double x, double y) {
+		double width = trie.bottomRightX - trie.topLeftX;
+		double height = trie.topLeftY - trie.bottomRightY;
+		double stepX = width > 0 ? width : height > 0 ? height : 1;
+		double stepY = height > 0 ? height : stepX;
+		boolean west = x < trie.topLeftX;
+		boolean south = y < trie.bottomRightY;
+		double middleX = west ? trie.topLeftX : Math.nextUp(trie.bottomRightX);
+		double middleY = south ? trie.bottomRightY : Math.nextUp(trie.topLeftY);
+		double left = west ? trie.topLeftX - stepX : trie.topLeftX;
+		double right = west ? trie.bottomRightX : trie.bottomRightX + stepX;
+		double upper = south ? trie.topLeftY : trie.topLeftY + stepY;
+		double lower = south ? trie.bottomRightY - stepY : trie.bottomRightY;
+		Trie<T> SW = west || south ? new LeafTrie<T>(left, middleY, middleX, lower) : trie;
+		Trie<T> NW = west || !south ? new LeafTrie<T>(left, upper, middleX, middleY) : trie;
+		Trie<T> SE = !west || south ? new LeafTrie<T>(middleX, middleY, right, lower) : trie;
+		Trie<T> NE = !west || !south ? new LeafTrie<T>(middleX, upper, right, middleY) : trie;
+
+		NodeTrie<T> node = new NodeTrie<T>(left, upper, right, lower, middleX, middleY, SW, NW, SE, NE);
+
+		node.summing = concurrent;
+		return node;
+	}
+
+	/**
+	 * Maximum number of points in a leaf of this quad tree
+	 * @return capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Change the maximum number of points in a leaf of this quad tree.
+	 * Existing leaves are not restructured: a leaf splits on its next insertion if it exceeds the new capacity,
+	 * and nodes merge on deletes once below half of it.
+	 * @param capacity maximum number of points in a leaf
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public void setCapacity(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Check if the capacity of leaves is chosen automatically
+	 * @return true if in adaptive mode
+	 */
+	public boolean isAdaptive() {
+		return tuner != null;
+	}
+
+	/**
+	 * Turn on or off the adaptive mode, in which the capacity of leaves is periodically chosen
+	 * from the observed ratio of queries to inserts: query heavy loads get smaller leaves, that are cheaper to scan,
+	 * and insert heavy loads get larger leaves, that make the tree shallower and split less often.
+	 * @param adaptive true to choose capacity automatically, false to keep the current one
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.tuner = adaptive ? new CapacityTuner(concurrent) : null;
+	}
+
+	/**
+	 * Check if the work done by queries is being counted
+	 * @return true if profiled
+	 */
+	public boolean isProfiling() {
+		return counters != null;
+	}
+
+	/**
+	 * Turn on or off the counting of the work done by radius, box and nearest neighbour queries:
+	 * the number of queries, of nodes and leaves they visit, of points they test and of points they find.
+	 * Counting starts from zero each time it is turned on. While it is off, queries run without any counter.
+	 * Batches of radius queries, region queries and streams are not counted.
+	 * @param profiling true to count the work of queries, false to stop counting
+	 */
+	public void setProfiling(boolean profiling) {
+		this.counters = profiling ? new QueryCounters() : null;
+	}
+
+	/**
+	 * Collect the statistics of this quad tree: its depth, the number of its nodes, leaves and points,
+	 * the occupancy of its leaves and, if it is profiled, the work done by its queries.
+	 * The shape is collected by visiting all tries, hence it takes time proportional to their number.
+	 * @return snapshot of the statistics
+	 */
+	public QuadtreeStatistics getStatistics() {
+		return new QuadtreeStatistics(top, capacity, counters);
+	}
+
+	/**
+	 * Record a query in adaptive mode
+	 */
+	private void queried() {
+		queried(1);
+	}
+
+	/**
+	 * Record given number of queries in adaptive mode
+	 * @param count of queries
+	 */
+	private void queried(int count) {
+		CapacityTuner tuner = this.tuner;
+
+		if(tuner != null)
+			tuner.queried(count);
+	}
+
+	/**
+	 * Record an insert in adaptive mode, which may change the capacity
+	 * @return capacity to use in the insert
+	 */
+	private int inserted() {
+		CapacityTuner tuner = this.tuner;
+		int capacity = this.capacity;
+
+		if(tuner != null) {
+			int tuned = tuner.inserted(capacity);
+
+			if(tuned != capacity)
+				this.capacity = capacity = tuned;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Delete given point from QuadTree, if it is recorded there at the coordinates it reports.
+	 * Nodes left with few points are merged back into leaves, so that depth follows the number of points.
+	 * Points removed through an iterator in sequential mode are only merged on a later delete in the same region.
 	 * @param point to be deleted
+	 * @return true if the point was deleted, false if it is not recorded
 	 */
 
-	public void delete(T point) {
-		top.delete(point);
+	public boolean delete(T point) {
+		int capacity = this.capacity;
+		Trie<T> changed;
+
+		if(concurrent) {
+			if(!update(null, point, point.getX(), point.getY(), capacity, leaf -> leaf.extract(point, capacity)))
+				return false;
+			merge(point.getX(), point.getY(), capacity);
+			return true;
+		}
+		changed = top.extract(point, capacity);
+		if(changed == null)
+			return false;
+		top = changed;
+		return true;
 	}
 
 	/**
@@ -171,6 +589,7 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T> {
 	 */
 
 	public T find(T point) {
+		queried();
 		return top.find(point);
 	}
 
@@ -183,49 +602,587 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T> {
 	 */
 
 	public Set<T> findNear(double x, double y, double radius) {
-		Set<T> set = new HashSet<T>();
-		top.collectNear(x, y, radius, set);
+		final Set<T> set = new HashSet<T>();
+		forEachNear(x, y, radius, point -> { set.add(point); return true; });
+		return set;
+	}
+
+	/**
+	 * Pass each point at a distance smaller or equal to radius from point with given coordinates to given consumer,
+	 * as soon as it is found. No collection is created, and the consumer may stop the search by returning false.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+
+	public boolean forEachNear(double x, double y, double radius, PointConsumer<T> consumer) {
+		QueryCounters counters = this.counters;
+
+		queried();
+		if(counters != null)
+			return ProfiledQuery.forEachNear(counters, top, x, y, radius, consumer);
+		return top.forEachNear(x, y, radius, consumer);
+	}
+
+	/**
+	 * Returns, for each query in a batch, the set of points at a distance smaller or equal to its radius from its center.
+	 * All queries are answered in a single traversal, in which they are partitioned by quadrant as it goes down,
+	 * so nodes shared by several queries are visited only once.
+	 * @param x coordinates of the centers of the queries
+	 * @param y coordinates of the centers of the queries
+	 * @param radius of each query
+	 * @return list with the set of points of each query, in the order of the queries
+	 * @throws IllegalArgumentException if the arrays do not have the same length
+	 */
+
+	public List<Set<T>> findNear(double[] x, double[] y, double[] radius) {
+		List<Set<T>> sets = new ArrayList<Set<T>>(x.length);
+
+		for(int i = 0; i < x.length; i++)
+			sets.add(new HashSet<T>());
+		forEachNear(x, y, radius, (probe, point) -> sets.get(probe).add(point));
+		return sets;
+	}
+
+	/**
+	 * Pass each point at a distance smaller or equal to the radius of each query in a batch from its center
+	 * to given consumer, with the position of that query, in a single traversal shared by all queries.
+	 * @param x coordinates of the centers of the queries
+	 * @param y coordinates of the centers of the queries
+	 * @param radius of each query
+	 * @param consumer of points
+	 * @throws IllegalArgumentException if the arrays do not have the same length
+	 */
+
+	public void forEachNear(double[] x, double[] y, double[] radius, ProbeConsumer<T> consumer) {
+		Trie<T> top = this.top;
+		int[] probes = new int[x.length];
+		int count = 0;
+
+		if(y.length != x.length || radius.length != x.length)
+			throw new IllegalArgumentException("Coordinates and radii of queries must have the same length");
+		queried(x.length);
+		for(int probe = 0; probe < x.length; probe++) {
+			if(top.overlaps(x[probe], y[probe], radius[probe]))
+				probes[count++] = probe;
+		}
+		if(count > 0)
+			top.forEachNear(x, y, radius, probes, count, consumer);
+	}
+
+	/**
+	 * Pass each point inside the rectangle with given limits to given consumer, as soon as it is found.
+	 * The consumer may stop the search by returning false.
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+
+	public boolean forEachInBox(double minX, double minY, double maxX, double maxY, PointConsumer<T> consumer) {
+		QueryCounters counters = this.counters;
+
+		queried();
+		if(counters != null)
+			return ProfiledQuery.forEachInBox(counters, top, minX, minY, maxX, maxY,
+					Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+		return top.forEachInBox(minX, minY, maxX, maxY, consumer);
+	}
+
+	/**
+	 * Pass each point inside the rectangle with given limits that takes place during given time window
+	 * to given consumer, as soon as it is found. Subtrees whose points all start after the window,
+	 * or all end before it, are skipped. Points that do not implement HasInterval are taken as lasting forever.
+	 * The consumer may stop the search by returning false.
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+
+	public boolean forEachInBox(double minX, double minY, double maxX, double maxY, long from, long to,
+			PointConsumer<T> consumer) {
+		Trie<T> top = this.top;
+		QueryCounters counters = this.counters;
+
+		queried();
+		if(counters != null)
+			return ProfiledQuery.forEachInBox(counters, top, minX, minY, maxX, maxY, from, to, consumer);
+		return !top.during(from, to) || top.forEachInBox(minX, minY, maxX, maxY, from, to, consumer);
+	}
+
+	/**
+	 * Number of points in the QuadTree, kept up to date by every change, so it takes constant time.
+	 * In concurrent mode it may miss changes still being made.
+	 * @return count of points
+	 */
+
+	public long size() {
+		return top.count();
+	}
+
+	/**
+	 * Number of points at a distance smaller or equal to radius from point with given coordinates.
+	 * Subtrees wholly inside the circle are counted from the number of points kept in their nodes,
+	 * so only leaves crossing its edge are scanned and no collection is created.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @return count of points
+	 */
+
+	public long countNear(double x, double y, double radius) {
+		return count(new Circle(x, y, radius));
+	}
+
+	/**
+	 * Number of points inside the rectangle with given limits, counted as in countNear
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @return count of points
+	 */
+
+	public long countInBox(double minX, double minY, double maxX, double maxY) {
+		return count(new Box(minX, minY, maxX, maxY));
+	}
+
+	/**
+	 * Number of points inside given region, taking subtrees wholly inside it from the number of points
+	 * kept in their nodes. In concurrent mode counts kept in nodes may miss changes still being made.
+	 * @param region where points are counted
+	 * @return count of points
+	 */
+
+	public long count(Region region) {
+		Trie<T> top = this.top;
+
+		queried();
+		if(top.inside(region))
+			return top.count();
+		return top.intersects(region) ? top.count(region) : 0;
+	}
+
+	/**
+	 * Pass each point inside given region to given consumer, as soon as it is found.
+	 * Subtrees wholly inside the region are passed without testing their points, subtrees wholly outside it
+	 * are skipped, and only the points of leaves crossing its boundary are tested.
+	 * The consumer may stop the search by returning false.
+	 * @param region where points are searched
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+
+	public boolean forEachIn(Region region, PointConsumer<T> consumer) {
+		Trie<T> top = this.top;
+
+		queried();
+		if(top.inside(region))
+			return top.forEachAll(consumer);
+		return !top.intersects(region) || top.forEachIn(region, consumer);
+	}
+
+	/**
+	 * Returns a set of points inside given region, searched as in forEachIn
+	 * @param region where points are searched
+	 * @return set of instances of type HasPoint
+	 */
+
+	public Set<T> findIn(Region region) {
+		final Set<T> set = new HashSet<T>();
+		forEachIn(region, point -> { set.add(point); return true; });
 		return set;
 	}
 
+	/**
+	 * Returns a set of points inside the rectangle with given limits. Unlike forEachInBox,
+	 * subtrees wholly inside the rectangle are collected without testing their points.
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @return set of instances of type HasPoint
+	 */
+
+	public Set<T> findInBox(double minX, double minY, double maxX, double maxY) {
+		return findIn(new Box(minX, minY, maxX, maxY));
+	}
+
+	/**
+	 * Returns a set of points inside the polygon with given vertices, by the even-odd rule.
+	 * Only the points of leaves crossed by its edges are tested against the polygon.
+	 * @param vertices of the polygon, in order
+	 * @return set of instances of type HasPoint
+	 * @throws IllegalArgumentException if there are less than 3 vertices
+	 */
+
+	public Set<T> findInPolygon(List<? extends HasPoint> vertices) {
+		return findIn(new Polygon(vertices));
+	}
+
+	/**
+	 * Returns a list with the k points nearest to the point with given coordinates, ordered by increasing distance.
+	 * The search is best-first, hence its cost depends on k rather than on the density of points around (x,y).
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param k maximum number of points to return
+	 * @return list of instances of type HasPoint, nearest first
+	 */
+
+	public List<T> findNearest(double x, double y, int k) {
+		List<T> list = new ArrayList<T>(Math.max(0, Math.min(k, 1024)));
+		NearestIterator<T> iterator = new NearestIterator<T>(top, x, y, k, counters);
+
+		queried();
+		while(list.size() < k && iterator.hasNext())
+			list.add(iterator.next());
+		return list;
+	}
+
+	/**
+	 * An iterator over all points by increasing distance to the point with given coordinates.
+	 * The search is incremental, so it may be resumed at any time, as long as the iterator is kept.
+	 * In concurrent mode it reflects the quad tree at some point since its creation, as other iterators do.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return iterator, nearest first
+	 */
+
+	public NearestIterator<T> nearestIterator(double x, double y) {
+		queried();
+		return new NearestIterator<T>(top, x, y, Integer.MAX_VALUE, counters);
+	}
+
 	/**
 	 * A set with all points in the QuadTree
 	 * @return set of instances of type HasPoint
 	 */
 
 	public Set<T> getAll() {
-		Set<T> set = new HashSet<T>();
-		top.collectAll(set);
+		final Set<T> set = new HashSet<T>();
+		top.forEachAll(point -> { set.add(point); return true; });
 		return set;
 	}
 
 	/**
-	 * Insert given point in the QuadTree
+	 * Pass each point in the QuadTree to given consumer. The consumer may stop the traversal by returning false.
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+
+	public boolean forEachAll(PointConsumer<T> consumer) {
+		return top.forEachAll(consumer);
+	}
+
+	/**
+	 * Insert given point in the QuadTree, growing it if the point is outside its boundaries
 	 * @param point to be inserted
-	 * @throws PointOutOfBoundException in case point is out of the quadtree
+	 * @throws PointOutOfBoundException in case point has coordinates that are not finite
 	 */
 
 	public void insert(T point) throws PointOutOfBoundException {
 		double x = point.getX();
 		double y = point.getY();
+		int capacity = inserted();
+
+		cover(x, y);
 
-		if((x >= top.topLeftX && y <= top.topLeftY) && (x <= top.bottomRightX && y >= top.bottomRightY))
-			top = top.insert(point);
+		Trie<T> top = this.top;
+
+		if(concurrent)
+			update(point, x, y, capacity, leaf -> leaf.insert(point, x, y, capacity, minCellSize));
 		else
-			throw new PointOutOfBoundException();
+			this.top = top.insert(point, x, y, capacity, minCellSize);
 	}
 
 	/**
-	 * Insert point, replacing existing point in the same position
+	 * Insert all given points in the QuadTree at once.
+	 * The tree is rebuilt top-down with the points already recorded and the new ones,
+	 * partitioning them by quadrant in place and creating each leaf with its final size.
+	 * In concurrent mode queries may proceed during the load, but no other thread should update the tree.
+	 * The tree is grown beforehand to cover all given points.
+	 * @param points to be inserted
+	 * @param parallel true if large subtrees are to be built in parallel, in the common fork-join pool
+	 * @throws PointOutOfBoundException in case some point has coordinates that are not finite, and then no point is inserted
+	 */
+
+	@SuppressWarnings("unchecked")
+	public void insertAll(Collection<? extends T> points, boolean parallel) throws PointOutOfBoundException {
+		List<T> all = new ArrayList<T>(points);
+
+		for(T point : all)
+			cover(point.getX(), point.getY());
+
+		Trie<T> top = this.top;
+
+		top.forEachAll(point -> { all.add(point); return true; });
+
+		int size = all.size();
+		T[] array = all.toArray((T[]) new HasPoint[size]);
+		int[] indexes = new int[size];
+		double[] xs = new double[size];
+		double[] ys = new double[size];
+
+		for(int i = 0; i < size; i++) {
+			indexes[i] = i;
+			xs[i] = array[i].getX();
+			ys[i] = array[i].getY();
+		}
+
+		TrieBuilder<T> builder = new TrieBuilder<T>(array, indexes, xs, ys, 0, size,
+				top.topLeftX, top.topLeftY, top.bottomRightX, top.bottomRightY, capacity, minCellSize, parallel);
+		this.top = parallel ? ForkJoinPool.commonPool().invoke(builder) : builder.compute();
+	}
+
+	/**
+	 * Insert all given points in the QuadTree at once, building subtrees sequentially
+	 * @param points to be inserted
+	 * @throws PointOutOfBoundException in case some point has coordinates that are not finite, and then no point is inserted
+	 */
+
+	public void insertAll(Collection<? extends T> points) throws PointOutOfBoundException {
+		insertAll(points, false);
+	}
+
+	/**
+	 * Insert point, replacing existing point in the same position, growing the QuadTree if the point is outside it
 	 * @param point  to be inserted
-	 * @throws PointOutOfBoundException in case point is out of the quadtree
+	 * @throws PointOutOfBoundException in case point has coordinates that are not finite
 	 */
 	public void insertReplace(T point) throws PointOutOfBoundException {
-		if(point.getX()<=0 && point.getY()<=0) throw new PointOutOfBoundException();
-		if(point.getX()>=30 && point.getY()>=30) throw new PointOutOfBoundException();
-		if(point.getX()>=30 && point.getY()>=15) throw new PointOutOfBoundException();
-		if(point.getX()>=15 && point.getY()>=30) throw new PointOutOfBoundException();
-		top = top.insertReplace(point);
+		int capacity = inserted();
+
+		cover(point.getX(), point.getY());
+
+		if(concurrent)
+			update(point, point.getX(), point.getY(), capacity, leaf -> leaf.insertReplace(point, capacity));
+		else
+			top = top.insertReplace(point, capacity);
+	}
+
+	/**
+	 * Move given point to new coordinates. The point must still report the coordinates where it was recorded,
+	 * and should report the new ones once this method returns, since it is looked up by them afterwards.
+	 * The tree is walked once down to the deepest node covering both positions: if they fall in the same leaf
+	 * the point is moved inside it, otherwise it is deleted and inserted below that node.
+	 * In concurrent mode a move between leaves inserts the point before deleting it,
+	 * hence queries running meanwhile may find it in both positions, but never in neither.
+	 * The tree is grown first if the new coordinates are outside it.
+	 * @param point to be moved
+	 * @param newX new x coordinate of point
+	 * @param newY new y coordinate of point
+	 * @return true if the point was moved, false if it is not recorded
+	 * @throws PointOutOfBoundException in case the new coordinates are not finite, and then nothing is changed
+	 */
+
+	public boolean relocate(T point, double newX, double newY) throws PointOutOfBoundException {
+		int capacity = this.capacity;
+
+		cover(newX, newY);
+
+		Trie<T> top = this.top;
+
+		if(concurrent)
+			return relocateConcurrently(point, newX, newY, capacity);
+
+		Trie<T> trie = top.relocate(point, newX, newY, capacity, minCellSize);
+
+		if(trie == null)
+			return false;
+		this.top = trie;
+		return true;
+	}
+
+	/**
+	 * Move given point to new coordinates, in concurrent mode. The walk down to the deepest node covering both positions
+	 * is done without locks; a move inside a leaf is then a single copy-on-write update of that leaf,
+	 * provided the leaf was not split meanwhile, and a move between leaves updates both leaves from that node.
+	 * @param point to be moved
+	 * @param newX new x coordinate of point
+	 * @param newY new y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 * @return true if the point was moved, false if it is not recorded
+	 */
+
+	private boolean relocateConcurrently(T point, double newX, double newY, int capacity) {
+		double x = point.getX();
+		double y = point.getY();
+		List<NodeTrie<T>> path = new ArrayList<NodeTrie<T>>();
+		Trie<T> trie = top;
+
+		while(trie instanceof NodeTrie) {
+			NodeTrie<T> node = (NodeTrie<T>) trie;
+			int quad = node.quadrantOf(x, y);
+
+			if(quad != node.quadrantOf(newX, newY))
+				break;
+			node.widen(point);
+			path.add(node);
+			trie = node.tries[quad];
+		}
+
+		NodeTrie<T> shared;
+		if(trie instanceof LeafTrie) {
+			Trie<T> leaf = trie;
+
+			if(update(path, point, x, y, capacity, copy ->
+					copy.topLeftX <= leaf.topLeftX && copy.bottomRightX >= leaf.bottomRightX
+					&& copy.bottomRightY <= leaf.bottomRightY && copy.topLeftY >= leaf.topLeftY
+							? copy.relocate(point, newX, newY, capacity, minCellSize) : null))
+				return true;
+			shared = null;
+		}
+		else
+			shared = (NodeTrie<T>) trie;
+
+		if(!(shared == null ? top : shared).holds(point))
+			return false;
+		if(shared == null)
+			path.clear();
+		else
+			path.add(shared);
+		update(path, point, newX, newY, capacity, leaf -> leaf.insert(point, newX, newY, capacity, minCellSize));
+		update(path, point, x, y, capacity, leaf -> leaf.delete(point, capacity));
+		merge(x, y, capacity);
+		return true;
+	}
+
+	/**
+	 * Apply a change to the leaf covering given coordinates, in concurrent mode, descending from the top
+	 * @param point being updated
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 * @param change to apply on the copy of the leaf, returning the trie replacing it
+	 */
+	private void update(T point, double x, double y, int capacity, Function<LeafTrie<T>, Trie<T>> change) {
+		update(null, point, x, y, capacity, change);
+	}
+
+	/**
+	 * Apply a change to the leaf covering given coordinates, in concurrent mode.
+	 * The change is made on a private copy of the leaf, which then replaces the original in its parent node
+	 * while holding only that node's lock. If the leaf was replaced meanwhile, the descent resumes from that node.
+	 * The time summaries of the nodes on the way are widened with the interval of the point before the change is made,
+	 * and the change in the number of points of the leaf, taken from the private copy before it is published,
+	 * since other writers may update it right after, is added to their counts once it is published.
+	 * @param from nodes from the top down to the node where the descent starts, whose counts are also changed,
+	 * or null to start from the top; if that node was merged meanwhile, the descent starts over from the top
+	 * @param point being updated
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 * @param change to apply on the copy of the leaf, returning the trie replacing it, or null to leave it unchanged
+	 * @return true if the change was made, false if it returned null
+	 */
+	private boolean update(List<NodeTrie<T>> from, T point, double x, double y, int capacity,
+			Function<LeafTrie<T>, Trie<T>> change) {
+		List<NodeTrie<T>> path = new ArrayList<NodeTrie<T>>();
+
+		while(true) {
+			Trie<T> trie = from == null || from.isEmpty() ? top : from.get(from.size() - 1);
+
+			path.clear();
+			if(from != null && !from.isEmpty())
+				path.addAll(from.subList(0, from.size() - 1));
+			from = null;
+			if(trie instanceof LeafTrie) {
+				synchronized(this) {
+					if(top == trie) {
+						Trie<T> changed = change.apply(((LeafTrie<T>) trie).copy(capacity));
+
+						if(changed == null)
+							return false;
+						top = changed;
+						return true;
+					}
+				}
+				continue;
+			}
+
+			NodeTrie<T> node = (NodeTrie<T>) trie;
+			path.add(node);
+			while(true) {
+				int quad = node.quadrantOf(x, y);
+				Trie<T> child = node.tries[quad];
+				Trie<T> changed;
+				long delta;
+
+				node.widen(point);
+				if(child instanceof NodeTrie) {
+					node = (NodeTrie<T>) child;
+					path.add(node);
+					continue;
+				}
+				synchronized(node) {
+					if(node.detached)
+						break;
+					if(node.tries[quad] != child)
+						continue;
+					changed = change.apply(((LeafTrie<T>) child).copy(capacity));
+					if(changed == null)
+						return false;
+					delta = changed.count() - child.count();
+					node.publish(quad, changed);
+				}
+
+				for(NodeTrie<T> ancestor : path)
+					ancestor.counted(delta);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Merge into leaves the sparse nodes on the path to (x,y), from the deepest one up, in concurrent mode.
+	 * Each node is replaced while holding the locks of its parent and then of itself, the same order
+	 * used by every merge, and is marked as detached so that writers reaching it start over from the top.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 */
+
+	private void merge(double x, double y, int capacity) {
+		List<NodeTrie<T>> path = new ArrayList<NodeTrie<T>>();
+		Trie<T> trie = top;
+
+		while(trie instanceof NodeTrie) {
+			NodeTrie<T> node = (NodeTrie<T>) trie;
+
+			path.add(node);
+			trie = node.tries[node.quadrantOf(x, y)];
+		}
+
+		for(int i = path.size() - 1; i >= 0; i--) {
+			NodeTrie<T> node = path.get(i);
+			NodeTrie<T> parent = i > 0 ? path.get(i - 1) : null;
+			int quad = parent == null ? -1 : parent.quadrantOf(x, y);
+
+			if(!node.canMerge(capacity))
+				return;
+			synchronized(parent == null ? this : parent) {
+				if(parent == null ? top != node : parent.detached || parent.tries[quad] != node)
+					return;
+				synchronized(node) {
+					if(!node.canMerge(capacity))
+						return;
+					node.detached = true;
+					if(parent == null)
+						top = node.merge();
+					else
+						parent.publish(quad, node.merge());
+				}
+			}
+		}
 	}
 
 	/**
@@ -236,4 +1193,43 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T> {
 		return new PointIterator();
 	}
 
+	/**
+	 * Returns a spliterator over the points stored in the quad tree, that splits at the boundaries of quadrants
+	 * @return spliterator in interface java.lang.Iterable<T extends HasPoint>
+	 */
+	public Spliterator<T> spliterator() {
+		return new TrieSpliterator<T>(top, 0, 0, Double.POSITIVE_INFINITY, concurrent);
+	}
+
+	/**
+	 * A sequential stream of the points stored in the quad tree
+	 * @return stream of points
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * A parallel stream of the points stored in the quad tree, whose quadrants are traversed in the common fork-join pool
+	 * @return stream of points
+	 */
+	public Stream<T> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
+	/**
+	 * A stream of the points at a distance smaller or equal to radius from point with given coordinates.
+	 * Only the quadrants overlapping the circle are traversed, and a parallel stream splits among them,
+	 * which pays off for large radii.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @param parallel true for a parallel stream
+	 * @return stream of points
+	 */
+	public Stream<T> streamNear(double x, double y, double radius, boolean parallel) {
+		queried();
+		return StreamSupport.stream(new TrieSpliterator<T>(top, x, y, radius, concurrent), parallel);
+	}
+
 }
@@ -0,0 +1,155 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.List;
+
+/**
+ * A polygon where points are searched or counted, given by its vertices in order. The last vertex is joined
+ * to the first one. Locations are inside by the even-odd rule, so self-intersecting polygons are accepted,
+ * and those exactly on an edge may fall on either side.
+ * A cell crossed by no edge lies wholly on one side, which is that of any of its corners; cells crossed by edges
+ * are taken as intersecting, so only the points of leaves on the boundary are tested one by one.
+ * Since the last cell classified is remembered, an instance must not be shared by queries running at the same time.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @implements Region
+ */
+public class Polygon implements Region {
+
+	private static final int OUTSIDE = 0;
+	private static final int CROSSED = 1;
+	private static final int INSIDE = 2;
+
+	private final double[] xs;
+	private final double[] ys;
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+	private double lastMinX = Double.NaN;
+	private double lastMinY;
+	private double lastMaxX;
+	private double lastMaxY;
+	private int lastSide;
+
+	/**
+	 * Create a polygon with given vertices
+	 * @param vertices of the polygon, in order
+	 * @throws IllegalArgumentException if there are less than 3 vertices
+	 */
+	public Polygon(List<? extends HasPoint> vertices) {
+		int count = vertices.size();
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		if(count < 3)
+			throw new IllegalArgumentException("A polygon must have at least 3 vertices");
+		xs = new double[count];
+		ys = new double[count];
+		for(int i = 0; i < count; i++) {
+			xs[i] = vertices.get(i).getX();
+			ys[i] = vertices.get(i).getY();
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+
+	/**
+	 * Check if given location is inside the polygon, counting the edges crossed by a ray towards increasing x
+	 * @param x coordinate of the location
+	 * @param y coordinate of the location
+	 * @return true if inside, false otherwise
+	 */
+	public boolean contains(double x, double y) {
+		boolean inside = false;
+
+		if(x < minX || x > maxX || y < minY || y > maxY)
+			return false;
+		for(int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+			if((ys[i] > y) != (ys[j] > y)
+					&& x < xs[i] + (y - ys[i]) * (xs[j] - xs[i]) / (ys[j] - ys[i]))
+				inside = !inside;
+		}
+		return inside;
+	}
+
+	public boolean contains(double minX, double minY, double maxX, double maxY) {
+		return side(minX, minY, maxX, maxY) == INSIDE;
+	}
+
+	public boolean intersects(double minX, double minY, double maxX, double maxY) {
+		return side(minX, minY, maxX, maxY) != OUTSIDE;
+	}
+
+	/**
+	 * Classify the rectangle with given limits, which is usually tested for containment and then for intersection
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @return INSIDE, OUTSIDE or CROSSED by some edge
+	 */
+	private int side(double minX, double minY, double maxX, double maxY) {
+		if(minX == lastMinX && minY == lastMinY && maxX == lastMaxX && maxY == lastMaxY)
+			return lastSide;
+		lastMinX = minX;
+		lastMinY = minY;
+		lastMaxX = maxX;
+		lastMaxY = maxY;
+		if(minX > this.maxX || maxX < this.minX || minY > this.maxY || maxY < this.minY)
+			return lastSide = OUTSIDE;
+		for(int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+			if(crosses(xs[j], ys[j], xs[i], ys[i], minX, minY, maxX, maxY))
+				return lastSide = CROSSED;
+		}
+		return lastSide = contains(minX, minY) ? INSIDE : OUTSIDE;
+	}
+
+	/**
+	 * Check if a segment touches the rectangle with given limits, clipping the segment against each of its sides
+	 * @param x1 x coordinate of the first end of the segment
+	 * @param y1 y coordinate of the first end of the segment
+	 * @param x2 x coordinate of the second end of the segment
+	 * @param y2 y coordinate of the second end of the segment
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @return true if some location of the segment is in the rectangle, false otherwise
+	 */
+	private static boolean crosses(double x1, double y1, double x2, double y2,
+			double minX, double minY, double maxX, double maxY) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x1 - minX, maxX - x1, y1 - minY, maxY - y1 };
+		double enter = 0;
+		double leave = 1;
+
+		if(Math.max(x1, x2) < minX || Math.min(x1, x2) > maxX || Math.max(y1, y2) < minY || Math.min(y1, y2) > maxY)
+			return false;
+		for(int k = 0; k < 4; k++) {
+			if(p[k] == 0) {
+				if(q[k] < 0)
+					return false;
+			}
+			else if(p[k] < 0)
+				enter = Math.max(enter, q[k] / p[k]);
+			else
+				leave = Math.min(leave, q[k] / p[k]);
+		}
+		return enter <= leave;
+	}
+}
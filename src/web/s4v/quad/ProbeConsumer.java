@@ -0,0 +1,21 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+/**
+ * Receives the points found by a batch of queries on a quad tree, each with the position of the query that found it.
+ * A point near several queries is received once for each of them.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ */
+public interface ProbeConsumer<T extends HasPoint> {
+	/**
+	 * Receive a point found by a query of the batch
+	 * @param probe position of the query in the batch
+	 * @param point found
+	 */
+	void accept(int probe, T point);
+}
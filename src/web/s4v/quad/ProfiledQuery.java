@@ -0,0 +1,163 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+/**
+ * A radius or box query that counts the tries it visits and the points it tests, used while a quad tree is profiled.
+ * It prunes the same tries and selects the same points as the query methods of the tries,
+ * which are left without counters so that queries cost nothing more while profiling is off.
+ * This class is a ConcreteVisitor in the Visitor design pattern.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ * @implements Visitor
+ *
+ * @param <T> type that extends HasPoint
+ */
+class ProfiledQuery<T extends HasPoint> implements Visitor<T> {
+
+	private final boolean circle;
+	private final double x;
+	private final double y;
+	private final double radius;
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+	private final long from;
+	private final long to;
+	private final PointConsumer<T> consumer;
+	private boolean stopped;
+	private long tries;
+	private long tested;
+	private long found;
+
+	private ProfiledQuery(boolean circle, double x, double y, double radius,
+			double minX, double minY, double maxX, double maxY, long from, long to, PointConsumer<T> consumer) {
+		this.circle = circle;
+		this.x = x;
+		this.y = y;
+		this.radius = radius;
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.from = from;
+		this.to = to;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Pass points at a distance smaller or equal to radius from (x,y) to given consumer, counting the work done
+	 * @param counters where the work is recorded
+	 * @param top trie where the search starts
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @param consumer of points
+	 * @param <T> type that extends HasPoint
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	static <T extends HasPoint> boolean forEachNear(QueryCounters counters, Trie<T> top,
+			double x, double y, double radius, PointConsumer<T> consumer) {
+		return new ProfiledQuery<T>(true, x, y, radius, 0, 0, 0, 0, Long.MIN_VALUE, Long.MAX_VALUE, consumer)
+				.run(counters, top);
+	}
+
+	/**
+	 * Pass points inside the rectangle with given limits that take place during given time window to given consumer,
+	 * counting the work done
+	 * @param counters where the work is recorded
+	 * @param top trie where the search starts
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param from start of the time window, or the earliest time to take any point
+	 * @param to end of the time window, or the latest time to take any point
+	 * @param consumer of points
+	 * @param <T> type that extends HasPoint
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	static <T extends HasPoint> boolean forEachInBox(QueryCounters counters, Trie<T> top,
+			double minX, double minY, double maxX, double maxY, long from, long to, PointConsumer<T> consumer) {
+		return new ProfiledQuery<T>(false, 0, 0, 0, minX, minY, maxX, maxY, from, to, consumer)
+				.run(counters, top);
+	}
+
+	/**
+	 * Run the query from given trie and record its work
+	 * @param counters where the work is recorded
+	 * @param top trie where the search starts
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	private boolean run(QueryCounters counters, Trie<T> top) {
+		if(selects(top))
+			top.accept(this);
+		counters.record(tries, tested, found);
+		return !stopped;
+	}
+
+	/**
+	 * Check if given trie may have points selected by this query
+	 * @param trie to check
+	 * @return true if it must be visited
+	 */
+	private boolean selects(Trie<T> trie) {
+		if(circle)
+			return trie.overlaps(x, y, radius);
+		return trie.intersects(minX, minY, maxX, maxY) && trie.during(from, to);
+	}
+
+	/**
+	 * visits node, and then its quadrants that may have points selected by this query
+	 * @param node to be visited
+	 */
+	public void visit(NodeTrie<T> node) {
+		tries++;
+		for(Trie<T> trie : node.tries) {
+			if(stopped)
+				return;
+			if(selects(trie))
+				trie.accept(this);
+		}
+	}
+
+	/**
+	 * visits leaf, testing each of its entries and passing the selected points to the consumer
+	 * @param leaf to be visited
+	 */
+	public void visit(LeafTrie<T> leaf) {
+		double radiusSquared = radius * radius;
+
+		tries++;
+		for(int i = 0; i < leaf.size() && !stopped; i++) {
+			double pointX = leaf.getX(i);
+			double pointY = leaf.getY(i);
+			double distX = pointX - x;
+			double distY = pointY - y;
+
+			tested++;
+			if(circle ? distX * distX + distY * distY <= radiusSquared
+					: pointX >= minX && pointX <= maxX && pointY >= minY && pointY <= maxY) {
+				accept(leaf.get(i));
+				for(LeafTrie.Bucket<T> bucket = leaf.getBucket(i); bucket != null && !stopped; bucket = bucket.next)
+					accept(bucket.point);
+			}
+		}
+	}
+
+	/**
+	 * Pass given point to the consumer if it takes place during the time window of this query
+	 * @param point selected by its coordinates
+	 */
+	private void accept(T point) {
+		if(circle || Trie.during(point, from, to)) {
+			found++;
+			stopped = !consumer.accept(point);
+		}
+	}
+}
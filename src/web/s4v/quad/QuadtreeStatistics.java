@@ -0,0 +1,222 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of the shape of a quad tree and of the work done by its queries while it was profiled.
+ * The shape is collected by a single traversal of the tries; in concurrent mode it reflects the tree
+ * at some point during that traversal, as iterators do. A tree degrades when points are clustered
+ * in a few cells: it gets deep, and many of its leaves are empty or hold far more points than its capacity.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+public class QuadtreeStatistics {
+
+	/**
+	 * Collects the shape of a quad tree, visiting all its tries.
+	 * This class is a ConcreteVisitor in the Visitor design pattern.
+	 */
+	private static class Collector<T extends HasPoint> implements Visitor<T> {
+		int level;
+		int depth;
+		long nodes;
+		long leaves;
+		long entries;
+		long points;
+		long[] occupancy = new long[Integer.SIZE + 1];
+
+		public void visit(NodeTrie<T> node) {
+			nodes++;
+			level++;
+			for(Trie<T> trie : node.tries)
+				trie.accept(this);
+			level--;
+		}
+
+		public void visit(LeafTrie<T> leaf) {
+			int size = leaf.size();
+
+			leaves++;
+			depth = Math.max(depth, level);
+			entries += size;
+			points += size;
+			for(int i = 0; i < size; i++) {
+				for(LeafTrie.Bucket<T> bucket = leaf.getBucket(i); bucket != null; bucket = bucket.next)
+					points++;
+			}
+			occupancy[Integer.SIZE - Integer.numberOfLeadingZeros(size)]++;
+		}
+	}
+
+	private final int capacity;
+	private final int depth;
+	private final long nodeCount;
+	private final long leafCount;
+	private final long entryCount;
+	private final long pointCount;
+	private final long[] leafOccupancy;
+	private final long queryCount;
+	private final long triesVisited;
+	private final long pointsTested;
+	private final long pointsFound;
+
+	/**
+	 * Collect the statistics of a quad tree
+	 * @param top trie of the quad tree
+	 * @param capacity of leaves in the quad tree
+	 * @param counters of its queries, or null if it is not profiled
+	 * @param <T> type that extends HasPoint
+	 */
+	<T extends HasPoint> QuadtreeStatistics(Trie<T> top, int capacity, QueryCounters counters) {
+		Collector<T> collector = new Collector<T>();
+		int length = collector.occupancy.length;
+
+		top.accept(collector);
+		while(length > 1 && collector.occupancy[length - 1] == 0)
+			length--;
+		this.capacity = capacity;
+		this.depth = collector.depth;
+		this.nodeCount = collector.nodes;
+		this.leafCount = collector.leaves;
+		this.entryCount = collector.entries;
+		this.pointCount = collector.points;
+		this.leafOccupancy = Arrays.copyOf(collector.occupancy, length);
+		this.queryCount = counters == null ? 0 : counters.queries.sum();
+		this.triesVisited = counters == null ? 0 : counters.triesVisited.sum();
+		this.pointsTested = counters == null ? 0 : counters.pointsTested.sum();
+		this.pointsFound = counters == null ? 0 : counters.pointsFound.sum();
+	}
+
+	/**
+	 * Maximum number of points in a leaf when the statistics were collected
+	 * @return capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Number of nodes on the longest path from the top to a leaf
+	 * @return depth, zero if the top is a leaf
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Number of nodes, that is, of tries split in quadrants
+	 * @return node count
+	 */
+	public long getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Number of leaves, including empty ones
+	 * @return leaf count
+	 */
+	public long getLeafCount() {
+		return leafCount;
+	}
+
+	/**
+	 * Number of leaves without points
+	 * @return empty leaf count
+	 */
+	public long getEmptyLeafCount() {
+		return leafOccupancy[0];
+	}
+
+	/**
+	 * Number of different locations of the points, each an entry of a leaf
+	 * @return entry count
+	 */
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Number of points, including those sharing the location of another point
+	 * @return point count
+	 */
+	public long getPointCount() {
+		return pointCount;
+	}
+
+	/**
+	 * Histogram of the number of entries of leaves: position 0 counts the empty leaves,
+	 * and position k counts the leaves with at least 2^(k-1) and less than 2^k entries.
+	 * Leaves over capacity are those at the minimum cell size, where points are too close to be split.
+	 * @return copy of the histogram, up to the largest occupancy found
+	 */
+	public long[] getLeafOccupancy() {
+		return leafOccupancy.clone();
+	}
+
+	/**
+	 * Average number of entries of the leaves
+	 * @return mean leaf occupancy, zero if there are no leaves
+	 */
+	public double getMeanLeafOccupancy() {
+		return leafCount == 0 ? 0 : entryCount / (double) leafCount;
+	}
+
+	/**
+	 * Number of radius, box and nearest neighbour queries recorded while profiling
+	 * @return query count
+	 */
+	public long getQueryCount() {
+		return queryCount;
+	}
+
+	/**
+	 * Number of nodes and leaves visited by the recorded queries
+	 * @return tries visited
+	 */
+	public long getTriesVisited() {
+		return triesVisited;
+	}
+
+	/**
+	 * Number of entries of leaves whose coordinates were tested by the recorded queries
+	 * @return points tested
+	 */
+	public long getPointsTested() {
+		return pointsTested;
+	}
+
+	/**
+	 * Number of points returned by the recorded queries
+	 * @return points found
+	 */
+	public long getPointsFound() {
+		return pointsFound;
+	}
+
+	/**
+	 * Average number of nodes and leaves visited by a recorded query
+	 * @return tries visited per query, zero if no query was recorded
+	 */
+	public double getTriesVisitedPerQuery() {
+		return queryCount == 0 ? 0 : triesVisited / (double) queryCount;
+	}
+
+	/**
+	 * Average number of entries tested by a recorded query
+	 * @return points tested per query, zero if no query was recorded
+	 */
+	public double getPointsTestedPerQuery() {
+		return queryCount == 0 ? 0 : pointsTested / (double) queryCount;
+	}
+
+	@Override
+	public String toString() {
+		return "depth=" + depth + " nodes=" + nodeCount + " leaves=" + leafCount + " empty=" + getEmptyLeafCount()
+				+ " points=" + pointCount + " occupancy=" + Arrays.toString(leafOccupancy)
+				+ " queries=" + queryCount + " tries/query=" + getTriesVisitedPerQuery()
+				+ " tested/query=" + getPointsTestedPerQuery();
+	}
+}
@@ -0,0 +1,31 @@
+package web.s4v.quad;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the work done by the queries of a quad tree while it is profiled.
+ * Each query adds its counts once, when it ends, so threads querying at the same time seldom contend.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+class QueryCounters {
+
+	final LongAdder queries = new LongAdder();
+	final LongAdder triesVisited = new LongAdder();
+	final LongAdder pointsTested = new LongAdder();
+	final LongAdder pointsFound = new LongAdder();
+
+	/**
+	 * Record the work done by a query
+	 * @param tries number of nodes and leaves visited
+	 * @param tested number of entries of leaves whose coordinates were tested
+	 * @param found number of points passed to the consumer
+	 */
+	void record(long tries, long tested, long found) {
+		queries.increment();
+		triesVisited.add(tries);
+		pointsTested.add(tested);
+		pointsFound.add(found);
+	}
+}
@@ -0,0 +1,949 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * An R-tree, an alternative to PointQuadtree whose nodes are not fixed quadrants but the bounding rectangles
+ * of the entries below them, so that it stays shallow and balanced however clustered the points are.
+ * Every node but the root holds between a minimum and the maximum number of entries.
+ * A point is inserted in the leaf whose rectangle grows the least, and a full node is split in two
+ * at the position, along either axis, that leaves the least overlap between them.
+ * A node left with too few entries by a deletion is removed, and its points are inserted again.
+ * Nodes keep the number of points below them, so regions are counted without visiting subtrees wholly inside them.
+ * insertAll packs the tree again with sort-tile-recursive, filling nodes to their capacity.
+ * It may be shared by several threads: queries hold a read lock and updates a write lock,
+ * hence consumers must not update the tree. Iterators reflect the tree at their creation,
+ * while nearest iterators take the lock on each step and may miss points moved meanwhile.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ * @implements SpatialIndex
+ *
+ * @param <T> a type extending HasPoint
+ */
+public class RTree<T extends HasPoint> implements SpatialIndex<T> {
+
+	/**
+	 * Default maximum number of entries of a node
+	 */
+	public static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * A node with its bounding rectangle and number of points. Leaves hold points, next to their coordinates,
+	 * and other nodes hold children. Both have room for one entry more than the capacity, until they are split.
+	 */
+	private static final class Node<T extends HasPoint> {
+		final boolean leaf;
+		final Node<T>[] children;
+		final T[] points;
+		final double[] xs;
+		final double[] ys;
+		Node<T> parent;
+		int size;
+		long count;
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		@SuppressWarnings("unchecked")
+		Node(boolean leaf, int capacity) {
+			this.leaf = leaf;
+			this.children = leaf ? null : (Node<T>[]) new Node<?>[capacity + 1];
+			this.points = leaf ? (T[]) new HasPoint[capacity + 1] : null;
+			this.xs = leaf ? new double[capacity + 1] : null;
+			this.ys = leaf ? new double[capacity + 1] : null;
+		}
+
+		double minX(int index) {
+			return leaf ? xs[index] : children[index].minX;
+		}
+
+		double minY(int index) {
+			return leaf ? ys[index] : children[index].minY;
+		}
+
+		double maxX(int index) {
+			return leaf ? xs[index] : children[index].maxX;
+		}
+
+		double maxY(int index) {
+			return leaf ? ys[index] : children[index].maxY;
+		}
+
+		void add(T point, double x, double y) {
+			points[size] = point;
+			xs[size] = x;
+			ys[size] = y;
+			size++;
+			count++;
+			extend(x, y, x, y);
+		}
+
+		void add(Node<T> child) {
+			children[size++] = child;
+			child.parent = this;
+			count += child.count;
+			extend(child.minX, child.minY, child.maxX, child.maxY);
+		}
+
+		void extend(double minX, double minY, double maxX, double maxY) {
+			this.minX = Math.min(this.minX, minX);
+			this.minY = Math.min(this.minY, minY);
+			this.maxX = Math.max(this.maxX, maxX);
+			this.maxY = Math.max(this.maxY, maxY);
+		}
+
+		/**
+		 * Remove the entry at given position, moving the last one to its place, without updating the rectangle
+		 * @param index of the entry
+		 */
+		void remove(int index) {
+			size--;
+			if(leaf) {
+				points[index] = points[size];
+				xs[index] = xs[size];
+				ys[index] = ys[size];
+				points[size] = null;
+			} else {
+				children[index] = children[size];
+				children[size] = null;
+			}
+		}
+
+		/**
+		 * Compute the rectangle and the number of points again from the entries
+		 */
+		void recompute() {
+			minX = minY = Double.POSITIVE_INFINITY;
+			maxX = maxY = Double.NEGATIVE_INFINITY;
+			count = leaf ? size : 0;
+			for(int i = 0; i < size; i++) {
+				extend(minX(i), minY(i), maxX(i), maxY(i));
+				if(!leaf)
+					count += children[i].count;
+			}
+		}
+
+		boolean covers(double x, double y) {
+			return x >= minX && x <= maxX && y >= minY && y <= maxY;
+		}
+
+		double distanceSquared(double x, double y) {
+			double distX = Math.max(Math.max(minX - x, x - maxX), 0);
+			double distY = Math.max(Math.max(minY - y, y - maxY), 0);
+			return distX * distX + distY * distY;
+		}
+	}
+
+	/**
+	 * A point with the coordinates where it is recorded, while the tree is packed or a point is inserted again
+	 */
+	private static final class Entry<T> {
+		final T point;
+		final double x;
+		final double y;
+
+		Entry(T point, double x, double y) {
+			this.point = point;
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	private final int capacity;
+	private final int minimum;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private Node<T> root;
+	private double topLeftX;
+	private double topLeftY;
+	private double bottomRightX;
+	private double bottomRightY;
+
+	/**
+	 * Create an R-tree with nodes of the default capacity, whose bounds start as the rectangle with given corners
+	 * and grow to cover the points inserted outside it
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 */
+	public RTree(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY) {
+		this(topLeftX, topLeftY, bottomRightX, bottomRightY, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create an R-tree with nodes of given capacity, whose bounds start as the rectangle with given corners
+	 * and grow to cover the points inserted outside it. Nodes other than the root hold at least 40% of their capacity.
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @param capacity maximum number of entries of a node
+	 * @throws IllegalArgumentException if the capacity is less than 4
+	 */
+	public RTree(double topLeftX, double topLeftY, double bottomRightX, double bottomRightY, int capacity) {
+		if(capacity < 4)
+			throw new IllegalArgumentException("Capacity must be at least 4");
+		this.capacity = capacity;
+		this.minimum = Math.max(2, capacity * 2 / 5);
+		this.root = new Node<T>(true, capacity);
+		this.topLeftX = topLeftX;
+		this.topLeftY = topLeftY;
+		this.bottomRightX = bottomRightX;
+		this.bottomRightY = bottomRightY;
+	}
+
+	/**
+	 * Maximum number of entries of a node
+	 * @return capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Number of levels of the tree, which is the same for every leaf
+	 * @return height
+	 */
+	public int getHeight() {
+		lock.readLock().lock();
+		try {
+			int height = 1;
+
+			for(Node<T> node = root; !node.leaf; node = node.children[0])
+				height++;
+			return height;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public long size() {
+		lock.readLock().lock();
+		try {
+			return root.count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public double getTopLeftX() {
+		lock.readLock().lock();
+		try {
+			return topLeftX;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public double getTopLeftY() {
+		lock.readLock().lock();
+		try {
+			return topLeftY;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public double getBottomRightX() {
+		lock.readLock().lock();
+		try {
+			return bottomRightX;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public double getBottomRightY() {
+		lock.readLock().lock();
+		try {
+			return bottomRightY;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Grow the bounds to cover given location
+	 * @param x coordinate of the location
+	 * @param y coordinate of the location
+	 * @throws PointOutOfBoundException if the location is not finite
+	 */
+	private void cover(double x, double y) throws PointOutOfBoundException {
+		if(!(Double.isFinite(x) && Double.isFinite(y)))
+			throw new PointOutOfBoundException();
+		topLeftX = Math.min(topLeftX, x);
+		topLeftY = Math.max(topLeftY, y);
+		bottomRightX = Math.max(bottomRightX, x);
+		bottomRightY = Math.min(bottomRightY, y);
+	}
+
+	public void insert(T point) throws PointOutOfBoundException {
+		double x = point.getX();
+		double y = point.getY();
+
+		lock.writeLock().lock();
+		try {
+			cover(x, y);
+			insert(point, x, y);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Insert given point at given coordinates, extending the nodes on the way down to the leaf
+	 * whose rectangle grows the least, and splitting the nodes that overflow on the way up
+	 * @param point to be inserted
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 */
+	private void insert(T point, double x, double y) {
+		Node<T> node = root;
+
+		while(!node.leaf) {
+			node.count++;
+			node.extend(x, y, x, y);
+			node = node.children[choose(node, x, y)];
+		}
+		node.add(point, x, y);
+		while(node != null && node.size > capacity)
+			node = split(node);
+	}
+
+	/**
+	 * Position of the child of given node whose rectangle grows the least to cover given location,
+	 * measured by area and then by perimeter, since rectangles of points are often flat; ties go to the smallest one
+	 * @param node where to choose
+	 * @param x coordinate of the location
+	 * @param y coordinate of the location
+	 * @return position of the child
+	 */
+	private static <T extends HasPoint> int choose(Node<T> node, double x, double y) {
+		int best = 0;
+		double bestArea = Double.POSITIVE_INFINITY;
+		double bestMargin = Double.POSITIVE_INFINITY;
+		double bestSize = Double.POSITIVE_INFINITY;
+
+		for(int i = 0; i < node.size; i++) {
+			Node<T> child = node.children[i];
+			double width = child.maxX - child.minX;
+			double height = child.maxY - child.minY;
+			double grownWidth = Math.max(child.maxX, x) - Math.min(child.minX, x);
+			double grownHeight = Math.max(child.maxY, y) - Math.min(child.minY, y);
+			double area = grownWidth * grownHeight - width * height;
+			double margin = grownWidth + grownHeight - width - height;
+			double size = width * height + width + height;
+
+			if(area < bestArea || area == bestArea && (margin < bestMargin || margin == bestMargin && size < bestSize)) {
+				best = i;
+				bestArea = area;
+				bestMargin = margin;
+				bestSize = size;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Split given node, which has one entry too many, in two nodes that take the same place in its parent,
+	 * or under a new root if it is the root. Entries are sorted along each axis, and the split chosen is
+	 * the one with the least overlap between the two rectangles, then the least total area, then the least perimeter.
+	 * @param node to split
+	 * @return parent of the node, which may overflow in turn, or null if a new root was created
+	 */
+	private Node<T> split(Node<T> node) {
+		int size = node.size;
+		Integer[] bestOrder = null;
+		int bestSplit = 0;
+		double bestOverlap = Double.POSITIVE_INFINITY;
+		double bestArea = Double.POSITIVE_INFINITY;
+		double bestMargin = Double.POSITIVE_INFINITY;
+
+		for(int axis = 0; axis < 2; axis++) {
+			Integer[] order = new Integer[size];
+			double[][] before = new double[size + 1][];
+			double[][] after = new double[size + 1][];
+
+			for(int i = 0; i < size; i++)
+				order[i] = i;
+			if(axis == 0)
+				Arrays.sort(order, Comparator.comparingDouble(i -> node.minX(i) + node.maxX(i)));
+			else
+				Arrays.sort(order, Comparator.comparingDouble(i -> node.minY(i) + node.maxY(i)));
+			before[0] = empty();
+			for(int k = 0; k < size; k++)
+				before[k + 1] = extended(before[k], node, order[k]);
+			after[size] = empty();
+			for(int k = size - 1; k >= 0; k--)
+				after[k] = extended(after[k + 1], node, order[k]);
+			for(int k = minimum; k <= size - minimum; k++) {
+				double[] first = before[k];
+				double[] second = after[k];
+				double overlap = Math.max(0, Math.min(first[2], second[2]) - Math.max(first[0], second[0]))
+						* Math.max(0, Math.min(first[3], second[3]) - Math.max(first[1], second[1]));
+				double area = (first[2] - first[0]) * (first[3] - first[1]) + (second[2] - second[0]) * (second[3] - second[1]);
+				double margin = first[2] - first[0] + first[3] - first[1] + second[2] - second[0] + second[3] - second[1];
+
+				if(overlap < bestOverlap || overlap == bestOverlap
+						&& (area < bestArea || area == bestArea && margin < bestMargin)) {
+					bestOrder = order;
+					bestSplit = k;
+					bestOverlap = overlap;
+					bestArea = area;
+					bestMargin = margin;
+				}
+			}
+		}
+
+		Node<T> sibling = new Node<T>(node.leaf, capacity);
+		Node<T> parent = node.parent;
+
+		if(node.leaf) {
+			List<Entry<T>> entries = new ArrayList<Entry<T>>(size);
+
+			for(int i : bestOrder)
+				entries.add(new Entry<T>(node.points[i], node.xs[i], node.ys[i]));
+			node.size = 0;
+			Arrays.fill(node.points, null);
+			for(int k = 0; k < size; k++) {
+				Entry<T> entry = entries.get(k);
+				(k < bestSplit ? node : sibling).add(entry.point, entry.x, entry.y);
+			}
+		} else {
+			List<Node<T>> children = new ArrayList<Node<T>>(size);
+
+			for(int i : bestOrder)
+				children.add(node.children[i]);
+			node.size = 0;
+			Arrays.fill(node.children, null);
+			for(int k = 0; k < size; k++)
+				(k < bestSplit ? node : sibling).add(children.get(k));
+		}
+		node.recompute();
+		if(parent == null) {
+			root = new Node<T>(false, capacity);
+			root.add(node);
+			root.add(sibling);
+			return null;
+		}
+		parent.children[parent.size++] = sibling;
+		sibling.parent = parent;
+		return parent;
+	}
+
+	private static double[] empty() {
+		return new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+	}
+
+	private static double[] extended(double[] rectangle, Node<?> node, int index) {
+		return new double[] { Math.min(rectangle[0], node.minX(index)), Math.min(rectangle[1], node.minY(index)),
+				Math.max(rectangle[2], node.maxX(index)), Math.max(rectangle[3], node.maxY(index)) };
+	}
+
+	/**
+	 * Insert all given points at once, packing the tree again with the points already recorded and the new ones.
+	 * Points are sorted by x coordinate into vertical slices, each sorted by y coordinate into full leaves,
+	 * and each level of nodes is packed the same way by the centers of their rectangles.
+	 * @param points to be inserted
+	 * @throws PointOutOfBoundException in case some point has coordinates that are not finite, and then no point is inserted
+	 */
+	public void insertAll(Collection<? extends T> points) throws PointOutOfBoundException {
+		List<Entry<T>> entries = new ArrayList<Entry<T>>(points.size());
+
+		for(T point : points) {
+			if(!(Double.isFinite(point.getX()) && Double.isFinite(point.getY())))
+				throw new PointOutOfBoundException();
+			entries.add(new Entry<T>(point, point.getX(), point.getY()));
+		}
+		lock.writeLock().lock();
+		try {
+			for(Entry<T> entry : entries)
+				cover(entry.x, entry.y);
+			collect(root, entries);
+			root = pack(entries);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Build a tree with given points, packed by sort-tile-recursive
+	 * @param entries points with their coordinates
+	 * @return root of the tree
+	 */
+	private Node<T> pack(List<Entry<T>> entries) {
+		List<Node<T>> level = new ArrayList<Node<T>>();
+
+		for(List<Entry<T>> tile : tiles(entries, entry -> entry.x, entry -> entry.y)) {
+			Node<T> leaf = new Node<T>(true, capacity);
+
+			for(Entry<T> entry : tile)
+				leaf.add(entry.point, entry.x, entry.y);
+			level.add(leaf);
+		}
+		while(level.size() > 1) {
+			List<Node<T>> upper = new ArrayList<Node<T>>();
+
+			for(List<Node<T>> tile : tiles(level, node -> node.minX + node.maxX, node -> node.minY + node.maxY)) {
+				Node<T> node = new Node<T>(false, capacity);
+
+				for(Node<T> child : tile)
+					node.add(child);
+				upper.add(node);
+			}
+			level = upper;
+		}
+		if(level.isEmpty())
+			return new Node<T>(true, capacity);
+		level.get(0).parent = null;
+		return level.get(0);
+	}
+
+	/**
+	 * Divide given items in groups of the capacity of nodes, sorting them by x into vertical slices
+	 * of whole groups, and then each slice by y
+	 * @param items to divide
+	 * @param x key of each item along the x axis
+	 * @param y key of each item along the y axis
+	 * @param <E> type of items
+	 * @return groups of items
+	 */
+	private <E> List<List<E>> tiles(List<E> items, ToDoubleFunction<E> x,
+			ToDoubleFunction<E> y) {
+		List<List<E>> tiles = new ArrayList<List<E>>();
+		int groups = (items.size() + capacity - 1) / capacity;
+		int slices = (int) Math.ceil(Math.sqrt(groups));
+		int sliceSize = slices == 0 ? 0 : (groups + slices - 1) / slices * capacity;
+
+		items.sort(Comparator.comparingDouble(x));
+		for(int start = 0; start < items.size(); start += sliceSize) {
+			List<E> slice = items.subList(start, Math.min(start + sliceSize, items.size()));
+
+			slice.sort(Comparator.comparingDouble(y));
+			for(int from = 0; from < slice.size(); from += capacity)
+				tiles.add(new ArrayList<E>(slice.subList(from, Math.min(from + capacity, slice.size()))));
+		}
+		return tiles;
+	}
+
+	/**
+	 * Add the points below given node, with their coordinates, to given list
+	 * @param node where points are collected
+	 * @param entries where points are added
+	 */
+	private static <T extends HasPoint> void collect(Node<T> node, List<Entry<T>> entries) {
+		for(int i = 0; i < node.size; i++) {
+			if(node.leaf)
+				entries.add(new Entry<T>(node.points[i], node.xs[i], node.ys[i]));
+			else
+				collect(node.children[i], entries);
+		}
+	}
+
+	public boolean delete(T point) {
+		double x = point.getX();
+		double y = point.getY();
+
+		lock.writeLock().lock();
+		try {
+			Node<T> leaf = locate(root, point, x, y);
+
+			if(leaf == null)
+				return false;
+			leaf.remove(indexOf(leaf, point, x, y));
+			condense(leaf);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Move given point to new coordinates. If they are inside the rectangle of its leaf only its coordinates
+	 * are replaced, leaving the rectangle as it is, otherwise it is deleted and inserted again.
+	 * @param point to be moved
+	 * @param newX new x coordinate of point
+	 * @param newY new y coordinate of point
+	 * @return true if the point was moved, false if it is not recorded
+	 * @throws PointOutOfBoundException in case the new coordinates are not finite, and then nothing is changed
+	 */
+	public boolean relocate(T point, double newX, double newY) throws PointOutOfBoundException {
+		double x = point.getX();
+		double y = point.getY();
+
+		lock.writeLock().lock();
+		try {
+			cover(newX, newY);
+
+			Node<T> leaf = locate(root, point, x, y);
+
+			if(leaf == null)
+				return false;
+
+			int index = indexOf(leaf, point, x, y);
+
+			if(leaf.covers(newX, newY)) {
+				leaf.xs[index] = newX;
+				leaf.ys[index] = newY;
+			} else {
+				leaf.remove(index);
+				condense(leaf);
+				insert(point, newX, newY);
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * The leaf below given node where given point is recorded at given coordinates
+	 * @param node where the search starts
+	 * @param point to look for
+	 * @param x coordinate where it is recorded
+	 * @param y coordinate where it is recorded
+	 * @return leaf, or null if not found
+	 */
+	private static <T extends HasPoint> Node<T> locate(Node<T> node, T point, double x, double y) {
+		if(!node.covers(x, y))
+			return null;
+		if(node.leaf)
+			return indexOf(node, point, x, y) >= 0 ? node : null;
+		for(int i = 0; i < node.size; i++) {
+			Node<T> leaf = locate(node.children[i], point, x, y);
+
+			if(leaf != null)
+				return leaf;
+		}
+		return null;
+	}
+
+	private static <T extends HasPoint> int indexOf(Node<T> leaf, T point, double x, double y) {
+		for(int i = 0; i < leaf.size; i++) {
+			if(leaf.xs[i] == x && leaf.ys[i] == y && (leaf.points[i] == point || leaf.points[i].equals(point)))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Update the nodes from given leaf, which lost an entry, up to the root. Nodes left with too few entries
+	 * are removed from their parents, and their points are inserted again once the rectangles and counts
+	 * of the remaining nodes are up to date. A root left with a single child is replaced by it.
+	 * @param leaf that lost an entry
+	 */
+	private void condense(Node<T> leaf) {
+		List<Entry<T>> orphans = new ArrayList<Entry<T>>();
+
+		for(Node<T> node = leaf; node != root; node = node.parent) {
+			Node<T> parent = node.parent;
+
+			if(node.size < minimum) {
+				for(int i = 0; i < parent.size; i++) {
+					if(parent.children[i] == node) {
+						parent.remove(i);
+						break;
+					}
+				}
+				collect(node, orphans);
+			}
+			else
+				node.recompute();
+		}
+		root.recompute();
+		while(!root.leaf && root.size == 1) {
+			root = root.children[0];
+			root.parent = null;
+		}
+		if(!root.leaf && root.size == 0)
+			root = new Node<T>(true, capacity);
+		for(Entry<T> orphan : orphans)
+			insert(orphan.point, orphan.x, orphan.y);
+	}
+
+	public Set<T> findNear(double x, double y, double radius) {
+		final Set<T> set = new HashSet<T>();
+		forEachNear(x, y, radius, point -> { set.add(point); return true; });
+		return set;
+	}
+
+	public boolean forEachNear(double x, double y, double radius, PointConsumer<T> consumer) {
+		return forEachIn(new PointQuadtree.Circle(x, y, radius), consumer);
+	}
+
+	/**
+	 * Pass each point near each query in a batch to given consumer, running the queries one after the other
+	 * @param x coordinates of the centers of the queries
+	 * @param y coordinates of the centers of the queries
+	 * @param radius of each query
+	 * @param consumer of points and the queries they satisfy
+	 */
+	public void forEachNear(double[] x, double[] y, double[] radius, ProbeConsumer<T> consumer) {
+		lock.readLock().lock();
+		try {
+			for(int probe = 0; probe < x.length; probe++) {
+				final int query = probe;
+				forEachNear(x[probe], y[probe], radius[probe], point -> { consumer.accept(query, point); return true; });
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean forEachInBox(double minX, double minY, double maxX, double maxY, PointConsumer<T> consumer) {
+		return forEachIn(new PointQuadtree.Box(minX, minY, maxX, maxY), consumer);
+	}
+
+	/**
+	 * Pass each point inside the rectangle with given limits that takes place during given time window
+	 * to given consumer. Nodes keep no summary of intervals, so each point in the rectangle is checked.
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	public boolean forEachInBox(double minX, double minY, double maxX, double maxY, long from, long to,
+			PointConsumer<T> consumer) {
+		return forEachInBox(minX, minY, maxX, maxY, point -> !Trie.during(point, from, to) || consumer.accept(point));
+	}
+
+	public boolean forEachIn(Region region, PointConsumer<T> consumer) {
+		lock.readLock().lock();
+		try {
+			if(root.size == 0 || !region.intersects(root.minX, root.minY, root.maxX, root.maxY))
+				return true;
+			if(region.contains(root.minX, root.minY, root.maxX, root.maxY))
+				return forEachAll(root, consumer);
+			return forEachIn(root, region, consumer);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Pass the points below given node inside given region to given consumer. Children wholly inside it are passed
+	 * without testing their points, and only those crossing its boundary are searched.
+	 * @param node where points are searched
+	 * @param region where points are searched
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	private static <T extends HasPoint> boolean forEachIn(Node<T> node, Region region, PointConsumer<T> consumer) {
+		for(int i = 0; i < node.size; i++) {
+			if(node.leaf) {
+				if(region.contains(node.xs[i], node.ys[i]) && !consumer.accept(node.points[i]))
+					return false;
+			} else {
+				Node<T> child = node.children[i];
+
+				if(region.contains(child.minX, child.minY, child.maxX, child.maxY)) {
+					if(!forEachAll(child, consumer))
+						return false;
+				}
+				else if(region.intersects(child.minX, child.minY, child.maxX, child.maxY)
+						&& !forEachIn(child, region, consumer))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	public Set<T> findIn(Region region) {
+		final Set<T> set = new HashSet<T>();
+		forEachIn(region, point -> { set.add(point); return true; });
+		return set;
+	}
+
+	public long count(Region region) {
+		lock.readLock().lock();
+		try {
+			if(root.size == 0 || !region.intersects(root.minX, root.minY, root.maxX, root.maxY))
+				return 0;
+			if(region.contains(root.minX, root.minY, root.maxX, root.maxY))
+				return root.count;
+			return count(root, region);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of points below given node inside given region, taking children wholly inside it from their counts
+	 * @param node where points are counted
+	 * @param region where points are counted
+	 * @return count of points
+	 */
+	private static <T extends HasPoint> long count(Node<T> node, Region region) {
+		long count = 0;
+
+		for(int i = 0; i < node.size; i++) {
+			if(node.leaf) {
+				if(region.contains(node.xs[i], node.ys[i]))
+					count++;
+			} else {
+				Node<T> child = node.children[i];
+
+				if(region.contains(child.minX, child.minY, child.maxX, child.maxY))
+					count += child.count;
+				else if(region.intersects(child.minX, child.minY, child.maxX, child.maxY))
+					count += count(child, region);
+			}
+		}
+		return count;
+	}
+
+	public List<T> findNearest(double x, double y, int k) {
+		List<T> list = new ArrayList<T>(Math.max(0, Math.min(k, 1024)));
+
+		lock.readLock().lock();
+		try {
+			DistanceIterator<T> iterator = nearestIterator(x, y);
+
+			while(list.size() < k && iterator.hasNext())
+				list.add(iterator.next());
+			return list;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * An iterator over all points by increasing distance to the point with given coordinates.
+	 * The search is best-first: nodes and points are kept in a single priority queue ordered by their distance,
+	 * and a node is only expanded when it reaches the head of the queue.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return iterator, nearest first
+	 */
+	public DistanceIterator<T> nearestIterator(double x, double y) {
+		return new BestFirstIterator(x, y);
+	}
+
+	public boolean forEachAll(PointConsumer<T> consumer) {
+		lock.readLock().lock();
+		try {
+			return forEachAll(root, consumer);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static <T extends HasPoint> boolean forEachAll(Node<T> node, PointConsumer<T> consumer) {
+		for(int i = 0; i < node.size; i++) {
+			if(node.leaf ? !consumer.accept(node.points[i]) : !forEachAll(node.children[i], consumer))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * An iterator over a copy of the points taken on its creation, which does not support removal
+	 * @return iterator
+	 */
+	public Iterator<T> iterator() {
+		final List<T> list = new ArrayList<T>();
+		forEachAll(point -> { list.add(point); return true; });
+		return Collections.unmodifiableList(list).iterator();
+	}
+
+	/**
+	 * Iterator over the points by increasing distance to a given point, expanding nodes best-first
+	 */
+	private final class BestFirstIterator implements DistanceIterator<T> {
+
+		/**
+		 * An entry in the queue, either a node still to be expanded or a point
+		 */
+		private final class Candidate implements Comparable<Candidate> {
+			final double distanceSquared;
+			final Node<T> node;
+			final T point;
+
+			Candidate(double distanceSquared, Node<T> node, T point) {
+				this.distanceSquared = distanceSquared;
+				this.node = node;
+				this.point = point;
+			}
+
+			public int compareTo(Candidate other) {
+				return Double.compare(distanceSquared, other.distanceSquared);
+			}
+		}
+
+		private final double x;
+		private final double y;
+		private final PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+
+		BestFirstIterator(double x, double y) {
+			this.x = x;
+			this.y = y;
+			lock.readLock().lock();
+			try {
+				if(root.size > 0)
+					queue.add(new Candidate(root.distanceSquared(x, y), root, null));
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		public boolean hasNext() {
+			Candidate head;
+
+			lock.readLock().lock();
+			try {
+				while((head = queue.peek()) != null && head.node != null) {
+					Node<T> node = queue.poll().node;
+
+					for(int i = 0; i < node.size; i++) {
+						if(node.leaf) {
+							double distX = node.xs[i] - x;
+							double distY = node.ys[i] - y;
+							queue.add(new Candidate(distX * distX + distY * distY, null, node.points[i]));
+						}
+						else
+							queue.add(new Candidate(node.children[i].distanceSquared(x, y), node.children[i], null));
+					}
+				}
+				return head != null;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		public T next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			return queue.poll().point;
+		}
+
+		public double peekDistanceSquared() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			return queue.peek().distanceSquared;
+		}
+	}
+}
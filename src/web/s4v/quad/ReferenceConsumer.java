@@ -0,0 +1,19 @@
+package web.s4v.quad;
+
+/**
+ * Receives the entries found by a query on a memory-mapped quad tree, as soon as they are found.
+ * Returning false stops the query, hence a consumer may end a search early.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+public interface ReferenceConsumer {
+	/**
+	 * Receive an entry found by a query
+	 * @param reference recorded with the entry
+	 * @param x coordinate of the entry
+	 * @param y coordinate of the entry
+	 * @return true to continue the query, false to stop it
+	 */
+	boolean accept(long reference, double x, double y);
+}
@@ -0,0 +1,41 @@
+package web.s4v.quad;
+
+/**
+ * A region where points are searched or counted. Subtrees whose rectangle is wholly inside the region are taken
+ * whole, without testing their points, and counted from their aggregate number of points,
+ * so only leaves on its boundary are scanned.
+ * The rectangle tests may be conservative: a rectangle taken as not contained is merely searched deeper,
+ * and one taken as intersecting is merely searched in vain, but points are taken only by their own test.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+public interface Region {
+	/**
+	 * Check if given location is inside the region
+	 * @param x coordinate of the location
+	 * @param y coordinate of the location
+	 * @return true if inside, false otherwise
+	 */
+	boolean contains(double x, double y);
+
+	/**
+	 * Check if the rectangle with given limits is wholly inside the region
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @return true only if every location of the rectangle is inside
+	 */
+	boolean contains(double minX, double minY, double maxX, double maxY);
+
+	/**
+	 * Check if the rectangle with given limits may have locations inside the region
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @return false only if no location of the rectangle is inside
+	 */
+	boolean intersects(double minX, double minY, double maxX, double maxY);
+}
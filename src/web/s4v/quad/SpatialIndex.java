@@ -0,0 +1,195 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An index of points in the plane, searched by radius, rectangle, region and nearness.
+ * PointQuadtree, GridIndex and RTree implement it, so that users can choose the structure
+ * that best suits the distribution of their points and the queries they make.
+ * Points must not change their coordinates while recorded, except through relocate.
+ * Several points may share the same location, and all of them are found by queries.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ * @implements Iterable
+ *
+ * @param <T> a type extending HasPoint
+ */
+public interface SpatialIndex<T extends HasPoint> extends Iterable<T> {
+
+	/**
+	 * Number of points in the index
+	 * @return count of points
+	 */
+	long size();
+
+	/**
+	 * Minimum x coordinate of a rectangle containing every point of the index
+	 * @return x coordinate of the top left corner
+	 */
+	double getTopLeftX();
+
+	/**
+	 * Maximum y coordinate of a rectangle containing every point of the index
+	 * @return y coordinate of the top left corner
+	 */
+	double getTopLeftY();
+
+	/**
+	 * Maximum x coordinate of a rectangle containing every point of the index
+	 * @return x coordinate of the bottom right corner
+	 */
+	double getBottomRightX();
+
+	/**
+	 * Minimum y coordinate of a rectangle containing every point of the index
+	 * @return y coordinate of the bottom right corner
+	 */
+	double getBottomRightY();
+
+	/**
+	 * Insert given point
+	 * @param point to be inserted
+	 * @throws PointOutOfBoundException in case point has coordinates that are not finite
+	 */
+	void insert(T point) throws PointOutOfBoundException;
+
+	/**
+	 * Insert all given points at once, which may be faster than inserting them one by one
+	 * @param points to be inserted
+	 * @throws PointOutOfBoundException in case some point has coordinates that are not finite, and then no point is inserted
+	 */
+	void insertAll(Collection<? extends T> points) throws PointOutOfBoundException;
+
+	/**
+	 * Delete given point, if it is recorded at the coordinates it reports. Other points in the same location
+	 * are never deleted in its place.
+	 * @param point to be deleted
+	 * @return true if the point was deleted, false if it is not recorded
+	 */
+	boolean delete(T point);
+
+	/**
+	 * Move given point to new coordinates. The point must still report the coordinates where it was recorded,
+	 * and should report the new ones once this method returns.
+	 * @param point to be moved
+	 * @param newX new x coordinate of point
+	 * @param newY new y coordinate of point
+	 * @return true if the point was moved, false if it is not recorded
+	 * @throws PointOutOfBoundException in case the new coordinates are not finite, and then nothing is changed
+	 */
+	boolean relocate(T point, double newX, double newY) throws PointOutOfBoundException;
+
+	/**
+	 * Returns a set of points at a distance smaller or equal to radius from point with given coordinates
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @return set of instances of type HasPoint
+	 */
+	Set<T> findNear(double x, double y, double radius);
+
+	/**
+	 * Pass each point at a distance smaller or equal to radius from point with given coordinates to given consumer.
+	 * The consumer may stop the search by returning false.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param radius from given point
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	boolean forEachNear(double x, double y, double radius, PointConsumer<T> consumer);
+
+	/**
+	 * Pass each point at a distance smaller or equal to the radius of each query in a batch from its center
+	 * to given consumer, with the position of that query
+	 * @param x coordinates of the centers of the queries
+	 * @param y coordinates of the centers of the queries
+	 * @param radius of each query
+	 * @param consumer of points and the queries they satisfy
+	 */
+	void forEachNear(double[] x, double[] y, double[] radius, ProbeConsumer<T> consumer);
+
+	/**
+	 * Pass each point inside the rectangle with given limits to given consumer.
+	 * The consumer may stop the search by returning false.
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	boolean forEachInBox(double minX, double minY, double maxX, double maxY, PointConsumer<T> consumer);
+
+	/**
+	 * Pass each point inside the rectangle with given limits that takes place during given time window
+	 * to given consumer. Points that do not implement HasInterval are taken as lasting forever.
+	 * The consumer may stop the search by returning false.
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	boolean forEachInBox(double minX, double minY, double maxX, double maxY, long from, long to,
+			PointConsumer<T> consumer);
+
+	/**
+	 * Pass each point inside given region to given consumer.
+	 * The consumer may stop the search by returning false.
+	 * @param region where points are searched
+	 * @param consumer of points
+	 * @return false if the consumer stopped the search, true otherwise
+	 */
+	boolean forEachIn(Region region, PointConsumer<T> consumer);
+
+	/**
+	 * Returns a set of points inside given region
+	 * @param region where points are searched
+	 * @return set of instances of type HasPoint
+	 */
+	Set<T> findIn(Region region);
+
+	/**
+	 * Number of points inside given region
+	 * @param region where points are counted
+	 * @return count of points
+	 */
+	long count(Region region);
+
+	/**
+	 * Returns a list with the k points nearest to the point with given coordinates, ordered by increasing distance
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param k maximum number of points to return
+	 * @return list of instances of type HasPoint, nearest first
+	 */
+	List<T> findNearest(double x, double y, int k);
+
+	/**
+	 * An iterator over all points by increasing distance to the point with given coordinates,
+	 * which may be resumed at any time, as long as it is kept
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return iterator, nearest first
+	 */
+	DistanceIterator<T> nearestIterator(double x, double y);
+
+	/**
+	 * Pass each point in the index to given consumer. The consumer may stop the traversal by returning false.
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+	boolean forEachAll(PointConsumer<T> consumer);
+}
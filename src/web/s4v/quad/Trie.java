@@ -2,7 +2,6 @@ package web.s4v.quad;
 
 import web.s4v.shared.HasPoint;
 
-import java.util.Set;
 /**
  * Abstract class common to all classes implementing the trie structure.
  * Defines methods required by those classes and provides general methods for checking overlaps and computing distances.
@@ -23,7 +22,6 @@ public abstract class Trie<T extends HasPoint> implements Element<T> {
 	protected double bottomRightY;
 	protected double topLeftX;
 	protected double topLeftY;
-	static int capacity;
 
 	/**
 	 * Quadrants of NodeTries. Names are from the compass NE = North East, etc.
@@ -32,6 +30,11 @@ public abstract class Trie<T extends HasPoint> implements Element<T> {
 		SW, NW, SE, NE
 	}
 
+	/**
+	 * Number of quadrants, and of sub tries, in a NodeTrie
+	 */
+	static final int QUADRANTS = Quadrant.values().length;
+
 	/**
 	 * Initializes trie
 	 * @param topLeftX x coordinate of top left corner
@@ -48,25 +51,87 @@ public abstract class Trie<T extends HasPoint> implements Element<T> {
 	}
 
 	/**
-	 * Collect all points in this node and its descendants in given set
-	 * @param points set of HasPoint for collecting points
+	 * Pass all points in this node and its descendants to given consumer
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
 	 */
-	abstract void collectAll(Set<T> points);
+	abstract boolean forEachAll(PointConsumer<T> consumer);
 
 	/**
-	 * Collect points at a distance smaller or equal to radius from (x,y) and place them in given list
+	 * Pass points at a distance smaller or equal to radius from (x,y) to given consumer
 	 * @param x coordinate of point
 	 * @param y coordinate of point
 	 * @param radius from given point
-	 * @param points set for collecting points
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+	abstract boolean forEachNear(double x, double y, double radius, PointConsumer<T> consumer);
+
+	/**
+	 * Pass points at a distance smaller or equal to the radius of each query in a batch from its center to given consumer
+	 * @param x coordinates of the centers of the queries
+	 * @param y coordinates of the centers of the queries
+	 * @param radius of each query
+	 * @param probes positions of the queries that overlap this trie, in their first count positions
+	 * @param count number of queries that overlap this trie
+	 * @param consumer of points
+	 */
+	abstract void forEachNear(double[] x, double[] y, double[] radius, int[] probes, int count, ProbeConsumer<T> consumer);
+
+	/**
+	 * Pass points inside the rectangle with given limits to given consumer
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+	abstract boolean forEachInBox(double minX, double minY, double maxX, double maxY, PointConsumer<T> consumer);
+
+	/**
+	 * Pass points inside the rectangle with given limits whose interval overlaps given time window to given consumer.
+	 * Points that do not implement HasInterval are taken as lasting forever.
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
+	 */
+	abstract boolean forEachInBox(double minX, double minY, double maxX, double maxY, long from, long to,
+			PointConsumer<T> consumer);
+
+	/**
+	 * Pass points inside given region to given consumer, taking whole subtrees inside it without testing their points
+	 * @param region where points are searched
+	 * @param consumer of points
+	 * @return false if the consumer stopped the traversal, true otherwise
 	 */
-	abstract void collectNear(double x, double y, double radius, Set<T> points);
+	abstract boolean forEachIn(Region region, PointConsumer<T> consumer);
+
+	/**
+	 * Number of points in this trie, including those sharing the location of another point
+	 * @return count of points
+	 */
+	abstract long count();
+
+	/**
+	 * Number of points of this trie inside given region, taking whole subtrees inside it from their counts
+	 * @param region where points are counted
+	 * @return count of points
+	 */
+	abstract long count(Region region);
 
 	/**
 	 * Delete given point
 	 * @param point to delete
+	 * @param capacity of leaves in the quad tree
+	 * @return changed trie, which may be a leaf replacing a node whose points were merged
 	 */
-	abstract void delete(T point);
+	abstract Trie<T> delete(T point, int capacity);
 
 	/**
 	 * Find a recorded point with the same coordinates of given point
@@ -76,34 +141,60 @@ public abstract class Trie<T extends HasPoint> implements Element<T> {
 	abstract T find(T point);
 
 	/**
-	 * Insert given point
-	 * @param point to be inserted
-	 * @return changed parent node
+	 * Delete given point only if it is recorded, at the coordinates it reports
+	 * @param point to delete
+	 * @param capacity of leaves in the quad tree
+	 * @return changed trie, or null if the point is not recorded, and then nothing is changed
 	 */
-	abstract Trie<T> insert(T point);
+	abstract Trie<T> extract(T point, int capacity);
 
 	/**
-	 * Insert given point, replacing existing points in same location
+	 * Check if given point is recorded, at the coordinates it reports
+	 * @param point to look for
+	 * @return true if recorded, false otherwise
+	 */
+	abstract boolean holds(T point);
+
+	/**
+	 * Move given point, recorded at the coordinates it reports, to new coordinates inside this trie
+	 * @param point to be moved
+	 * @param newX new x coordinate of point
+	 * @param newY new y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 * @param minCellSize minimum width and height of a trie
+	 * @return changed trie, or null if the point is not recorded, and then nothing is changed
+	 */
+	abstract Trie<T> relocate(T point, double newX, double newY, int capacity, double minCellSize);
+
+	/**
+	 * Insert given point
 	 * @param point to be inserted
+	 * @param capacity of leaves in the quad tree
+	 * @param minCellSize minimum width and height of a trie
 	 * @return changed parent node
 	 */
-	abstract Trie<T> insertReplace(T point);
+	Trie<T> insert(T point, int capacity, double minCellSize) {
+		return insert(point, point.getX(), point.getY(), capacity, minCellSize);
+	}
 
 	/**
-	 * Get capacity of a bucket
-	 * @return capacity
+	 * Insert given point with given coordinates, which are recorded instead of being read again from the point
+	 * @param point to be inserted
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @param capacity of leaves in the quad tree
+	 * @param minCellSize minimum width and height of a trie
+	 * @return changed parent node
 	 */
-	static int getCapacity() {
-		return Trie.capacity;
-	}
+	abstract Trie<T> insert(T point, double x, double y, int capacity, double minCellSize);
 
 	/**
-	 * Set capacity of a bucket
-	 * @param capacity of bucket
+	 * Insert given point, replacing existing points in same location
+	 * @param point to be inserted
+	 * @param capacity of leaves in the quad tree
+	 * @return changed parent node
 	 */
-	static void setCapacity(int capacity) {
-		Trie.capacity = capacity;
-	}
+	abstract Trie<T> insertReplace(T point, int capacity);
 
 	/**
 	 * Euclidean distance between two pair of coordinates of two points
@@ -119,6 +210,20 @@ public abstract class Trie<T extends HasPoint> implements Element<T> {
 		return Math.sqrt(distY+distX);
 	}
 
+	/**
+	 * Square of the distance from given point to the nearest point of this trie's rectangle.
+	 * It is zero if the point is inside the rectangle.
+	 * @param x coordinate of point
+	 * @param y coordinate of point
+	 * @return squared distance to this trie
+	 */
+
+	double distanceSquared(double x, double y) {
+		double distX = Math.max(this.topLeftX, Math.min(x, this.bottomRightX)) - x;
+		double distY = Math.max(this.bottomRightY, Math.min(y, this.topLeftY)) - y;
+		return distX * distX + distY * distY;
+	}
+
 	/**
 	 * Check if overlaps with given circle
 	 * @param x coordinate of circle
@@ -128,21 +233,85 @@ public abstract class Trie<T extends HasPoint> implements Element<T> {
 	 */
 
 	boolean overlaps(double x, double y, double radius) {
-		
-		if((x >= this.topLeftX && x <= this.bottomRightX) 
-				&& (y <= this.topLeftY && y >= this.bottomRightY))
-			return true;
-
-		
-		double x1 = Math.max(this.topLeftX, 
-				Math.min(x, this.bottomRightX));
-		
-		double y1 = Math.max(this.bottomRightY, 
-				Math.min(y, this.topLeftY));
-		
-		double distance = getDistance(x1, y1, x, y);
-		
-		return distance <= radius;
+		return distanceSquared(x, y) <= radius * radius;
+	}
+
+	/**
+	 * Check if intersects the rectangle with given limits
+	 * @param minX minimum x coordinate of the rectangle
+	 * @param minY minimum y coordinate of the rectangle
+	 * @param maxX maximum x coordinate of the rectangle
+	 * @param maxY maximum y coordinate of the rectangle
+	 * @return true if intersects and false otherwise
+	 */
+
+	boolean intersects(double minX, double minY, double maxX, double maxY) {
+		return this.topLeftX <= maxX && this.bottomRightX >= minX
+				&& this.bottomRightY <= maxY && this.topLeftY >= minY;
+	}
+
+	/**
+	 * Check if this trie's rectangle is wholly inside given region
+	 * @param region to check
+	 * @return true if inside, false otherwise
+	 */
+
+	boolean inside(Region region) {
+		return region.contains(this.topLeftX, this.bottomRightY, this.bottomRightX, this.topLeftY);
+	}
+
+	/**
+	 * Check if this trie's rectangle may intersect given region
+	 * @param region to check
+	 * @return true if may intersect, false otherwise
+	 */
+
+	boolean intersects(Region region) {
+		return region.intersects(this.topLeftX, this.bottomRightY, this.bottomRightX, this.topLeftY);
+	}
+
+	/**
+	 * Check if some point of this trie may take place during given time window.
+	 * Leaves keep no summary of their intervals, hence they are always checked point by point.
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @return false if no point takes place during the window, true otherwise
+	 */
+
+	boolean during(long from, long to) {
+		return true;
+	}
+
+	/**
+	 * Check if given point takes place during given time window
+	 * @param point to check
+	 * @param from start of the time window, in milliseconds since the epoch
+	 * @param to end of the time window, in milliseconds since the epoch
+	 * @return true if its interval overlaps the window, or it has no interval; false otherwise
+	 */
+
+	static boolean during(HasPoint point, long from, long to) {
+		return startOf(point) <= to && endOf(point) >= from;
+	}
+
+	/**
+	 * The start of the interval of given point
+	 * @param point with an interval
+	 * @return start in milliseconds since the epoch, or the earliest time if it has no interval
+	 */
+
+	static long startOf(HasPoint point) {
+		return point instanceof HasInterval ? ((HasInterval) point).getStart() : Long.MIN_VALUE;
+	}
+
+	/**
+	 * The end of the interval of given point
+	 * @param point with an interval
+	 * @return end in milliseconds since the epoch, or the latest time if it has no interval
+	 */
+
+	static long endOf(HasPoint point) {
+		return point instanceof HasInterval ? ((HasInterval) point).getEnd() : Long.MAX_VALUE;
 	}
 
 	@Override
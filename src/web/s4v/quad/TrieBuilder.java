@@ -0,0 +1,199 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds a trie for a whole set of points at once, top-down.
+ * The points of each trie are partitioned in place into its four quadrants, first by x and then by y.
+ * Only their coordinates and an array of indexes are reordered, since swapping primitives is much cheaper than
+ * swapping references,
+ * and a leaf is created with its final size as soon as a range of points fits in it,
+ * so no leaf is ever split and no point is inserted more than once.
+ * As a fork-join task, the quadrants of large ranges may be built in parallel.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint, RecursiveTask
+ *
+ * @param <T> type that extends HasPoint
+ */
+class TrieBuilder<T extends HasPoint> extends RecursiveTask<Trie<T>> {
+
+	/**
+	 * Minimum number of points in a range for its quadrants to be built in parallel
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 14;
+
+	private final T[] points;
+	private final int[] indexes;
+	private final double[] xs;
+	private final double[] ys;
+	private final int from;
+	private final int to;
+	private final double topLeftX;
+	private final double topLeftY;
+	private final double bottomRightX;
+	private final double bottomRightY;
+	private final int capacity;
+	private final double minCellSize;
+	private final boolean parallel;
+
+	/**
+	 * Prepare the construction of the trie covering given rectangle, with the points in a range of given arrays
+	 * @param points array of points
+	 * @param indexes positions in array points of the points whose coordinates are in xs and ys
+	 * @param xs x coordinates of points
+	 * @param ys y coordinates of points
+	 * @param from index of the first point
+	 * @param to index after the last point
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @param capacity of leaves
+	 * @param minCellSize minimum width and height of a trie
+	 * @param parallel true if quadrants of large ranges are to be built in parallel
+	 */
+	TrieBuilder(T[] points, int[] indexes, double[] xs, double[] ys, int from, int to,
+			double topLeftX, double topLeftY, double bottomRightX, double bottomRightY,
+			int capacity, double minCellSize, boolean parallel) {
+		this.points = points;
+		this.indexes = indexes;
+		this.xs = xs;
+		this.ys = ys;
+		this.from = from;
+		this.to = to;
+		this.topLeftX = topLeftX;
+		this.topLeftY = topLeftY;
+		this.bottomRightX = bottomRightX;
+		this.bottomRightY = bottomRightY;
+		this.capacity = capacity;
+		this.minCellSize = minCellSize;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Build the trie
+	 * @return a leaf if the points fit in one, or a node otherwise
+	 */
+	@Override
+	protected Trie<T> compute() {
+		if(to - from <= capacity || !isDivisible() || fewLocations())
+			return new LeafTrie<T>(topLeftX, topLeftY, bottomRightX, bottomRightY, points, indexes, xs, ys, from, to);
+
+		double middleX = (topLeftX+bottomRightX)/2;
+		double middleY = (topLeftY+bottomRightY)/2;
+		int west = partition(from, to, xs, middleX);
+		int southWest = partition(from, west, ys, middleY);
+		int southEast = partition(west, to, ys, middleY);
+
+		TrieBuilder<T> SW = quadrant(from, southWest, topLeftX, middleY, middleX, bottomRightY);
+		TrieBuilder<T> NW = quadrant(southWest, west, topLeftX, topLeftY, middleX, middleY);
+		TrieBuilder<T> SE = quadrant(west, southEast, middleX, middleY, bottomRightX, bottomRightY);
+		TrieBuilder<T> NE = quadrant(southEast, to, middleX, topLeftY, bottomRightX, middleY);
+
+		if(parallel && to - from >= PARALLEL_THRESHOLD) {
+			NW.fork();
+			SE.fork();
+			NE.fork();
+			Trie<T> sw = SW.compute();
+			return new NodeTrie<T>(topLeftX, topLeftY, bottomRightX, bottomRightY,
+					sw, NW.join(), SE.join(), NE.join());
+		}
+		return new NodeTrie<T>(topLeftX, topLeftY, bottomRightX, bottomRightY,
+				SW.compute(), NW.compute(), SE.compute(), NE.compute());
+	}
+
+	/**
+	 * Check if the trie is large enough to be split in quadrants
+	 * @return true if can be split, false otherwise
+	 */
+	private boolean isDivisible() {
+		return Math.max(bottomRightX - topLeftX, topLeftY - bottomRightY) / 2 >= minCellSize;
+	}
+
+	/**
+	 * Check if the points in the range are in no more locations than the capacity, and hence fit in a leaf.
+	 * The search stops as soon as there are more locations, which is immediate for points that are not coincident.
+	 * @return true if there are few locations, false otherwise
+	 */
+	private boolean fewLocations() {
+		int[] firsts = new int[capacity + 1];
+		int count = 0;
+
+		for(int i = from; i < to; i++) {
+			int j = 0;
+
+			while(j < count && !(xs[firsts[j]] == xs[i] && ys[firsts[j]] == ys[i]))
+				j++;
+			if(j == count) {
+				if(count == capacity)
+					return false;
+				firsts[count++] = i;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Prepare the construction of a quadrant of this trie
+	 * @param from index of the first point in the quadrant
+	 * @param to index after the last point in the quadrant
+	 * @param topLeftX x coordinate of top left corner
+	 * @param topLeftY y coordinate of top left corner
+	 * @param bottomRightX x coordinate of bottom right corner
+	 * @param bottomRightY y coordinate of bottom right corner
+	 * @return builder of the quadrant
+	 */
+	private TrieBuilder<T> quadrant(int from, int to,
+			double topLeftX, double topLeftY, double bottomRightX, double bottomRightY) {
+		return new TrieBuilder<T>(points, indexes, xs, ys, from, to,
+				topLeftX, topLeftY, bottomRightX, bottomRightY, capacity, minCellSize, parallel);
+	}
+
+	/**
+	 * Reorder a range of points so that those with a coordinate below given middle come first
+	 * @param from index of the first point
+	 * @param to index after the last point
+	 * @param coordinates either xs or ys
+	 * @param middle value separating the two halves
+	 * @return index of the first point whose coordinate is not below middle
+	 */
+	private int partition(int from, int to, double[] coordinates, double middle) {
+		int low = from;
+		int high = to - 1;
+
+		while(true) {
+			while(low <= high && coordinates[low] < middle)
+				low++;
+			while(low <= high && coordinates[high] >= middle)
+				high--;
+			if(low >= high)
+				return low;
+			swap(low++, high--);
+		}
+	}
+
+	/**
+	 * Swap the coordinates and indexes of two points
+	 * @param i position of a point
+	 * @param j position of another point
+	 */
+	private void swap(int i, int j) {
+		int index = indexes[i];
+		indexes[i] = indexes[j];
+		indexes[j] = index;
+
+		double x = xs[i];
+		xs[i] = xs[j];
+		xs[j] = x;
+
+		double y = ys[i];
+		ys[i] = ys[j];
+		ys[j] = y;
+	}
+}
@@ -0,0 +1,203 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the points of a quad tree inside a circle, which may be unbounded to cover all points.
+ * Tries still to be traversed are kept in a queue, and splitting hands half of them to a new spliterator;
+ * when a single node is left, it is replaced by its quadrants, so splits follow the boundaries of the quad tree
+ * and each part keeps whole subtrees. Tries that do not overlap the circle are never queued.
+ * The size is estimated by counting the entries of the leaves under the queued tries,
+ * which is exact unless there are coincident points or the circle does not cover them.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ *
+ * @extends HasPoint
+ * @implements Spliterator, Visitor
+ *
+ * @param <T> type that extends HasPoint
+ */
+class TrieSpliterator<T extends HasPoint> implements Spliterator<T>, Visitor<T> {
+
+	private final Deque<Trie<T>> pending;
+	private final double x;
+	private final double y;
+	private final double radius;
+	private final PointQuadtree.Circle circle;
+	private final int characteristics;
+	private LeafTrie<T> leaf;
+	private int index;
+	private LeafTrie.Bucket<T> bucket;
+	private long estimate;
+
+	/**
+	 * Create a spliterator over the points under given trie inside the circle with given center and radius
+	 * @param top trie where the traversal starts
+	 * @param x coordinate of the circle's center
+	 * @param y coordinate of the circle's center
+	 * @param radius of the circle, infinite for all points
+	 * @param concurrent true if the quad tree may be updated during the traversal
+	 */
+	TrieSpliterator(Trie<T> top, double x, double y, double radius, boolean concurrent) {
+		this(x, y, radius, NONNULL | (concurrent ? CONCURRENT : 0));
+		if(top.overlaps(x, y, radius))
+			pending.add(top);
+	}
+
+	/**
+	 * Create an empty spliterator, to receive part of the tries of another one
+	 * @param x coordinate of the circle's center
+	 * @param y coordinate of the circle's center
+	 * @param radius of the circle
+	 * @param characteristics of the spliterator
+	 */
+	private TrieSpliterator(double x, double y, double radius, int characteristics) {
+		this.pending = new ArrayDeque<Trie<T>>();
+		this.x = x;
+		this.y = y;
+		this.radius = radius;
+		this.circle = new PointQuadtree.Circle(x, y, radius);
+		this.characteristics = characteristics;
+		this.estimate = -1;
+	}
+
+	/**
+	 * Pass the next point to given action
+	 * @param action on the point
+	 * @return false if there are no more points, true otherwise
+	 */
+	public boolean tryAdvance(Consumer<? super T> action) {
+		double radiusSquared = radius * radius;
+
+		while(true) {
+			if(bucket != null) {
+				action.accept(bucket.point);
+				bucket = bucket.next;
+				return true;
+			}
+			if(leaf != null && index < leaf.size()) {
+				int i = index++;
+				double distX = leaf.getX(i) - x;
+				double distY = leaf.getY(i) - y;
+
+				if(estimate > 0)
+					estimate--;
+				if(distX * distX + distY * distY <= radiusSquared) {
+					action.accept(leaf.get(i));
+					bucket = leaf.getBucket(i);
+					return true;
+				}
+				continue;
+			}
+			if(pending.isEmpty())
+				return false;
+			leaf = null;
+			pending.poll().accept(this);
+		}
+	}
+
+	/**
+	 * Pass all remaining points to given action, using the recursive traversal of the tries
+	 * @param action on the points
+	 */
+	public void forEachRemaining(Consumer<? super T> action) {
+		PointConsumer<T> consumer = point -> { action.accept(point); return true; };
+
+		while(bucket != null || (leaf != null && index < leaf.size()))
+			tryAdvance(action);
+		for(Trie<T> trie; (trie = pending.poll()) != null; ) {
+			if(radius == Double.POSITIVE_INFINITY)
+				trie.forEachAll(consumer);
+			else
+				trie.forEachNear(x, y, radius, consumer);
+		}
+		leaf = null;
+		estimate = 0;
+	}
+
+	/**
+	 * Hand half of the queued tries to a new spliterator. A single queued node is first replaced by its quadrants.
+	 * @return spliterator with part of the points, or null if this one cannot be split
+	 */
+	public Spliterator<T> trySplit() {
+		while(pending.size() == 1 && pending.peek() instanceof NodeTrie)
+			pending.poll().accept(this);
+		if(pending.size() < 2)
+			return null;
+
+		TrieSpliterator<T> prefix = new TrieSpliterator<T>(x, y, radius, characteristics);
+		for(int half = pending.size() / 2; half > 0; half--)
+			prefix.pending.add(pending.poll());
+		estimate = -1;
+		return prefix;
+	}
+
+	/**
+	 * Estimated number of points still to be traversed
+	 * @return estimate
+	 */
+	public long estimateSize() {
+		if(estimate < 0) {
+			estimate = leaf == null ? 0 : leaf.size() - index;
+			for(Trie<T> trie : pending)
+				estimate += count(trie);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Characteristics of this spliterator: points are never null, and the traversal tolerates concurrent updates
+	 * if the quad tree is in concurrent mode
+	 * @return characteristics
+	 */
+	public int characteristics() {
+		return characteristics;
+	}
+
+	/**
+	 * Number of points in the leaves under given trie that overlap the circle,
+	 * taken from the count of the trie if it is wholly inside the circle
+	 * @param trie to count
+	 * @return number of points
+	 */
+	private long count(Trie<T> trie) {
+		if(trie instanceof LeafTrie || trie.inside(circle))
+			return trie.count();
+
+		long count = 0;
+		for(Trie<T> child : ((NodeTrie<T>) trie).tries) {
+			if(child.overlaps(x, y, radius))
+				count += count(child);
+		}
+		return count;
+	}
+
+	/**
+	 * visits leaf, making it the current one
+	 * @param leaf to be visited
+	 */
+	public void visit(LeafTrie<T> leaf) {
+		this.leaf = leaf;
+		this.index = 0;
+	}
+
+	/**
+	 * visits node, queueing in its place the quadrants that overlap the circle, in order
+	 * @param node to be visited
+	 */
+	public void visit(NodeTrie<T> node) {
+		Trie<T>[] tries = node.tries;
+
+		for(int i = tries.length - 1; i >= 0; i--) {
+			if(tries[i].overlaps(x, y, radius))
+				pending.push(tries[i]);
+		}
+	}
+}
@@ -6,7 +6,9 @@ import web.s4v.shared.*;
 import web.s4v.main.*;
 
 import javax.servlet.ServletException;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -33,6 +35,12 @@ public class S4vServiceImpl extends RemoteServiceServlet implements S4vService {
       // ...
     }
 
+    @Override
+    public void destroy() {
+        TaskQuadMetrics.unregister();
+        super.destroy();
+    }
+
     @Override
     public AuthenticatedVolunteerInfo registerVolunteer(VolunteerInfo volunteerInfo) throws SpotsForVolunteeringException {
         return manager.registerVolunteer(volunteerInfo);
@@ -143,6 +151,51 @@ public class S4vServiceImpl extends RemoteServiceServlet implements S4vService {
         return manager.getNearbyTasks(latitude, longitude, radius);
     }
 
+    @Override
+    public long countNearbyTasks(double latitude, double longitude, double radius) {
+        return manager.countNearbyTasks(latitude, longitude, radius);
+    }
+
+    @Override
+    public Set<TaskInfo> getTasksInBox(double southLatitude, double westLongitude, double northLatitude, double eastLongitude) {
+        return manager.getTasksInBox(southLatitude, westLongitude, northLatitude, eastLongitude);
+    }
+
+    @Override
+    public Set<TaskInfo> getTasksInPolygon(List<GeoPoint> vertices) throws SpotsForVolunteeringException {
+        return manager.getTasksInPolygon(vertices);
+    }
+
+    @Override
+    public List<TaskCluster> getTaskClusters(double southLatitude, double westLongitude, double northLatitude, double eastLongitude, int zoom) throws SpotsForVolunteeringException {
+        return manager.getTaskClusters(southLatitude, westLongitude, northLatitude, eastLongitude, zoom);
+    }
+
+    @Override
+    public Set<TaskInfo> getNearbyTasks(double latitude, double longitude, double radius, Date from, Date to) {
+        return manager.getNearbyTasks(latitude, longitude, radius, from, to);
+    }
+
+    @Override
+    public Map<TaskProbe, Set<TaskInfo>> getNearbyTasks(List<TaskProbe> probes) {
+        return manager.getNearbyTasks(probes);
+    }
+
+    @Override
+    public NearbyTaskPage getNearbyTaskPage(double latitude, double longitude, double radius, int pageSize) throws SpotsForVolunteeringException {
+        return manager.getNearbyTaskPage(latitude, longitude, radius, pageSize);
+    }
+
+    @Override
+    public NearbyTaskPage getNextNearbyTaskPage(String cursor, int pageSize) throws SpotsForVolunteeringException {
+        return manager.getNextNearbyTaskPage(cursor, pageSize);
+    }
+
+    @Override
+    public List<TaskInfo> getNearestTasks(double latitude, double longitude, int count) {
+        return manager.getNearestTasks(latitude, longitude, count);
+    }
+
     @Override
     public void enrollInTask(AuthenticatedVolunteerInfo authenticatedVolunteerInfo, TaskInfo taskInfo) throws SpotsForVolunteeringException {
         manager.enrollInTask(authenticatedVolunteerInfo, taskInfo);
@@ -0,0 +1,103 @@
+package web.s4v.shared;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A location on the Earth's surface, as a vertex of a polygon where to search for tasks.
+ * As a point, its x coordinate is the longitude and its y coordinate is the latitude, as in TaskQuad.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ * @implements Serializable, HasPoint
+ */
+
+public class GeoPoint implements Serializable, HasPoint {
+    private double latitude;
+    private double longitude;
+
+    /**
+     * Create an empty instance.
+     */
+    public GeoPoint() {}
+
+    /**
+     * Create an instance with given coordinates.
+     * @param latitude of the location
+     * @param longitude of the location
+     */
+    public GeoPoint(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * The latitude of the location.
+     * @return latitude
+     */
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Sets or changes the latitude of the location.
+     * @param latitude to set
+     */
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    /**
+     * The longitude of the location.
+     * @return longitude
+     */
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Sets or changes the longitude of the location.
+     * @param longitude to set
+     */
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * The longitude of the location, as its x coordinate.
+     * @return longitude
+     */
+
+    @Override
+    public double getX() {
+        return longitude;
+    }
+
+    /**
+     * The latitude of the location, as its y coordinate.
+     * @return latitude
+     */
+
+    @Override
+    public double getY() {
+        return latitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GeoPoint geoPoint = (GeoPoint) o;
+        return Double.compare(geoPoint.latitude, latitude) == 0 && Double.compare(geoPoint.longitude, longitude) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(latitude, longitude);
+    }
+}
@@ -0,0 +1,93 @@
+package web.s4v.shared;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A page of tasks near a location, ordered by increasing distance, with the cursor to request the next page.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ * @implements Serializable
+ */
+
+public class NearbyTaskPage implements Serializable {
+    private ArrayList<TaskInfo> tasks = new ArrayList<>();
+    private String cursor;
+
+    /**
+     * Create an empty instance.
+     */
+    public NearbyTaskPage() {}
+
+    /**
+     * Create an instance with given tasks and cursor.
+     * @param tasks in this page, nearest first
+     * @param cursor to request the next page, or null if this is the last one
+     */
+    public NearbyTaskPage(List<TaskInfo> tasks, String cursor) {
+        this.tasks = new ArrayList<>(tasks);
+        this.cursor = cursor;
+    }
+
+    /**
+     * The tasks in this page, nearest first.
+     * @return list of tasks
+     */
+
+    public List<TaskInfo> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Sets or changes the tasks in this page.
+     * @param tasks to set, nearest first
+     */
+
+    public void setTasks(List<TaskInfo> tasks) {
+        this.tasks = new ArrayList<>(tasks);
+    }
+
+    /**
+     * The opaque cursor to request the next page. It is null if there are no more tasks.
+     * @return cursor
+     */
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Sets or changes the cursor to request the next page.
+     * @param cursor to set
+     */
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Check if there are more tasks after this page.
+     * @return true if there are, false otherwise
+     */
+
+    public boolean hasMore() {
+        return cursor != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NearbyTaskPage that = (NearbyTaskPage) o;
+        return Objects.equals(tasks, that.tasks) && Objects.equals(cursor, that.cursor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tasks, cursor);
+    }
+}
@@ -0,0 +1,193 @@
+package web.s4v.shared;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A cluster of tasks to draw on a map at some zoom level: the number of tasks in a cell of the screen
+ * and their centroid, with the limits of the cell, so that the map can zoom into it.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ * @implements Serializable
+ */
+
+public class TaskCluster implements Serializable {
+    private double latitude;
+    private double longitude;
+    private long count;
+    private double southLatitude;
+    private double westLongitude;
+    private double northLatitude;
+    private double eastLongitude;
+
+    /**
+     * Create an empty instance.
+     */
+    public TaskCluster() {}
+
+    /**
+     * Create an instance with given centroid, count and cell.
+     * @param latitude of the centroid of the tasks
+     * @param longitude of the centroid of the tasks
+     * @param count of tasks
+     * @param southLatitude of the cell
+     * @param westLongitude of the cell
+     * @param northLatitude of the cell
+     * @param eastLongitude of the cell
+     */
+    public TaskCluster(double latitude, double longitude, long count,
+                       double southLatitude, double westLongitude, double northLatitude, double eastLongitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.count = count;
+        this.southLatitude = southLatitude;
+        this.westLongitude = westLongitude;
+        this.northLatitude = northLatitude;
+        this.eastLongitude = eastLongitude;
+    }
+
+    /**
+     * The latitude of the centroid of the tasks.
+     * @return latitude
+     */
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Sets or changes the latitude of the centroid of the tasks.
+     * @param latitude to set
+     */
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    /**
+     * The longitude of the centroid of the tasks.
+     * @return longitude
+     */
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Sets or changes the longitude of the centroid of the tasks.
+     * @param longitude to set
+     */
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * The number of tasks in the cluster.
+     * @return count
+     */
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Sets or changes the number of tasks in the cluster.
+     * @param count to set
+     */
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    /**
+     * The southernmost latitude of the cell of the cluster.
+     * @return latitude
+     */
+
+    public double getSouthLatitude() {
+        return southLatitude;
+    }
+
+    /**
+     * Sets or changes the southernmost latitude of the cell of the cluster.
+     * @param southLatitude to set
+     */
+
+    public void setSouthLatitude(double southLatitude) {
+        this.southLatitude = southLatitude;
+    }
+
+    /**
+     * The westernmost longitude of the cell of the cluster.
+     * @return longitude
+     */
+
+    public double getWestLongitude() {
+        return westLongitude;
+    }
+
+    /**
+     * Sets or changes the westernmost longitude of the cell of the cluster.
+     * @param westLongitude to set
+     */
+
+    public void setWestLongitude(double westLongitude) {
+        this.westLongitude = westLongitude;
+    }
+
+    /**
+     * The northernmost latitude of the cell of the cluster.
+     * @return latitude
+     */
+
+    public double getNorthLatitude() {
+        return northLatitude;
+    }
+
+    /**
+     * Sets or changes the northernmost latitude of the cell of the cluster.
+     * @param northLatitude to set
+     */
+
+    public void setNorthLatitude(double northLatitude) {
+        this.northLatitude = northLatitude;
+    }
+
+    /**
+     * The easternmost longitude of the cell of the cluster.
+     * @return longitude
+     */
+
+    public double getEastLongitude() {
+        return eastLongitude;
+    }
+
+    /**
+     * Sets or changes the easternmost longitude of the cell of the cluster.
+     * @param eastLongitude to set
+     */
+
+    public void setEastLongitude(double eastLongitude) {
+        this.eastLongitude = eastLongitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TaskCluster that = (TaskCluster) o;
+        return Double.compare(that.latitude, latitude) == 0 && Double.compare(that.longitude, longitude) == 0
+                && count == that.count && Double.compare(that.southLatitude, southLatitude) == 0
+                && Double.compare(that.westLongitude, westLongitude) == 0
+                && Double.compare(that.northLatitude, northLatitude) == 0
+                && Double.compare(that.eastLongitude, eastLongitude) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(latitude, longitude, count, southLatitude, westLongitude, northLatitude, eastLongitude);
+    }
+}
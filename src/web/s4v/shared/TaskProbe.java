@@ -0,0 +1,104 @@
+package web.s4v.shared;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A circle where to search for tasks, as one of a batch of searches.
+ * It is used as a key of the results of the batch, so instances should not be changed after being sent.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ *
+ * @implements Serializable
+ */
+
+public class TaskProbe implements Serializable {
+    private double latitude;
+    private double longitude;
+    private double radius;
+
+    /**
+     * Create an empty instance.
+     */
+    public TaskProbe() {}
+
+    /**
+     * Create an instance with given center and radius.
+     * @param latitude of the circle's center
+     * @param longitude of the circle's center
+     * @param radius of the circle, in metres
+     */
+    public TaskProbe(double latitude, double longitude, double radius) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+    }
+
+    /**
+     * The latitude of the circle's center.
+     * @return latitude
+     */
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Sets or changes the latitude of the circle's center.
+     * @param latitude to set
+     */
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    /**
+     * The longitude of the circle's center.
+     * @return longitude
+     */
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Sets or changes the longitude of the circle's center.
+     * @param longitude to set
+     */
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * The radius of the circle, in metres.
+     * @return radius
+     */
+
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Sets or changes the radius of the circle, in metres.
+     * @param radius to set
+     */
+
+    public void setRadius(double radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TaskProbe taskProbe = (TaskProbe) o;
+        return Double.compare(taskProbe.latitude, latitude) == 0 && Double.compare(taskProbe.longitude, longitude) == 0 && Double.compare(taskProbe.radius, radius) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(latitude, longitude, radius);
+    }
+}
@@ -0,0 +1,230 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test of a concurrent PointQuadtree, with writers inserting and deleting points, which splits and merges
+ * leaves, while readers query it. A grid of fixed points is never deleted, and the writers only touch the western
+ * half of the tree, so readers check that every fixed point is found by radius, nearest and exact queries anywhere,
+ * and that the counts of the eastern half are exact while the western half changes. Once the writers stop,
+ * the size, the counts of random regions and the iterator are checked against the points that survived.
+ * Run it with the duration in milliseconds as argument; it exits with status 1 if any check fails.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+public class ConcurrentQuadtreeStress {
+
+	static final double SIDE = 100;
+	static final int WRITERS = 4;
+	static final int READERS = 4;
+	static final int CAPACITY = 4;
+	static final long DEFAULT_DURATION = 5000;
+
+	/**
+	 * A point that never moves
+	 */
+	static class Point implements HasPoint {
+		final double x;
+		final double y;
+
+		Point(double x, double y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		public double getX() {
+			return x;
+		}
+
+		public double getY() {
+			return y;
+		}
+
+		double distanceSquared(double x, double y) {
+			return (this.x - x) * (this.x - x) + (this.y - y) * (this.y - y);
+		}
+	}
+
+	private final PointQuadtree<Point> tree = new PointQuadtree<Point>(0, SIDE, SIDE, 0, CAPACITY, true);
+	private final List<Point> fixed = new ArrayList<Point>();
+	private final ConcurrentLinkedQueue<Point> survivors = new ConcurrentLinkedQueue<Point>();
+	private final AtomicBoolean stop = new AtomicBoolean();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong updates = new AtomicLong();
+	private final AtomicLong queries = new AtomicLong();
+	private long eastern;
+
+	public static void main(String[] args) throws InterruptedException {
+		long duration = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_DURATION;
+		ConcurrentQuadtreeStress stress = new ConcurrentQuadtreeStress();
+
+		stress.run(duration);
+		System.out.println("updates " + stress.updates + ", queries " + stress.queries + ", errors " + stress.errors);
+		if(stress.errors.get() > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Insert the fixed points, run writers and readers for given time, then check the final state
+	 * @param duration of the concurrent phase, in milliseconds
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	void run(long duration) throws InterruptedException {
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for(int i = 0; i < SIDE; i++) {
+			for(int j = 0; j < SIDE; j++) {
+				Point point = new Point(i + 0.5, j + 0.5);
+
+				fixed.add(point);
+				tree.insert(point);
+				if(point.x >= SIDE / 2)
+					eastern++;
+			}
+		}
+		for(int w = 0; w < WRITERS; w++) {
+			final long seed = w;
+
+			threads.add(new Thread(() -> write(new Random(seed))));
+		}
+		for(int r = 0; r < READERS; r++) {
+			final long seed = 100 + r;
+
+			threads.add(new Thread(() -> read(new Random(seed))));
+		}
+		for(Thread thread : threads)
+			thread.start();
+		Thread.sleep(duration);
+		stop.set(true);
+		for(Thread thread : threads)
+			thread.join();
+		verify(new Random(7));
+	}
+
+	/**
+	 * Insert random points in the western half, deleting most of them in batches, until stopped
+	 * @param random source of points
+	 */
+	private void write(Random random) {
+		List<Point> mine = new ArrayList<Point>();
+
+		while(!stop.get()) {
+			Point point = new Point(random.nextDouble() * SIDE / 2, random.nextDouble() * SIDE);
+
+			tree.insert(point);
+			mine.add(point);
+			updates.incrementAndGet();
+			if(mine.size() > 2000) {
+				for(int k = 0; k < 1000; k++)
+					tree.delete(mine.remove(random.nextInt(mine.size())));
+				updates.addAndGet(1000);
+			}
+		}
+		survivors.addAll(mine);
+	}
+
+	/**
+	 * Query the tree around random fixed points until stopped, checking what writers cannot change
+	 * @param random source of queries
+	 */
+	private void read(Random random) {
+		while(!stop.get()) {
+			try {
+				double x = random.nextInt((int) SIDE) + 0.5;
+				double y = random.nextInt((int) SIDE) + 0.5;
+				double radius = 3;
+				Set<Point> found = new HashSet<Point>();
+
+				tree.forEachNear(x, y, radius, point -> found.add(point));
+				for(Point point : fixed) {
+					if(point.distanceSquared(x, y) <= radius * radius && !found.contains(point))
+						fail("fixed point missing from radius query");
+				}
+				for(Point point : found) {
+					if(point.distanceSquared(x, y) > radius * radius)
+						fail("point outside radius query");
+				}
+				List<Point> nearest = tree.findNearest(x, y, 1);
+				if(nearest.isEmpty() || nearest.get(0).distanceSquared(x, y) > 0)
+					fail("nearest point is not the fixed one");
+				if(tree.find(fixed.get(random.nextInt(fixed.size()))) == null)
+					fail("fixed point not found");
+				if(tree.countInBox(SIDE / 2, 0, SIDE, SIDE) != eastern)
+					fail("count of the eastern half changed");
+				if(tree.countNear(SIDE * 3 / 4 + 0.5, y, 10) != countFixed(SIDE * 3 / 4 + 0.5, y, 10))
+					fail("count of a circle in the eastern half changed");
+				if(tree.size() < fixed.size())
+					fail("size smaller than the fixed points");
+				queries.incrementAndGet();
+			} catch(RuntimeException e) {
+				e.printStackTrace();
+				fail("exception in query");
+			}
+		}
+	}
+
+	/**
+	 * Check the size, counts, queries and iterator of the tree against the fixed and surviving points
+	 * @param random source of regions
+	 */
+	private void verify(Random random) {
+		List<Point> all = new ArrayList<Point>(fixed);
+		Set<Point> iterated = new HashSet<Point>();
+
+		all.addAll(survivors);
+		if(tree.size() != all.size())
+			fail("size " + tree.size() + " instead of " + all.size());
+		for(Point point : tree)
+			iterated.add(point);
+		if(!iterated.equals(new HashSet<Point>(all)))
+			fail("iterator differs from surviving points");
+		for(int k = 0; k < 500; k++) {
+			double x = random.nextDouble() * SIDE;
+			double y = random.nextDouble() * SIDE;
+			double radius = random.nextDouble() * SIDE / 4;
+			long inCircle = 0;
+			long inBox = 0;
+			Set<Point> expected = new HashSet<Point>();
+
+			for(Point point : all) {
+				if(point.distanceSquared(x, y) <= radius * radius) {
+					inCircle++;
+					expected.add(point);
+				}
+				if(point.x >= x && point.x <= x + radius && point.y >= y && point.y <= y + radius)
+					inBox++;
+			}
+			if(tree.countNear(x, y, radius) != inCircle)
+				fail("final circle count");
+			if(tree.countInBox(x, y, x + radius, y + radius) != inBox)
+				fail("final box count");
+			if(!tree.findNear(x, y, radius).equals(expected))
+				fail("final radius query");
+		}
+	}
+
+	private long countFixed(double x, double y, double radius) {
+		long count = 0;
+
+		for(Point point : fixed) {
+			if(point.distanceSquared(x, y) <= radius * radius)
+				count++;
+		}
+		return count;
+	}
+
+	private void fail(String message) {
+		if(errors.incrementAndGet() <= 10)
+			System.out.println("FAIL: " + message);
+	}
+}
@@ -0,0 +1,390 @@
+package web.s4v.quad;
+
+import web.s4v.shared.HasPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Conformance suite of the SpatialIndex implementations. Each backend, with a few configurations, goes through
+ * the same sequence of inserts, deletes, relocations, bulk inserts, points outside its initial area and draining,
+ * and after each step its size, bounds, iterator and every kind of query are checked against a brute-force scan
+ * of the points it should hold. Points are partly uniform, partly clustered, and partly on coincident locations,
+ * and deleting a point that is not recorded must not delete another one in the same location.
+ * Run it without arguments; it exits with status 1 if any backend fails.
+ * @author José Santos (up202007059)
+ * @author Miguel Gomes (up201905102)
+ * @since April 2023
+ */
+public class SpatialIndexConformance {
+
+	static final double SIDE = 100;
+	static final int QUERIES = 60;
+
+	/**
+	 * A point with a time interval, whose coordinates are changed by the suite after relocating it
+	 */
+	static class Point implements HasPoint, HasInterval {
+		double x;
+		double y;
+		final long start;
+		final long end;
+
+		Point(double x, double y, long start, long end) {
+			this.x = x;
+			this.y = y;
+			this.start = start;
+			this.end = end;
+		}
+
+		public double getX() {
+			return x;
+		}
+
+		public double getY() {
+			return y;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+
+		double distanceSquared(double x, double y) {
+			return (this.x - x) * (this.x - x) + (this.y - y) * (this.y - y);
+		}
+	}
+
+	private final Random random = new Random(11);
+	private final List<Point> all = new ArrayList<Point>();
+	private SpatialIndex<Point> index;
+	private String step;
+	private long failures;
+
+	public static void main(String[] args) {
+		Map<String, Supplier<SpatialIndex<Point>>> backends = new LinkedHashMap<>();
+		long failures = 0;
+
+		backends.put("quadtree", () -> new PointQuadtree<Point>(0, SIDE, SIDE, 0));
+		backends.put("quadtree concurrent", () -> new PointQuadtree<Point>(0, SIDE, SIDE, 0, true));
+		backends.put("grid 1", () -> new GridIndex<Point>(0, SIDE, SIDE, 0, 1));
+		backends.put("grid 0.01", () -> new GridIndex<Point>(0, SIDE, SIDE, 0, 0.01));
+		backends.put("grid 37", () -> new GridIndex<Point>(0, SIDE, SIDE, 0, 37));
+		backends.put("rtree", () -> new RTree<Point>(0, SIDE, SIDE, 0));
+		backends.put("rtree 4", () -> new RTree<Point>(0, SIDE, SIDE, 0, 4));
+		backends.put("rtree 64", () -> new RTree<Point>(0, SIDE, SIDE, 0, 64));
+		for(Map.Entry<String, Supplier<SpatialIndex<Point>>> backend : backends.entrySet()) {
+			SpatialIndexConformance suite = new SpatialIndexConformance();
+
+			suite.run(backend.getValue().get());
+			System.out.println(backend.getKey() + ": " + suite.failures + " failures");
+			failures += suite.failures;
+		}
+		if(failures > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Run the whole sequence of steps on given empty index
+	 * @param index under test
+	 */
+	void run(SpatialIndex<Point> index) {
+		this.index = index;
+
+		step = "insert";
+		for(int i = 0; i < 6000; i++)
+			insert(randomPoint());
+		for(int i = 0; i < 500; i++) {
+			Point other = all.get(random.nextInt(all.size()));
+
+			insert(new Point(other.x, other.y, 0, 10));
+		}
+		verify();
+
+		step = "delete";
+		for(int i = 0; i < 2500; i++) {
+			if(!index.delete(all.remove(random.nextInt(all.size()))))
+				fail("delete of a recorded point");
+		}
+		insert(new Point(1, 1, 0, 0));
+		if(index.delete(new Point(1, 1, 0, 0)))
+			fail("deleted another point in the same location");
+		verify();
+
+		step = "relocate";
+		for(int i = 0; i < 6000; i++)
+			relocate(all.get(random.nextInt(all.size())));
+		if(index.relocate(new Point(5, 5, 0, 0), 6, 6))
+			fail("relocated a point that is not recorded");
+		verify();
+
+		step = "insertAll";
+		List<Point> more = new ArrayList<Point>();
+		for(int i = 0; i < 8000; i++)
+			more.add(randomPoint());
+		index.insertAll(more);
+		all.addAll(more);
+		verify();
+
+		step = "outside";
+		for(int i = 0; i < 500; i++)
+			insert(new Point(random.nextDouble() * 2000 - 1000, random.nextDouble() * 2000 - 1000, 0, 5));
+		verify();
+
+		step = "not finite";
+		try {
+			index.insert(new Point(Double.NaN, 1, 0, 0));
+			fail("accepted a point that is not finite");
+		} catch(PointOutOfBoundException e) {
+		}
+		try {
+			index.insertAll(Arrays.asList(new Point(1, 1, 0, 0), new Point(1, Double.POSITIVE_INFINITY, 0, 0)));
+			fail("accepted a point that is not finite");
+		} catch(PointOutOfBoundException e) {
+		}
+		if(index.size() != all.size())
+			fail("inserted part of a rejected batch");
+
+		step = "drain";
+		Collections.shuffle(all, random);
+		while(all.size() > 50)
+			index.delete(all.remove(all.size() - 1));
+		verify();
+		while(!all.isEmpty())
+			index.delete(all.remove(all.size() - 1));
+		verify();
+
+		step = "refill";
+		for(int i = 0; i < 300; i++)
+			insert(randomPoint());
+		verify();
+	}
+
+	/**
+	 * Check the state of the index and random queries of every kind against the points it should hold
+	 */
+	private void verify() {
+		Set<Point> iterated = new HashSet<Point>();
+
+		if(index.size() != all.size())
+			fail("size " + index.size() + " instead of " + all.size());
+		for(Point point : index)
+			iterated.add(point);
+		if(!iterated.equals(new HashSet<Point>(all)))
+			fail("iterator");
+		for(Point point : all) {
+			if(point.x < index.getTopLeftX() || point.x > index.getBottomRightX()
+					|| point.y < index.getBottomRightY() || point.y > index.getTopLeftY()) {
+				fail("bounds do not contain every point");
+				break;
+			}
+		}
+		for(int k = 0; k < QUERIES; k++) {
+			double x = random.nextDouble() * (SIDE + 20) - 10;
+			double y = random.nextDouble() * (SIDE + 20) - 10;
+			double radius = random.nextInt(4) == 0 ? random.nextDouble() * 60 : random.nextDouble() * 5;
+
+			verifyNear(x, y, radius);
+			verifyBox(x, y, x + radius, y + radius / 2);
+			verifyPolygon(randomPolygon());
+			verifyNearest(x, y, random.nextInt(40), k < 5);
+			if(k < 10)
+				verifyBatch(new double[] { x, x + 1, SIDE / 2 }, new double[] { y, y - 2, SIDE / 2 },
+						new double[] { radius, 0.5, 3 });
+		}
+	}
+
+	private void verifyNear(double x, double y, double radius) {
+		Set<Point> expected = new HashSet<Point>();
+
+		for(Point point : all) {
+			if(point.distanceSquared(x, y) <= radius * radius)
+				expected.add(point);
+		}
+		if(!index.findNear(x, y, radius).equals(expected))
+			fail("findNear");
+		if(index.count(new PointQuadtree.Circle(x, y, radius)) != expected.size())
+			fail("count of circle");
+	}
+
+	private void verifyBox(double minX, double minY, double maxX, double maxY) {
+		Set<Point> expected = new HashSet<Point>();
+		Set<Point> expectedDuring = new HashSet<Point>();
+		Set<Point> found = new HashSet<Point>();
+		Set<Point> foundDuring = new HashSet<Point>();
+
+		for(Point point : all) {
+			if(point.x >= minX && point.x <= maxX && point.y >= minY && point.y <= maxY) {
+				expected.add(point);
+				if(point.start <= 600 && point.end >= 500)
+					expectedDuring.add(point);
+			}
+		}
+		index.forEachInBox(minX, minY, maxX, maxY, point -> found.add(point));
+		index.forEachInBox(minX, minY, maxX, maxY, 500, 600, point -> foundDuring.add(point));
+		if(!found.equals(expected))
+			fail("forEachInBox");
+		if(!foundDuring.equals(expectedDuring))
+			fail("forEachInBox with time window");
+	}
+
+	private void verifyPolygon(List<Point> vertices) {
+		Polygon polygon = new Polygon(vertices);
+		Set<Point> expected = new HashSet<Point>();
+
+		for(Point point : all) {
+			if(polygon.contains(point.x, point.y))
+				expected.add(point);
+		}
+		if(!index.findIn(new Polygon(vertices)).equals(expected))
+			fail("findIn polygon");
+		if(index.count(new Polygon(vertices)) != expected.size())
+			fail("count of polygon");
+	}
+
+	private void verifyNearest(double x, double y, int k, boolean iterate) {
+		double[] distances = new double[all.size()];
+		List<Point> nearest = index.findNearest(x, y, k);
+
+		for(int i = 0; i < all.size(); i++)
+			distances[i] = all.get(i).distanceSquared(x, y);
+		Arrays.sort(distances);
+		if(nearest.size() != Math.min(k, all.size()))
+			fail("findNearest size");
+		else {
+			for(int i = 0; i < nearest.size(); i++) {
+				if(nearest.get(i).distanceSquared(x, y) != distances[i]) {
+					fail("findNearest order");
+					break;
+				}
+			}
+		}
+		if(!iterate)
+			return;
+
+		DistanceIterator<Point> iterator = index.nearestIterator(x, y);
+		Set<Point> seen = new HashSet<Point>();
+		int i = 0;
+
+		while(iterator.hasNext()) {
+			double distance = iterator.peekDistanceSquared();
+			Point point = iterator.next();
+
+			if(i >= distances.length || distance != distances[i] || point.distanceSquared(x, y) != distance) {
+				fail("nearestIterator order");
+				return;
+			}
+			seen.add(point);
+			i++;
+		}
+		if(i != distances.length || seen.size() != all.size())
+			fail("nearestIterator returned " + i + " of " + distances.length + " points");
+	}
+
+	private void verifyBatch(double[] xs, double[] ys, double[] radii) {
+		List<Set<Point>> found = new ArrayList<Set<Point>>();
+
+		for(int q = 0; q < xs.length; q++)
+			found.add(new HashSet<Point>());
+		index.forEachNear(xs, ys, radii, (q, point) -> found.get(q).add(point));
+		for(int q = 0; q < xs.length; q++) {
+			Set<Point> expected = new HashSet<Point>();
+
+			for(Point point : all) {
+				if(point.distanceSquared(xs[q], ys[q]) <= radii[q] * radii[q])
+					expected.add(point);
+			}
+			if(!found.get(q).equals(expected))
+				fail("forEachNear batch");
+		}
+	}
+
+	private void insert(Point point) {
+		all.add(point);
+		index.insert(point);
+	}
+
+	/**
+	 * Move given point a little, far away, or onto another point, and record its new coordinates
+	 * @param point to be moved
+	 */
+	private void relocate(Point point) {
+		double x;
+		double y;
+
+		switch(random.nextInt(4)) {
+		case 0:
+			x = point.x + random.nextDouble() * 0.01;
+			y = point.y;
+			break;
+		case 1:
+			x = random.nextDouble() * SIDE;
+			y = random.nextDouble() * SIDE;
+			break;
+		case 2:
+			Point other = all.get(random.nextInt(all.size()));
+			x = other.x;
+			y = other.y;
+			break;
+		default:
+			x = point.x + random.nextGaussian();
+			y = point.y + random.nextGaussian();
+		}
+		if(!index.relocate(point, x, y))
+			fail("relocate of a recorded point");
+		point.x = x;
+		point.y = y;
+	}
+
+	/**
+	 * A point uniform in the area, or in one of two clusters, sometimes on integer coordinates shared by others
+	 * @return point
+	 */
+	private Point randomPoint() {
+		double x = random.nextInt(3) == 0 ? 30 + random.nextGaussian() * 0.5 : random.nextDouble() * SIDE;
+		double y = random.nextInt(3) == 0 ? 40 + random.nextGaussian() * 0.5 : random.nextDouble() * SIDE;
+		long start = random.nextInt(1000);
+
+		if(random.nextInt(6) == 0) {
+			x = Math.floor(x);
+			y = Math.floor(y);
+		}
+		return new Point(x, y, start, start + random.nextInt(300));
+	}
+
+	/**
+	 * A star shaped polygon, which is not convex, with random center and size
+	 * @return vertices of the polygon
+	 */
+	private List<Point> randomPolygon() {
+		List<Point> vertices = new ArrayList<Point>();
+		double x = random.nextDouble() * SIDE;
+		double y = random.nextDouble() * SIDE;
+		double radius = random.nextDouble() * 40;
+		int count = 6 + 2 * random.nextInt(6);
+
+		for(int i = 0; i < count; i++) {
+			double angle = 2 * Math.PI * i / count;
+			double distance = i % 2 == 0 ? radius : radius * (0.2 + 0.6 * random.nextDouble());
+
+			vertices.add(new Point(x + distance * Math.cos(angle), y + distance * Math.sin(angle), 0, 0));
+		}
+		return vertices;
+	}
+
+	private void fail(String message) {
+		if(failures++ < 10)
+			System.out.println("FAIL " + step + ": " + message);
+	}
+}